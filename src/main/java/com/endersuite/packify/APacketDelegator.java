@@ -2,12 +2,26 @@ package com.endersuite.packify;
 
 import com.endersuite.libcore.strfmt.Level;
 import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.dispatch.EventLoopDispatcher;
+import com.endersuite.packify.dispatch.PacketDispatcher;
+import com.endersuite.packify.dispatch.RingBufferDispatcher;
 import com.endersuite.packify.events.PacketReceivedEvent;
+import com.endersuite.packify.handlers.HandlerPriority;
+import com.endersuite.packify.handlers.HandlerWatchdog;
+import com.endersuite.packify.handlers.PacketHandler;
+import com.endersuite.packify.handlers.PacketInvoker;
+import com.endersuite.packify.handlers.PacketInvokers;
+import com.endersuite.packify.handlers.RegisteredPacketHandler;
+import com.endersuite.packify.packets.ACollectablePacket;
 import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.tracing.SpanKind;
+import com.endersuite.packify.tracing.TraceContext;
+import com.endersuite.packify.tracing.Tracer;
 import de.maximilianheidenreich.jeventloop.EventLoop;
 import lombok.Getter;
-import lombok.Setter;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.Consumer;
@@ -27,15 +41,30 @@ public abstract class APacketDelegator {
 
     /**
      * All registered handlers which will be executed if an event with matching class is dequeued.
+     * Each list is ordered by descending {@link HandlerPriority}.
      */
-    private final Map<Class<? extends APacket>, List<Consumer<? extends APacket>>> handlers;
+    private final Map<Class<? extends APacket>, List<RegisteredPacketHandler>> handlers;
 
 
     /**
-     * A reference to an event loop that gets used for packet handling.
+     * The engine that hands received packets over to {@link APacketDelegator#handlePacket(APacket)}.
      */
-    @Setter
-    private EventLoop eventLoop;
+    private volatile PacketDispatcher dispatcher;
+
+    /**
+     * Measures handler invocations, reports blocking handlers and executes isolated packet classes.
+     */
+    private final HandlerWatchdog watchdog;
+
+    /**
+     * Records the spans of sampled packets.
+     */
+    private final Tracer tracer;
+
+    /**
+     * Marks the threads currently executing a handler of this delegator.
+     */
+    private final ThreadLocal<Boolean> handling;
 
 
     // ======================   CONSTRUCTOR
@@ -51,9 +80,60 @@ public abstract class APacketDelegator {
      * Creates a new AbstractPacketManager with a custom executor.
      */
     public APacketDelegator(EventLoop eventLoop) {
+        this(new EventLoopDispatcher(eventLoop));
+    }
+
+    /**
+     * Creates a new AbstractPacketManager with a custom dispatch engine.
+     *
+     * @param dispatcher
+     *          The dispatcher to use (e.g. {@link RingBufferDispatcher})
+     */
+    public APacketDelegator(PacketDispatcher dispatcher) {
         this.packetQueue = new LinkedBlockingDeque<>();
         this.handlers = new ConcurrentHashMap<>();
-        this.eventLoop = eventLoop;
+        this.watchdog = new HandlerWatchdog();
+        this.tracer = new Tracer();
+        this.handling = new ThreadLocal<>();
+        setDispatcher(dispatcher);
+    }
+
+
+    // ======================   DISPATCHER MANAGEMENT
+
+    /**
+     * Replaces the dispatch engine. The previous dispatcher gets shut down.
+     *
+     * @param dispatcher
+     *          The new dispatcher
+     */
+    public synchronized void setDispatcher(PacketDispatcher dispatcher) {
+        PacketDispatcher previous = this.dispatcher;
+        this.dispatcher = dispatcher;
+        dispatcher.start(this::handlePacket);
+
+        if (previous != null && previous != dispatcher)
+            previous.shutdown();
+    }
+
+    /**
+     * Returns the event loop used for packet handling.
+     *
+     * @return The event loop or {@code null} if a different dispatcher is used
+     */
+    public EventLoop getEventLoop() {
+        PacketDispatcher dispatcher = getDispatcher();
+        return dispatcher instanceof EventLoopDispatcher ? ((EventLoopDispatcher) dispatcher).getEventLoop() : null;
+    }
+
+    /**
+     * Replaces the dispatch engine with an {@link EventLoopDispatcher} for the given event loop.
+     *
+     * @param eventLoop
+     *          The event loop to use
+     */
+    public void setEventLoop(EventLoop eventLoop) {
+        setDispatcher(new EventLoopDispatcher(eventLoop));
     }
 
 
@@ -69,11 +149,65 @@ public abstract class APacketDelegator {
      * @param <P>
      */
     public <P extends APacket> void addPacketHandler(Class<P> clazz, Consumer<P> handler) {
+        addPacketHandler(clazz, handler, HandlerPriority.NORMAL, false);
+    }
+
+    /**
+     * Adds a handler function which will get executed once a Packet with the matching clazz is received.
+     *
+     * @param clazz
+     *          The class identifying the  for which the handler will be executed
+     * @param handler
+     *          The handler function
+     * @param priority
+     *          The priority of the handler (Higher priorities are executed first)
+     * @param ignoreCancelled
+     *          Whether the handler should be skipped for packets cancelled by a previous handler
+     * @param <P>
+     */
+    public <P extends APacket> void addPacketHandler(Class<P> clazz, Consumer<P> handler, HandlerPriority priority, boolean ignoreCancelled) {
+        addPacketHandler(clazz, handler, priority, ignoreCancelled, false);
+    }
 
-        if (!getHandlers().containsKey(clazz))
-            getHandlers().put(clazz, new ArrayList<>());
+    /**
+     * Adds a non-blocking handler function which will get executed directly on the thread that received the packet,
+     * saving the hand over to the dispatcher.
+     * <br><br><i>Note: The handler must never block (e.g. wait for I/O, locks or collected responses) and may be called
+     * concurrently! Inline handlers run before the other handlers of the packet (Regardless of priority) and handlers
+     * that block are moved to the dispatch thread by the {@link HandlerWatchdog}.</i>
+     *
+     * @param clazz
+     *          The class identifying the  for which the handler will be executed
+     * @param handler
+     *          The handler function
+     * @param <P>
+     */
+    public <P extends APacket> void addInlinePacketHandler(Class<P> clazz, Consumer<P> handler) {
+        addPacketHandler(clazz, handler, HandlerPriority.NORMAL, false, true);
+    }
 
-        getHandlers().get(clazz).add(handler);
+    /**
+     * Adds a handler function which will get executed once a Packet with the matching clazz is received.
+     *
+     * @param clazz
+     *          The class identifying the  for which the handler will be executed
+     * @param handler
+     *          The handler function
+     * @param priority
+     *          The priority of the handler (Higher priorities are executed first)
+     * @param ignoreCancelled
+     *          Whether the handler should be skipped for packets cancelled by a previous handler
+     * @param inline
+     *          Whether the handler is non-blocking and executed on the receiving thread
+     *          (See {@link APacketDelegator#addInlinePacketHandler(Class, Consumer)})
+     * @param <P>
+     * @throws IllegalArgumentException
+     *          If an inline handler is added for a collectable packet
+     */
+    @SuppressWarnings("unchecked")
+    public <P extends APacket> void addPacketHandler(Class<P> clazz, Consumer<P> handler, HandlerPriority priority, boolean ignoreCancelled, boolean inline) {
+        PacketInvoker invoker = (listener, packet) -> handler.accept((P) packet);
+        addRegisteredHandler(new RegisteredPacketHandler(clazz, null, handler, invoker, priority, ignoreCancelled, inline));
     }
 
     /**
@@ -89,14 +223,112 @@ public abstract class APacketDelegator {
      */
     public <P extends APacket> boolean removePacketHandler(Class<P> clazz, Consumer<P> handler) {
 
+        List<RegisteredPacketHandler> registered = getHandlers().get(clazz);
+
         // RET: No handlers for class
-        if (!getHandlers().containsKey(clazz))
+        if (registered == null)
             return false;
 
-        return getHandlers().get(clazz).remove(handler);
+        // Same lock as the priority insert, so its index can not become stale
+        synchronized (registered) {
+            for (RegisteredPacketHandler candidate : registered) {
+                if (handler.equals(candidate.getConsumer()))
+                    return registered.remove(candidate);
+            }
+            return false;
+        }
 
     }
 
+    /**
+     * Registers all {@link PacketHandler} annotated methods of the listener object.
+     * The invokers for the methods are built once during registration.
+     *
+     * @param listener
+     *          The listener object
+     * @return The amount of registered handlers
+     * @throws IllegalArgumentException
+     *          If an annotated method does not have a valid handler signature or is an inline handler for a collectable packet
+     */
+    public int registerListener(Object listener) {
+        List<RegisteredPacketHandler> registered = new ArrayList<>();
+        Set<List<Object>> signatures = new HashSet<>();
+
+        for (Class<?> clazz = listener.getClass(); clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                PacketHandler annotation = method.getAnnotation(PacketHandler.class);
+                if (annotation == null || method.isBridge()) continue;
+
+                // Overridden by an annotated method of a subclass -> The invoker already calls the override
+                List<Object> signature = Arrays.asList(method.getName(), Arrays.asList(method.getParameterTypes()));
+                if (!Modifier.isPrivate(method.getModifiers()) && !signatures.add(signature)) continue;
+
+                registered.add(new RegisteredPacketHandler(
+                        PacketInvokers.getPacketClass(method),
+                        listener,
+                        null,
+                        PacketInvokers.create(method),
+                        annotation.priority(),
+                        annotation.ignoreCancelled(),
+                        annotation.inline()
+                ));
+            }
+        }
+
+        registered.forEach(APacketDelegator::checkInline);
+        registered.forEach(this::addRegisteredHandler);
+        return registered.size();
+    }
+
+    /**
+     * Removes all handlers that were registered for the listener object.
+     *
+     * @param listener
+     *          The listener object
+     * @return The amount of removed handlers
+     */
+    public int unregisterListener(Object listener) {
+        int removed = 0;
+        for (List<RegisteredPacketHandler> registered : getHandlers().values()) {
+            synchronized (registered) {
+                int sizeBefore = registered.size();
+                registered.removeIf(handler -> handler.getListener() == listener);
+                removed += sizeBefore - registered.size();
+            }
+        }
+        return removed;
+    }
+
+
+    /**
+     * Returns whether the current thread is executing a packet handler of this delegator
+     * (On the dispatch thread, the receiving thread or the thread of an isolated packet class)
+     * or internal work marked by {@link #runAsHandler(Runnable)}.
+     * Blocking here until responses arrive may wait for packets handled by this very thread.
+     *
+     * @return {@code true} if called from inside a handler
+     */
+    public boolean isHandlerThread() {
+        return this.handling.get() != null;
+    }
+
+    /**
+     * Runs internal work that may call user code on a thread which must not block, like a packet handler
+     * (e.g. the consumers of a transmission completed by a response or timeout).
+     *
+     * @param task
+     *          The work
+     */
+    public void runAsHandler(Runnable task) {
+        Boolean wasHandling = this.handling.get();
+        this.handling.set(Boolean.TRUE);
+        try { task.run(); }
+        finally {
+            if (wasHandling == null)
+                this.handling.remove();
+        }
+    }
+
 
     // ======================   EVENT HANDLERS
 
@@ -107,30 +339,157 @@ public abstract class APacketDelegator {
      *          The handled event
      */
     public void handlePacketReceivedEvent(PacketReceivedEvent event) {
-        APacket packet = event.getPacket();
+        handlePacket(event.getPacket());
+    }
+
+    /**
+     * Calls the inline handlers of a packet on the current (receiving) thread.
+     *
+     * @param packet
+     *          The received packet
+     * @return {@code true} if the packet has other handlers and must still be dispatched
+     */
+    public boolean handleInline(APacket packet) {
+        List<RegisteredPacketHandler> registered = getHandlers().get(packet.getClass());
+
+        // RET: No handlers
+        if (registered == null)
+            return false;
+
+        List<RegisteredPacketHandler> invoked = null;
+        boolean dispatch = false;
+        for (RegisteredPacketHandler handler : registered) {
+            if (!handler.isInline()) {
+                dispatch = true;
+                continue;
+            }
+
+            if (invoked == null)
+                invoked = new ArrayList<>(2);
+            invoked.add(handler);
+            invokeHandler(packet, handler);
+        }
+
+        if (dispatch)
+            packet.setInlineHandlers(invoked);
+        return dispatch;
+    }
+
+    /**
+     * Calls all registered packet handlers (Except the ones that already handled the packet inline).
+     * Handlers of isolated packet classes (See {@link HandlerWatchdog}) are called on their dedicated thread.
+     *
+     * @param packet
+     *          The received packet
+     */
+    public void handlePacket(APacket packet) {
+        List<RegisteredPacketHandler> registered = getHandlers().get(packet.getClass());
 
         // RET: No handlers for abstractEvent!
-        if (!getHandlers().containsKey(event.getPacket().getClass()))
+        if (registered == null)
             return;
 
-        for (Consumer<? extends APacket> rawHandler : getHandlers().get(packet.getClass())) {
-            Consumer<APacket> handler = (Consumer<APacket>) rawHandler;
+        ExecutorService isolated = getWatchdog().getIsolatedExecutor(packet.getClass());
 
-            try { handler.accept(packet); }
-            catch (Exception e) {
-                e.printStackTrace();
-                new StrFmt("{prefix} A handle threw an error for " + packet + "!", e)
-                        .setLevel(Level.ERROR).toLog();
+        // RET: Isolated -> Don't block the dispatch thread
+        if (isolated != null) {
+            try {
+                isolated.execute(() -> invokeHandlers(packet, registered));
+                return;
+            } catch (RejectedExecutionException ignored) {
+                // Released concurrently -> Handle on this thread
             }
-
         }
 
+        invokeHandlers(packet, registered);
     }
 
 
     // ======================   HELPERS
 
+    /**
+     * Invokes the handlers for a packet one after another.
+     *
+     * @param packet
+     *          The packet
+     * @param registered
+     *          The handlers registered for the packet class
+     */
+    private void invokeHandlers(APacket packet, List<RegisteredPacketHandler> registered) {
+        List<RegisteredPacketHandler> inline = packet.getInlineHandlers();
+        for (RegisteredPacketHandler handler : registered) {
+
+            // Already handled on the receiving thread
+            if (inline != null ? inline.contains(handler) : handler.isInline()) continue;
+
+            invokeHandler(packet, handler);
+        }
+    }
+
+    /**
+     * Invokes a single handler through the watchdog.
+     * For sampled packets, a handler span is recorded and packets sent by the handler continue the trace.
+     *
+     * @param packet
+     *          The packet
+     * @param handler
+     *          The handler
+     */
+    private void invokeHandler(APacket packet, RegisteredPacketHandler handler) {
+        TraceContext trace = packet.getTraceContext() != null && getTracer().isEnabled() ? getTracer().child(packet.getTraceContext()) : null;
+        TraceContext previous = trace != null ? getTracer().enter(trace) : null;
+        Boolean wasHandling = this.handling.get();
+        this.handling.set(Boolean.TRUE);
+        long start = System.nanoTime();
+
+        try { getWatchdog().invoke(handler, packet); }
+        catch (Throwable e) {
+            e.printStackTrace();
+            new StrFmt("{prefix} Handler " + handler + " threw an error for " + packet + "!", e)
+                    .setLevel(Level.ERROR).toLog();
+        }
+        finally {
+            if (wasHandling == null)
+                this.handling.remove();
+            if (trace != null) {
+                getTracer().enter(previous);
+                getTracer().recordSpan(trace, SpanKind.HANDLER, handler.toString(), packet.getSender(), start, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Ensures that inline handlers are not registered for collectable packets, as those need the dispatch thread
+     * to prepare aggregations & collect responses.
+     *
+     * @param handler
+     *          The handler to check
+     * @throws IllegalArgumentException
+     *          If the handler is an inline handler for a collectable packet
+     */
+    private static void checkInline(RegisteredPacketHandler handler) {
 
+        // THROW: Collectable
+        if (handler.isInline() && ACollectablePacket.class.isAssignableFrom(handler.getPacketClass()))
+            throw new IllegalArgumentException("Collectable packets can not be handled inline: " + handler.getPacketClass().getName());
+    }
 
+    /**
+     * Inserts the handler behind all handlers with the same or a higher priority.
+     *
+     * @param handler
+     *          The handler to add
+     */
+    private void addRegisteredHandler(RegisteredPacketHandler handler) {
+        checkInline(handler);
+        List<RegisteredPacketHandler> registered = getHandlers().computeIfAbsent(handler.getPacketClass(), clazz -> new CopyOnWriteArrayList<>());
+
+        synchronized (registered) {
+            int index = 0;
+            while (index < registered.size() && registered.get(index).getPriority().compareTo(handler.getPriority()) >= 0)
+                index++;
+            registered.add(index, handler);
+        }
+    }
 
 }
@@ -0,0 +1,149 @@
+package com.endersuite.packify;
+
+import com.endersuite.packify.packets.APacket;
+import lombok.Getter;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.View;
+import org.jgroups.util.NameCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The channels of a striped {@link NetworkManager}. Every stripe is a separate {@link JChannel} with its own
+ * protocol stack, connected to its own cluster. Stripe 0 is the primary channel of the manager.
+ * <br><br>Because each channel has its own addresses, members are matched across stripes by their node name.
+ * All addresses exposed to handlers are the addresses of the primary channel.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class ChannelStripes {
+
+    // ======================   VARS
+
+    @Getter
+    private final List<JChannel> channels;
+
+    @Getter
+    private final StripeSelector selector;
+
+    /**
+     * The addresses of the members of each stripe by their node name.
+     */
+    private final List<Map<String, Address>> addressesByName;
+
+
+    // ======================   CONSTRUCTOR
+
+    public ChannelStripes(List<JChannel> channels, StripeSelector selector) {
+        this.channels = Collections.unmodifiableList(new ArrayList<>(channels));
+        this.selector = selector;
+        this.addressesByName = new ArrayList<>(channels.size());
+        for (int i = 0; i < channels.size(); i++)
+            this.addressesByName.add(new ConcurrentHashMap<>());
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Connects all stripes except the primary channel.
+     *
+     * @param clusterName
+     *          The cluster name of the primary channel
+     * @throws Exception
+     */
+    public void connect(String clusterName) throws Exception {
+        for (int i = 1; i < size(); i++)
+            getChannel(i).connect(clusterName + "#stripe-" + i);
+    }
+
+    /**
+     * Closes all stripes except the primary channel.
+     */
+    public void close() {
+        for (int i = 1; i < size(); i++)
+            getChannel(i).close();
+    }
+
+    /**
+     * Selects the stripe a packet is sent over.
+     *
+     * @param packet
+     *          The packet
+     * @return The stripe index
+     */
+    public int select(APacket packet) {
+        int stripe = getSelector().select(packet, size());
+        return stripe >= 0 && stripe < size() ? stripe : 0;
+    }
+
+    /**
+     * Updates the name mapping of a stripe.
+     *
+     * @param stripe
+     *          The stripe index
+     * @param view
+     *          The new view of the stripe
+     */
+    public void updateView(int stripe, View view) {
+        Map<String, Address> addresses = this.addressesByName.get(stripe);
+        addresses.clear();
+        for (Address member : view.getMembers()) {
+            String name = NameCache.get(member);
+            if (name != null)
+                addresses.put(name, member);
+        }
+    }
+
+    /**
+     * Translates an address of the primary channel into the address of the same node on a stripe.
+     *
+     * @param primaryAddress
+     *          The address on the primary channel
+     * @param stripe
+     *          The stripe index
+     * @return The address on the stripe or {@code null} if the node is not (yet) a member of the stripe
+     */
+    public Address toStripe(Address primaryAddress, int stripe) {
+        return translate(primaryAddress, stripe);
+    }
+
+    /**
+     * Translates an address of a stripe into the address of the same node on the primary channel.
+     *
+     * @param stripeAddress
+     *          The address on the stripe
+     * @param stripe
+     *          The stripe index
+     * @return The address on the primary channel or the given address if the node is unknown
+     */
+    public Address toPrimary(Address stripeAddress, int stripe) {
+        if (stripe == 0 || stripeAddress == null) return stripeAddress;
+
+        Address primaryAddress = translate(stripeAddress, 0);
+        return primaryAddress != null ? primaryAddress : stripeAddress;
+    }
+
+    public JChannel getChannel(int stripe) {
+        return getChannels().get(stripe);
+    }
+
+    public int size() {
+        return getChannels().size();
+    }
+
+
+    // ======================   HELPERS
+
+    private Address translate(Address address, int stripe) {
+        String name = NameCache.get(address);
+        return name != null ? this.addressesByName.get(stripe).get(name) : null;
+    }
+
+}
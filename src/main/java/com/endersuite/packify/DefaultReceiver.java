@@ -4,7 +4,13 @@ import com.endersuite.libcore.strfmt.Level;
 import com.endersuite.libcore.strfmt.StrFmt;
 import com.endersuite.packify.events.PacketReceivedEvent;
 import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.recording.TrafficRecord;
+import com.endersuite.packify.recording.TrafficRecorder;
+import com.endersuite.packify.tracing.SpanKind;
+import com.endersuite.packify.tracing.TraceContext;
+import com.endersuite.packify.tracing.Tracer;
 import lombok.Getter;
+import org.jgroups.Address;
 import org.jgroups.Message;
 import org.jgroups.Receiver;
 import org.jgroups.View;
@@ -24,11 +30,22 @@ public class DefaultReceiver implements Receiver {
     @Getter
     private final NetworkManager networkManager;
 
+    /**
+     * The stripe of the channel this receiver is attached to (0 for the primary channel).
+     */
+    @Getter
+    private final int stripe;
+
 
     // ======================   CONSTRUCTOR
 
     public DefaultReceiver(NetworkManager networkManager) {
+        this(networkManager, 0);
+    }
+
+    public DefaultReceiver(NetworkManager networkManager, int stripe) {
         this.networkManager = networkManager;
+        this.stripe = stripe;
     }
 
 
@@ -42,11 +59,23 @@ public class DefaultReceiver implements Receiver {
      */
     @Override
     public void viewAccepted(View new_view) {
+        if (getNetworkManager().getStripes() != null)
+            getNetworkManager().getStripes().updateView(getStripe(), new_view);
+
+        // RET: Membership of the additional stripes follows the primary channel
+        if (getStripe() != 0) return;
+
         new StrFmt("{prefix} Cluster members updated: §e%s", new_view)
                 .setLevel(Level.INFO)
                 .toLog();
 
+        getNetworkManager().getAggregationManager().handleViewChange(new_view);
+        getNetworkManager().getResponseStatistics().retain(new_view);
+        getNetworkManager().getRateLimiter().retain(new_view);
+        getNetworkManager().getStateReplicator().handleViewChange(new_view);
         getNetworkManager().getCollectableManager().completeCompletableTransmissions();
+        if (getNetworkManager().getOutbox() != null)
+            getNetworkManager().getOutbox().drain();
     }
 
     /**
@@ -72,22 +101,40 @@ public class DefaultReceiver implements Receiver {
     }
 
     /**
-     * Sets the sender & recipient fields and dispatches {@link PacketReceivedEvent}.
+     * Sets the sender & recipient fields and dispatches the packet using {@link NetworkManager#dispatchPacket(APacket)}.
+     * Messages exceeding the rate limits of the {@link com.endersuite.packify.ratelimit.InboundRateLimiter} are dropped
+     * before they are deserialized.
      *
      * @param msg
      *          The Message instance from JGroup
      */
     private void processSingleMessage(Message msg) {
-        if (msg.getObject() instanceof APacket) {
-            APacket packet = (APacket) msg.getObject();
-            packet.setSender(msg.getSrc());
-            packet.setRecipient(msg.getDest());
-
-            new StrFmt("{prefix} Received packet: %s in %dms", packet, (System.currentTimeMillis() - packet.getCreatedAt()))
-                    .setLevel(Level.DEBUG)
-                    .toLog();
-
-            getNetworkManager().getEventLoop().dispatch(new PacketReceivedEvent(packet));
+        Address sender = getStripe() == 0 ? msg.getSrc() : getNetworkManager().getStripes().toPrimary(msg.getSrc(), getStripe());
+        Address recipient = getStripe() == 0 ? msg.getDest() : getNetworkManager().getStripes().toPrimary(msg.getDest(), getStripe());
+
+        TrafficRecorder recorder = getNetworkManager().getRecorder();
+        if (recorder != null)
+            recorder.record(TrafficRecord.Direction.RECEIVED, msg, getStripe(), sender, recipient);
+
+        // RET: Throttled
+        if (!getNetworkManager().getRateLimiter().tryAcquire(sender, msg)) return;
+
+        long receivedAt = System.nanoTime();
+        Object object = msg.getObject();
+        if (object instanceof APacket) {
+            APacket packet = (APacket) object;
+            packet.setSender(sender);
+            packet.setRecipient(recipient);
+
+            TraceContext trace = packet.getTraceContext();
+            Tracer tracer = getNetworkManager().getTracer();
+            if (trace != null && tracer.isEnabled()) {
+                String name = packet.getClass().getSimpleName();
+                tracer.recordStack(trace, name, sender);
+                tracer.record(trace, SpanKind.RECEIVE, name, sender, receivedAt, System.nanoTime() - receivedAt);
+            }
+
+            getNetworkManager().dispatchPacket(packet);
 
         }
     }
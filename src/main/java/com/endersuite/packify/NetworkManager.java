@@ -2,19 +2,50 @@ package com.endersuite.packify;
 
 import com.endersuite.libcore.strfmt.Level;
 import com.endersuite.libcore.strfmt.StrFmt;
-import com.endersuite.packify.events.PacketReceivedEvent;
+import com.endersuite.packify.dispatch.EventLoopDispatcher;
+import com.endersuite.packify.dispatch.PacketDispatcher;
+import com.endersuite.packify.dispatch.RingBufferDispatcher;
+import com.endersuite.packify.transmission.AggregationManager;
 import com.endersuite.packify.transmission.CollectableManager;
+import com.endersuite.packify.transmission.CompletableTransmission;
+import com.endersuite.packify.transmission.ConflationQueue;
 import com.endersuite.packify.packets.ACollectablePacket;
 import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.packets.CancelCollectionPacket;
+import com.endersuite.packify.packets.SiteBroadcastPacket;
+import com.endersuite.packify.packets.WarmupPacket;
+import com.endersuite.packify.ratelimit.InboundRateLimiter;
+import com.endersuite.packify.recording.TrafficRecord;
+import com.endersuite.packify.recording.TrafficRecorder;
+import com.endersuite.packify.routing.ConsistentHashRing;
+import com.endersuite.packify.state.StateReplicator;
+import com.endersuite.packify.stats.ResponseStatistics;
+import com.endersuite.packify.storage.DurableOutbox;
+import com.endersuite.packify.tracing.SpanKind;
+import com.endersuite.packify.tracing.TraceContext;
 import com.endersuite.packify.transmission.Transmission;
 import de.maximilianheidenreich.jeventloop.EventLoop;
 import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
 import org.jgroups.JChannel;
 import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.protocols.relay.RELAY2;
+import org.jgroups.protocols.relay.SiteAddress;
+import org.jgroups.protocols.relay.SiteMaster;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
 
 /**
  * TODO: Add docs
@@ -24,6 +55,17 @@ import java.util.concurrent.ScheduledExecutorService;
  */
 public class NetworkManager extends APacketDelegator {
 
+    /**
+     * Controls how packets that are addressed to the local node (self-addressed or broadcast with loopback)
+     * are delivered to the local handlers.
+     */
+    public enum LoopbackMode {
+        STACK,          // Loop back through the JGroups stack (Handlers receive a serialized & deserialized copy)
+        SHARED,         // Hand the same packet instance to the local handlers, skipping the codec & stack
+        COPY            // Hand a copy created by APacket#copy() to the local handlers, skipping the codec & stack
+    }
+
+
     // ======================   VARS
 
     /**
@@ -35,29 +77,174 @@ public class NetworkManager extends APacketDelegator {
     @Getter
     private final CollectableManager collectableManager;
 
+    @Getter
+    private final AggregationManager aggregationManager;
+
     @Getter
     private final ScheduledExecutorService scheduler;
 
+    /**
+     * How packets addressed to this node are delivered locally (Defaults to {@link LoopbackMode#COPY}).
+     */
+    @Getter @Setter
+    private LoopbackMode loopbackMode;
+
+    /**
+     * The profile used to create the channels ({@code null} for the JGroups default configuration).
+     */
+    @Getter
+    private final StackProfile stackProfile;
+
+    /**
+     * The amount of virtual nodes per member on the consistent hash ring (Defaults to 128).
+     */
+    @Getter @Setter
+    private int virtualNodes;
+
+    /**
+     * The consistent hash ring of the current view (Rebuilt lazily after view changes).
+     */
+    private volatile ConsistentHashRing hashRing;
+
+    /**
+     * The additional channels used in striped mode ({@code null} if striping is disabled).
+     */
+    @Getter
+    private ChannelStripes stripes;
+
+    /**
+     * The latency & load statistics of the responses to our collectable requests.
+     */
+    @Getter
+    private final ResponseStatistics responseStatistics;
+
+    /**
+     * Supplies the load of this node which is piggybacked on every response we send
+     * (Defaults to the system load per core plus the fill ratio of a {@link RingBufferDispatcher}).
+     */
+    @Getter @Setter
+    private DoubleSupplier loadSupplier;
+
+    /**
+     * Limits the rate of received packets per sender and per packet class (Unlimited unless configured).
+     */
+    @Getter
+    private final InboundRateLimiter rateLimiter;
+
+    /**
+     * Replicates the keyed states of this node (See {@link StateReplicator#getState(String)}).
+     */
+    @Getter
+    private final StateReplicator stateReplicator;
+
+    /**
+     * Sends the transmissions of {@link com.endersuite.packify.packets.Conflatable} packets.
+     */
+    @Getter
+    private final ConflationQueue conflationQueue;
+
+    /**
+     * The packet classes known to this node, prepared before they are first sent or received.
+     */
+    @Getter
+    private final PacketRegistry packetRegistry;
+
+    /**
+     * Records all sent & received messages ({@code null} if not recording).
+     */
+    @Getter
+    private volatile TrafficRecorder recorder;
+
+    /**
+     * Stores messages while disconnected ({@code null} if disabled -> Messages are dropped).
+     */
+    @Getter
+    private volatile DurableOutbox outbox;
+
+    /**
+     * The protocol connecting this site with other sites ({@code null} if the stack is not multi-site,
+     * see {@link StackProfile#relay(String, StackProfile, String...)}).
+     */
+    @Getter
+    private final RELAY2 relay;
+
 
     // ======================   CONSTRUCTOR
 
     public NetworkManager(EventLoop eventLoop, String nodeName) throws Exception {
-        super(eventLoop);
+        this(new EventLoopDispatcher(eventLoop), nodeName);
+    }
 
-        eventLoop.removeEventHandler(PacketReceivedEvent.class, this::handlePacketReceivedEvent);   // Make sure packets are not handled twice or more times
-        eventLoop.addEventHandler(PacketReceivedEvent.class, this::handlePacketReceivedEvent);
+    /**
+     * Creates a new NetworkManager that uses a custom dispatch engine for received packets.
+     *
+     * @param dispatcher
+     *          The dispatcher to use (e.g. {@link com.endersuite.packify.dispatch.RingBufferDispatcher})
+     * @param nodeName
+     *          The name of the node ({@code default} for a random one)
+     * @throws Exception
+     */
+    public NetworkManager(PacketDispatcher dispatcher, String nodeName) throws Exception {
+        this(dispatcher, nodeName, null);
+    }
+
+    /**
+     * Creates a new NetworkManager whose channels are created using a stack profile.
+     *
+     * @param eventLoop
+     *          The event loop to dispatch received packets with
+     * @param nodeName
+     *          The name of the node ({@code default} for a random one)
+     * @param stackProfile
+     *          The profile (e.g. {@link StackProfile#lowLatency()}) or {@code null} for the JGroups default configuration
+     * @throws Exception
+     */
+    public NetworkManager(EventLoop eventLoop, String nodeName, StackProfile stackProfile) throws Exception {
+        this(new EventLoopDispatcher(eventLoop), nodeName, stackProfile);
+    }
+
+    /**
+     * Creates a new NetworkManager that uses a custom dispatch engine and whose channels are created using a stack profile.
+     *
+     * @param dispatcher
+     *          The dispatcher to use (e.g. {@link com.endersuite.packify.dispatch.RingBufferDispatcher})
+     * @param nodeName
+     *          The name of the node ({@code default} for a random one)
+     * @param stackProfile
+     *          The profile (e.g. {@link StackProfile#lowLatency()}) or {@code null} for the JGroups default configuration
+     * @throws Exception
+     */
+    public NetworkManager(PacketDispatcher dispatcher, String nodeName, StackProfile stackProfile) throws Exception {
+        super(dispatcher);
 
         Transmission.setDefaultNetworkManager(this);
-        this.jChannel = new JChannel();
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.stackProfile = stackProfile;
+        this.jChannel = createChannel();
+        this.relay = this.jChannel.getProtocolStack().findProtocol(RELAY2.class);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "packify-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
         this.jChannel.setReceiver(new DefaultReceiver(this));
         this.collectableManager = new CollectableManager(this);
+        this.aggregationManager = new AggregationManager(this);
+        this.loopbackMode = LoopbackMode.COPY;
+        this.virtualNodes = 128;
+        this.responseStatistics = new ResponseStatistics();
+        this.loadSupplier = this::estimateLoad;
+        this.rateLimiter = new InboundRateLimiter(this);
+        this.stateReplicator = new StateReplicator(this);
+        this.conflationQueue = new ConflationQueue(this);
+        this.packetRegistry = new PacketRegistry(this);
+        this.scheduler.scheduleAtFixedRate(this.responseStatistics::decay, 30, 30, TimeUnit.SECONDS);
         //this.jChannel.setDiscardOwnMessages(true);
 
         if ("default".equalsIgnoreCase(nodeName))
             nodeName = UUID.randomUUID().toString().split("-")[0];
 
         getJChannel().name(nodeName);
+        getTracer().setNodeName(nodeName);
 
     }
 
@@ -66,6 +253,7 @@ public class NetworkManager extends APacketDelegator {
 
     /**
      * Connects to an existing cluster or creates a new one if none exist already.
+     * Afterwards the packet classes are warmed up if {@link PacketRegistry#getWarmupRounds()} is set.
      *
      * @param clusterName
      *          The cluster name
@@ -73,13 +261,125 @@ public class NetworkManager extends APacketDelegator {
      */
     public void connect(String clusterName) throws Exception {
         getJChannel().connect(clusterName);
+        if (getStripes() != null)
+            getStripes().connect(clusterName);
+        if (getOutbox() != null)
+            getOutbox().drain();
+        if (getPacketRegistry().getWarmupRounds() > 0)
+            getPacketRegistry().warmUp(getPacketRegistry().getWarmupRounds());
     }
 
     /**
-     * Closes the connection to the cluster.
+     * Closes the connection to the cluster and stops everything owned by this manager: Queued & pending collectable
+     * requests are cancelled, the admission control, conflation queue, scheduler, watchdog & dispatcher are shut down
+     * and the recording & outbox are closed.
+     * <br><br><i>Note: The manager can not be connected again afterwards!</i>
      */
     public void disconnect() {
+        getCollectableManager().getAdmissionControl().shutdown();
+        new ArrayList<>(getCollectableManager().getPendingTransmissions().values()).forEach(CompletableTransmission::cancel);
+        getConflationQueue().shutdown();
+
+        if (getStripes() != null)
+            getStripes().close();
         getJChannel().close();
+
+        getScheduler().shutdownNow();
+        try {
+            getScheduler().awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        stopRecording();
+        DurableOutbox outbox = this.outbox;
+        this.outbox = null;
+        if (outbox != null)
+            outbox.close();
+
+        getWatchdog().shutdown();
+        getDispatcher().shutdown();
+    }
+
+    /**
+     * Enables striped mode: Additional channels, each with their own protocol stack, are created and packets are
+     * distributed across all channels using the selector. This lets independent kinds of traffic (e.g. bulk & control)
+     * scale independently instead of sharing one stack and its locks.
+     * <br><br><i>Note: Must be called before {@link NetworkManager#connect(String)}! All nodes of the cluster
+     * must use the same stripe count & selector and have unique node names.</i>
+     *
+     * @param stripeCount
+     *          The total amount of channels (Including the primary channel)
+     * @param selector
+     *          Decides which channel a packet is sent over
+     * @throws Exception
+     */
+    public void enableStriping(int stripeCount, StripeSelector selector) throws Exception {
+
+        // THROW: Already connected
+        if (getJChannel().isConnected())
+            throw new IllegalStateException("Striping must be enabled before connecting!");
+
+        // THROW: Every stripe would join the bridge of the sites
+        if (getRelay() != null)
+            throw new IllegalStateException("Striping is not supported with multi-site stacks!");
+
+        List<JChannel> channels = new ArrayList<>(stripeCount);
+        channels.add(getJChannel());
+        for (int stripe = 1; stripe < stripeCount; stripe++) {
+            JChannel channel = createChannel();
+            channel.setReceiver(new DefaultReceiver(this, stripe));
+            channel.name(getJChannel().getName());
+            channels.add(channel);
+        }
+
+        this.stripes = new ChannelStripes(channels, selector);
+    }
+
+    /**
+     * Starts recording all messages sent & received by this node for a later replay
+     * (See {@link com.endersuite.packify.recording.TrafficReplayer}). A running recording is stopped.
+     *
+     * @param directory
+     *          An empty directory to record into
+     * @throws IOException
+     */
+    public void startRecording(Path directory) throws IOException {
+        TrafficRecorder previous = this.recorder;
+        this.recorder = new TrafficRecorder(directory, getJChannel().getName());
+        if (previous != null)
+            previous.close();
+    }
+
+    /**
+     * Enables the durable outbox: Messages sent while disconnected are stored in the directory instead of being
+     * dropped and sent once connected again. A backlog left in the directory by a previous run is sent as well.
+     *
+     * @param directory
+     *          The directory of the outbox
+     * @return The outbox (For configuring limits & expiries)
+     * @throws IOException
+     */
+    public DurableOutbox enableOutbox(Path directory) throws IOException {
+
+        // THROW: Already enabled
+        if (getOutbox() != null)
+            throw new IllegalStateException("The outbox is already enabled!");
+
+        this.outbox = new DurableOutbox(this, directory);
+        if (getJChannel().isConnected())
+            this.outbox.drain();
+        return this.outbox;
+    }
+
+    /**
+     * Stops the recording.
+     */
+    public void stopRecording() {
+        TrafficRecorder recorder = this.recorder;
+        this.recorder = null;
+        if (recorder != null)
+            recorder.close();
     }
 
     // ======================   HELPERS
@@ -93,8 +393,207 @@ public class NetworkManager extends APacketDelegator {
         return getJChannel().getView().getMembers().size();
     }
 
+    /**
+     * Returns the site of this node.
+     *
+     * @return The site or {@code null} if the stack is not multi-site
+     */
+    public String getSite() {
+        return getRelay() != null ? getRelay().site() : null;
+    }
+
+    /**
+     * Returns the site of a member.
+     * Members of other sites have site addresses, members of our own cluster are in our site.
+     *
+     * @param address
+     *          The address of the member
+     * @return The site or {@code null} if the stack is not multi-site
+     */
+    public String getSite(Address address) {
+        return address instanceof SiteAddress ? ((SiteAddress) address).getSite() : getSite();
+    }
+
+    /**
+     * Returns all configured sites (Including ours).
+     *
+     * @return The sites (Empty if the stack is not multi-site)
+     */
+    public List<String> getSites() {
+        return getRelay() != null ? getRelay().siteNames() : Collections.emptyList();
+    }
+
+    /**
+     * Returns whether a site is the site of this node (Every site is local if the stack is not multi-site).
+     *
+     * @param site
+     *          The site
+     * @return {@code true} if the site is local
+     */
+    public boolean isLocalSite(String site) {
+        return getRelay() == null || getRelay().site().equals(site);
+    }
+
+    /**
+     * Returns the consistent hash ring for the current cluster members used for key based routing.
+     *
+     * @return The ring
+     * @throws IllegalStateException
+     *          If not connected to a cluster (There are no members to route to)
+     */
+    public ConsistentHashRing getHashRing() {
+        View view = getJChannel().getView();
+
+        // THROW: No members known
+        if (view == null)
+            throw new IllegalStateException("Keys can not be routed whilst not connected to a cluster!");
+
+        ConsistentHashRing ring = this.hashRing;
+
+        if (ring == null || ring.getView() != view || ring.getVirtualNodes() != getVirtualNodes())
+            this.hashRing = ring = new ConsistentHashRing(view, getVirtualNodes());
+
+        return ring;
+    }
+
+    /**
+     * Sends a packet wrapped in the given message.
+     * If the packet is addressed to this node (or broadcast with loopback), it gets delivered to the local handlers
+     * directly as configured by the {@link LoopbackMode} instead of travelling through the JGroups stack.
+     * The packet only gets serialized if it actually has to leave the process.
+     *
+     * @param message
+     *          The message carrying the routing information (and the serialized payload if already present)
+     * @param packet
+     *          The packet to send or {@code null} if the message already contains its payload
+     * @throws Exception
+     */
+    public void send(Message message, APacket packet) throws Exception {
+        TraceContext trace = packet != null ? getTracer().start(packet) : null;
+
+        // RET: Not sampled
+        if (trace == null) {
+            sendPacket(message, packet);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            sendPacket(message, packet);
+        } finally {
+            getTracer().recordSend(trace, packet.getClass().getSimpleName(), message.getDest(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends a packet (See {@link NetworkManager#send(Message, APacket)}).
+     *
+     * @param message
+     *          The message carrying the routing information (and the serialized payload if already present)
+     * @param packet
+     *          The packet to send or {@code null} if the message already contains its payload
+     * @throws Exception
+     */
+    private void sendPacket(Message message, APacket packet) throws Exception {
+
+        // RET: Not connected or backlog has to be sent first
+        DurableOutbox outbox = getOutbox();
+        if (outbox != null && (!this.jChannel.isConnected() || outbox.hasBacklog())) {
+            outbox.store(serialize(message, packet), packet != null ? packet.getClass() : null);
+            return;
+        }
+
+        // RET: Not connected
+        if (!this.jChannel.isConnected()) return;
+
+        if (packet instanceof ACollectablePacket && ((ACollectablePacket) packet).getType() == ACollectablePacket.Type.RESPONSE)
+            ((ACollectablePacket) packet).setResponderLoad(getLoadSupplier().getAsDouble());
+
+        // RET: Response gets merged into the aggregate of our subtree
+        if (packet instanceof ACollectablePacket
+                && ((ACollectablePacket) packet).getType() == ACollectablePacket.Type.RESPONSE
+                && getAggregationManager().offerLocal((ACollectablePacket) packet))
+            return;
+
+        // Relayed broadcast of the site master -> JGroups only relays the broadcasts a site master receives
+        // (Not ours without loopback), so send it to the other sites explicitly
+        if (packet != null && message.getDest() == null && isRelayed(message) && getRelay().isSiteMaster()) {
+            for (String site : getSites()) {
+                if (!isLocalSite(site))
+                    sendToSite(site, message, packet);
+            }
+            message = message.copy(true);
+            message.setFlag(Message.Flag.NO_RELAY);
+        }
+
+        // RET: Raw message or loopback through the stack requested
+        if (packet == null || getLoopbackMode() == LoopbackMode.STACK) {
+            sendRaw(serialize(message, packet), selectStripe(packet));
+            return;
+        }
+
+        Address self = getJChannel().getAddress();
+        Address dest = message.getDest();
+
+        // RET: Self addressed packets never leave the process
+        if (self.equals(dest)) {
+            new StrFmt("{prefix} Delivering locally: %s", packet).setLevel(Level.TRACE).toLog();
+            deliverLocally(packet, dest);
+            return;
+        }
+
+        // RET: Remote destination or broadcast without loopback
+        if (dest != null || message.isTransientFlagSet(Message.TransientFlag.DONT_LOOPBACK)) {
+            sendRaw(serialize(message, packet), selectStripe(packet));
+            return;
+        }
+
+        // Broadcast with loopback -> Send to the other nodes only & deliver to ourselves locally
+        if (getNodeCount() > 1 || isRelayed(message)) {
+            Message remoteMessage = serialize(message, packet).copy(true);
+            remoteMessage.setTransientFlag(Message.TransientFlag.DONT_LOOPBACK);
+            sendRaw(remoteMessage, selectStripe(packet));
+        }
+        deliverLocally(packet, null);
+    }
+
+    /**
+     * Broadcasts a packet to the members of a site only.
+     * The local site is reached by a broadcast that is not relayed. For other sites, the packet is sent to their
+     * site master, which broadcasts it in its site (See {@link SiteBroadcastPacket}).
+     *
+     * @param site
+     *          The site
+     * @param message
+     *          The message carrying the flags (and the serialized payload if already present)
+     * @param packet
+     *          The packet to send
+     * @throws Exception
+     */
+    public void sendToSite(String site, Message message, APacket packet) throws Exception {
+
+        // RET: Local broadcast
+        if (isLocalSite(site)) {
+            message.setDest(null);
+            message.setFlag(Message.Flag.NO_RELAY);
+            send(message, packet);
+            return;
+        }
+
+        // THROW: Unknown site
+        if (!getSites().contains(site))
+            throw new IllegalArgumentException("Unknown site " + site + "!");
+
+        Message siteMessage = new Message(new SiteMaster(site), new SiteBroadcastPacket(site, packet));
+        siteMessage.setFlag(message.getFlags());
+        siteMessage.clearFlag(Message.Flag.NO_RELAY);
+        new StrFmt("{prefix} Sending %s to site %s", packet, site).setLevel(Level.TRACE).toLog();
+        sendRaw(siteMessage);
+    }
+
     /**
      * Sends a message over the active JChannel.
+     * If not connected, the message is stored in the outbox if enabled or dropped otherwise.
      *
      * @param message
      *          The message to send
@@ -103,21 +602,286 @@ public class NetworkManager extends APacketDelegator {
     public void sendRaw(Message message) throws Exception {
 
         // RET: Not connected
-        if (!this.jChannel.isConnected()) return;
+        if (!this.jChannel.isConnected()) {
+            if (getOutbox() != null)
+                getOutbox().store(message, null);
+            return;
+        }
 
-        new StrFmt("{prefix} Sending: ", message.getObject().toString()).setLevel(Level.TRACE).toLog();
+        sendConnected(message);
+    }
+
+    /**
+     * Sends a message over the active JChannel without falling back to the outbox (Used to drain the outbox).
+     *
+     * @param message
+     *          The message to send
+     * @throws IllegalStateException
+     *          If not connected
+     * @throws Exception
+     */
+    public void sendConnected(Message message) throws Exception {
+
+        // THROW: Not connected (The channel throws as well if it disconnects in the meantime)
+        if (!this.jChannel.isConnected())
+            throw new IllegalStateException("Not connected!");
+
+        new StrFmt("{prefix} Sending: %s", message).setLevel(Level.TRACE).toLog();
+        record(message, 0);
         getJChannel().send(message);
     }
 
+    /**
+     * Sends a message over a specific stripe.
+     * Unicast destinations are translated from primary channel addresses to the addresses of the stripe.
+     * If the destination is not (yet) known on the stripe, the message is sent over the primary channel.
+     *
+     * @param message
+     *          The message to send
+     * @param stripe
+     *          The stripe index (0 for the primary channel)
+     * @throws Exception
+     */
+    public void sendRaw(Message message, int stripe) throws Exception {
+
+        // RET: Primary channel
+        if (stripe == 0 || getStripes() == null) {
+            sendRaw(message);
+            return;
+        }
+
+        JChannel channel = getStripes().getChannel(stripe);
+        Message stripeMessage = message;
+        if (message.getDest() != null) {
+            Address dest = getStripes().toStripe(message.getDest(), stripe);
+
+            // RET: Destination unknown on stripe
+            if (dest == null) {
+                sendRaw(message);
+                return;
+            }
+
+            stripeMessage = message.copy(true);
+            stripeMessage.setDest(dest);
+        }
+
+        // RET: Not connected -> Sent over the primary channel (Or stored in the outbox)
+        if (!channel.isConnected()) {
+            sendRaw(message);
+            return;
+        }
+
+        new StrFmt("{prefix} Sending on stripe %d: %s", stripe, stripeMessage).setLevel(Level.TRACE).toLog();
+        record(message, stripe);
+        channel.send(stripeMessage);
+    }
+
+    /**
+     * Dispatches a received packet to the registered handlers.
+     * Inline handlers are called right away on the current thread, all others through the dispatcher.
+     * <br><br><i>Note: The sender & recipient of the packet must already be set!</i>
+     *
+     * @param packet
+     *          The received packet
+     */
+    public void dispatchPacket(APacket packet) {
+        new StrFmt("{prefix} Received packet: %s in %dms", packet, (System.currentTimeMillis() - packet.getCreatedAt()))
+                .setLevel(Level.DEBUG)
+                .toLog();
+
+        // RET: Cancels are handled right away, so that they overtake the queued requests they cancel
+        if (packet instanceof CancelCollectionPacket) {
+            getCollectableManager().handleCancelPacket((CancelCollectionPacket) packet);
+            return;
+        }
+
+        // RET: Warm-up packets never reach the handlers
+        if (packet instanceof WarmupPacket) {
+            getPacketRegistry().handleWarmupPacket((WarmupPacket) packet);
+            return;
+        }
+
+        // RET: Broadcast in our site by the site master or unwrapped
+        if (packet instanceof SiteBroadcastPacket) {
+            handleSiteBroadcast((SiteBroadcastPacket) packet);
+            return;
+        }
+
+        // RET: Requester does not wait for a response anymore
+        if (isStaleRequest(packet)) {
+            new StrFmt("{prefix} Dropping stale request: %s", packet).setLevel(Level.DEBUG).toLog();
+            return;
+        }
+
+        // RET: Handled completely by inline handlers on this thread
+        if (!(packet instanceof ACollectablePacket) && !handleInline(packet))
+            return;
+
+        if (packet.getTraceContext() != null)
+            packet.getTraceContext().setQueuedAt(System.nanoTime());
+        getDispatcher().dispatch(packet);
+    }
+
+    /**
+     * Delivers a packet to the local handlers without serializing it.
+     *
+     * @param packet
+     *          The packet to deliver
+     * @param recipient
+     *          The recipient of the packet ({@code null} if it was broadcast)
+     */
+    private void deliverLocally(APacket packet, Address recipient) {
+        APacket localPacket = getLoopbackMode() == LoopbackMode.COPY ? packet.copy() : packet;
+        localPacket.setSender(getJChannel().getAddress());
+        localPacket.setRecipient(recipient);
+        dispatchPacket(localPacket);
+    }
+
+    /**
+     * Records a sent message if recording.
+     *
+     * @param message
+     *          The message (Addressed with primary channel addresses)
+     * @param stripe
+     *          The stripe it is sent on
+     */
+    private void record(Message message, int stripe) {
+        TrafficRecorder recorder = this.recorder;
+        if (recorder != null)
+            recorder.record(TrafficRecord.Direction.SENT, message, stripe, getJChannel().getAddress(), message.getDest());
+    }
+
+    /**
+     * Returns whether a packet is a request that expired or was cancelled by the requester.
+     *
+     * @param packet
+     *          The packet
+     * @return {@code true} if the packet should not be handled
+     */
+    private boolean isStaleRequest(APacket packet) {
+        return packet instanceof ACollectablePacket
+                && ((ACollectablePacket) packet).getType() == ACollectablePacket.Type.REQUEST
+                && getCollectableManager().isStale((ACollectablePacket) packet);
+    }
+
+    /**
+     * Estimates the load of this node.
+     *
+     * @return The system load average per core plus the fill ratio of the dispatch buffer
+     */
+    private double estimateLoad() {
+        double systemLoad = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        double load = systemLoad < 0 ? 0 : systemLoad / Runtime.getRuntime().availableProcessors();
+
+        if (getDispatcher() instanceof RingBufferDispatcher) {
+            RingBufferDispatcher dispatcher = (RingBufferDispatcher) getDispatcher();
+            load += (double) dispatcher.getBacklog() / dispatcher.getCapacity();
+        }
+
+        return load;
+    }
+
+    /**
+     * Creates a new channel using the configured stack profile.
+     *
+     * @return The channel
+     * @throws Exception
+     */
+    private JChannel createChannel() throws Exception {
+        return getStackProfile() != null ? getStackProfile().createChannel() : new JChannel();
+    }
+
+    /**
+     * Returns the stripe a packet is sent over.
+     *
+     * @param packet
+     *          The packet ({@code null} for raw messages)
+     * @return The stripe index (0 if striping is disabled)
+     */
+    private int selectStripe(APacket packet) {
+        return getStripes() != null && packet != null ? getStripes().select(packet) : 0;
+    }
+
+    /**
+     * Returns whether a broadcast is relayed to the other sites.
+     *
+     * @param message
+     *          The message
+     * @return {@code true} if other sites receive the message
+     */
+    private boolean isRelayed(Message message) {
+        return getRelay() != null && getRelay().relayMulticasts() && !message.isFlagSet(Message.Flag.NO_RELAY);
+    }
+
+    /**
+     * Handles a packet that is broadcast in our site on behalf of another site: The site master broadcasts it
+     * to the members of the site, the members handle the carried packet as if it was sent by the origin.
+     *
+     * @param packet
+     *          The received packet
+     */
+    private void handleSiteBroadcast(SiteBroadcastPacket packet) {
+
+        // RET: Received by the site master -> Broadcast in the site (Including ourselves)
+        if (packet.getOrigin() == null) {
+            packet.setOrigin(packet.getSender());
+            Message message = new Message(null, packet);
+            message.setFlag(Message.Flag.NO_RELAY);
+            try {
+                sendRaw(message);
+            } catch (Exception e) {
+                new StrFmt("{prefix} Could not broadcast " + packet.getPacket() + " in site " + packet.getSite() + "!", e)
+                        .setLevel(Level.WARN).toLog();
+            }
+            return;
+        }
+
+        APacket sitePacket = packet.getPacket();
+        sitePacket.setSender(packet.getOrigin());
+        sitePacket.setRecipient(null);
+        dispatchPacket(sitePacket);
+    }
+
+    /**
+     * Serializes the packet into the message payload if that did not happen yet.
+     *
+     * @param message
+     *          The message to populate
+     * @param packet
+     *          The packet to serialize (May be {@code null} for raw messages)
+     * @return The populated message
+     */
+    private Message serialize(Message message, APacket packet) {
+        if (packet != null && message.getRawBuffer() == null)
+            message.setObject(packet);
+        return message;
+    }
+
 
     // ======================   EVENT HANDLERS
 
     @Override
-    public void handlePacketReceivedEvent(PacketReceivedEvent event) {
-        APacket packet = event.getPacket();
+    public void handlePacket(APacket packet) {
+
+        TraceContext trace = packet.getTraceContext();
+        if (trace != null && trace.getQueuedAt() != 0 && getTracer().isEnabled())
+            getTracer().record(trace, SpanKind.QUEUE, packet.getClass().getSimpleName(), packet.getSender(),
+                    trace.getQueuedAt(), System.nanoTime() - trace.getQueuedAt());
+
+        // RET: Expired or cancelled whilst queued
+        if (isStaleRequest(packet)) {
+            new StrFmt("{prefix} Dropping stale request: %s", packet).setLevel(Level.DEBUG).toLog();
+            return;
+        }
+
+        // Aggregated request -> Prepare collecting the responses of our subtree before our handlers respond
+        if (packet instanceof ACollectablePacket && ((ACollectablePacket) packet).getAggregationTree() != null
+                && ((ACollectablePacket) packet).getType().equals(ACollectablePacket.Type.REQUEST))
+            getAggregationManager().open((ACollectablePacket) packet);
 
         if (packet instanceof ACollectablePacket && ((ACollectablePacket) packet).getType().equals(ACollectablePacket.Type.RESPONSE)) {
-            try { getCollectableManager().handleCollectablePacket((ACollectablePacket) packet); }
+            // Completes transmissions -> Their consumers must not wait for slots freed by this thread
+            try { runAsHandler(() -> getCollectableManager().handleCollectablePacket((ACollectablePacket) packet)); }
             catch (Exception e) {
                 e.printStackTrace();
                 new StrFmt("{prefix} A handle threw an error for collectable " + packet + "!", e)
@@ -126,7 +890,7 @@ public class NetworkManager extends APacketDelegator {
             return;
         }
 
-        super.handlePacketReceivedEvent(event);
+        super.handlePacket(packet);
     }
 
 }
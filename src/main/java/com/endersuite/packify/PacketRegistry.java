@@ -0,0 +1,336 @@
+package com.endersuite.packify;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.packets.CancelCollectionPacket;
+import com.endersuite.packify.packets.SiteBroadcastPacket;
+import com.endersuite.packify.packets.SlowDownPacket;
+import com.endersuite.packify.packets.StateSyncPacket;
+import com.endersuite.packify.packets.WarmupPacket;
+import com.endersuite.packify.state.StateEntry;
+import com.endersuite.packify.transmission.DeliveryPolicy;
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Message;
+
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The packet classes known to a {@link NetworkManager}. Registering a class initializes it and builds its serialization
+ * descriptors up front, instead of paying for it when the first packet of the class is received.
+ * Classes are registered explicitly, by scanning a package or automatically once a handler is added for them.
+ * <br><br>With {@code warmupRounds > 0}, {@link NetworkManager#connect(String)} also sends a sample of every class
+ * to this node through the protocol stack (of every stripe) and waits until they were received, so that the
+ * serialization of every class and the send & receive paths of the stack are initialized before live traffic arrives.
+ * <br><br><i>Note: The samples are only deserialized, they never pass the dispatcher or any handler.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class PacketRegistry {
+
+    // ======================   VARS
+
+    @Getter
+    private final NetworkManager networkManager;
+
+    /**
+     * The registered packet classes.
+     */
+    private final Set<Class<? extends APacket>> types;
+
+    /**
+     * The amount of warm-up round trips done when connecting ({@code 0} to disable, defaults to 0).
+     */
+    @Getter @Setter
+    private volatile int warmupRounds;
+
+    /**
+     * The maximum time to wait for a warm-up round (Defaults to 5s).
+     */
+    @Getter @Setter
+    private volatile Duration warmupTimeout;
+
+    /**
+     * The pending warm-up rounds.
+     */
+    private final Map<UUID, CountDownLatch> rounds;
+
+
+    // ======================   CONSTRUCTOR
+
+    public PacketRegistry(NetworkManager networkManager) {
+        this.networkManager = networkManager;
+        this.types = ConcurrentHashMap.newKeySet();
+        this.warmupTimeout = Duration.ofSeconds(5);
+        this.rounds = new ConcurrentHashMap<>();
+
+        register(CancelCollectionPacket.class, SlowDownPacket.class, StateSyncPacket.class, SiteBroadcastPacket.class);
+        prepare(StateEntry.class, new HashSet<>());
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Registers packet classes: Initializes them and builds their serialization descriptors
+     * (Including the ones of their serializable fields).
+     *
+     * @param packetClasses
+     *          The classes
+     */
+    @SafeVarargs
+    public final void register(Class<? extends APacket>... packetClasses) {
+        for (Class<? extends APacket> packetClass : packetClasses) {
+
+            // Already registered
+            if (!this.types.add(packetClass)) continue;
+
+            try {
+                Class.forName(packetClass.getName(), true, packetClass.getClassLoader());
+            } catch (ClassNotFoundException ignored) {
+                // Loaded by the caller already
+            }
+            prepare(packetClass, new HashSet<>());
+            DeliveryPolicy.of(packetClass);
+        }
+    }
+
+    /**
+     * Registers all non-abstract packet classes of a package & its sub packages found on the classpath
+     * (Directories & jars).
+     *
+     * @param packageName
+     *          The package (e.g. {@code com.example.packets})
+     * @return The amount of found packet classes
+     * @throws IOException
+     *          If the classpath could not be read
+     */
+    @SuppressWarnings("unchecked")
+    public int scan(String packageName) throws IOException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader() != null
+                ? Thread.currentThread().getContextClassLoader()
+                : getClass().getClassLoader();
+        String path = packageName.replace('.', '/');
+
+        Set<String> classNames = new HashSet<>();
+        Enumeration<URL> resources = loader.getResources(path);
+        while (resources.hasMoreElements())
+            classNames.addAll(listClasses(resources.nextElement(), path));
+
+        int found = 0;
+        for (String className : classNames) {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(className, false, loader);
+            } catch (Throwable e) {
+                continue;
+            }
+
+            if (!APacket.class.isAssignableFrom(clazz) || Modifier.isAbstract(clazz.getModifiers())) continue;
+
+            register((Class<? extends APacket>) clazz);
+            found++;
+        }
+
+        new StrFmt("{prefix} Found %d packet classes in %s", found, packageName).setLevel(Level.DEBUG).toLog();
+        return found;
+    }
+
+    /**
+     * Returns the registered packet classes and the classes handlers were added for.
+     *
+     * @return The classes
+     */
+    public Set<Class<? extends APacket>> getTypes() {
+        Set<Class<? extends APacket>> types = new HashSet<>(this.types);
+        types.addAll(getNetworkManager().getHandlers().keySet());
+        return Collections.unmodifiableSet(types);
+    }
+
+    /**
+     * Sends samples of all registered packet classes to this node through the protocol stack of every stripe
+     * and waits until they were received.
+     * <br><br><i>Note: Called by {@link NetworkManager#connect(String)} if {@code warmupRounds > 0}.</i>
+     *
+     * @param rounds
+     *          The amount of round trips
+     * @return {@code true} if all rounds completed in time
+     * @throws Exception
+     */
+    public boolean warmUp(int rounds) throws Exception {
+        long start = System.nanoTime();
+        Set<Class<? extends APacket>> types = getTypes();
+        types.forEach(this::register);
+
+        List<APacket> samples = new ArrayList<>();
+        for (Class<? extends APacket> type : types) {
+            APacket sample = newSample(type);
+            if (sample != null)
+                samples.add(sample);
+        }
+
+        int stripes = getNetworkManager().getStripes() != null ? getNetworkManager().getStripes().size() : 1;
+        boolean completed = true;
+        for (int round = 0; round < rounds && completed; round++) {
+            UUID roundId = UUID.randomUUID();
+            CountDownLatch latch = new CountDownLatch(stripes);
+            this.rounds.put(roundId, latch);
+
+            try {
+                for (int stripe = 0; stripe < stripes; stripe++)
+                    getNetworkManager().sendRaw(new Message(getNetworkManager().getJChannel().getAddress(), new WarmupPacket(roundId, samples)), stripe);
+                completed = latch.await(getWarmupTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            } finally {
+                this.rounds.remove(roundId);
+            }
+        }
+
+        new StrFmt("{prefix} Warm-up with %d/%d packet classes %s after %dms", samples.size(), types.size(),
+                completed ? "completed" : "timed out", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .setLevel(completed ? Level.DEBUG : Level.WARN).toLog();
+        return completed;
+    }
+
+    /**
+     * Handles a received warm-up packet: Completes its round (Its samples were deserialized on receipt).
+     *
+     * @param packet
+     *          The received packet
+     */
+    public void handleWarmupPacket(WarmupPacket packet) {
+        CountDownLatch latch = this.rounds.get(packet.getRoundId());
+        if (latch != null)
+            latch.countDown();
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Builds the serialization descriptors of a class, its super classes and the types of its serialized fields.
+     *
+     * @param clazz
+     *          The class
+     * @param visited
+     *          The classes prepared already
+     */
+    private static void prepare(Class<?> clazz, Set<Class<?>> visited) {
+        for (Class<?> type = clazz; type != null && Serializable.class.isAssignableFrom(type); type = type.getSuperclass()) {
+
+            // RET: Already prepared
+            if (!visited.add(type)) return;
+
+            ObjectStreamClass.lookup(type);
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                Class<?> fieldType = field.getType();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || fieldType.isPrimitive()) continue;
+
+                while (fieldType.isArray())
+                    fieldType = fieldType.getComponentType();
+                if (!fieldType.isPrimitive() && !fieldType.isInterface())
+                    prepare(fieldType, visited);
+            }
+        }
+    }
+
+    /**
+     * Creates a sample instance using the no-args constructor of a class.
+     *
+     * @param type
+     *          The packet class
+     * @return The sample or {@code null} if the class has no no-args constructor
+     */
+    private static APacket newSample(Class<? extends APacket> type) {
+        try {
+            Constructor<? extends APacket> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lists the names of the classes inside a package directory or jar.
+     *
+     * @param url
+     *          The resource URL of the package
+     * @param path
+     *          The package path
+     * @return The fully qualified class names
+     * @throws IOException
+     */
+    private static List<String> listClasses(URL url, String path) throws IOException {
+        List<String> classNames = new ArrayList<>();
+
+        if ("jar".equals(url.getProtocol())) {
+            JarURLConnection connection = (JarURLConnection) url.openConnection();
+            connection.setUseCaches(false);
+            try (JarFile jar = connection.getJarFile()) {
+                for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                    String name = entries.nextElement().getName();
+                    if (name.startsWith(path + "/") && name.endsWith(".class"))
+                        classNames.add(toClassName(name));
+                }
+            }
+        }
+        else if ("file".equals(url.getProtocol())) {
+            Path directory;
+            try {
+                directory = Paths.get(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+
+            Path root = directory;
+            for (int i = path.split("/").length; i > 0; i--)
+                root = root.getParent();
+
+            try (Stream<Path> files = Files.walk(directory)) {
+                Path classpathRoot = root;
+                classNames.addAll(files
+                        .filter(file -> file.toString().endsWith(".class"))
+                        .map(file -> toClassName(classpathRoot.relativize(file).toString().replace('\\', '/')))
+                        .collect(Collectors.toList()));
+            }
+        }
+
+        classNames.removeIf(name -> name.endsWith("package-info") || name.endsWith("module-info"));
+        return classNames;
+    }
+
+    private static String toClassName(String fileName) {
+        return fileName.substring(0, fileName.length() - ".class".length()).replace('/', '.');
+    }
+
+}
@@ -0,0 +1,269 @@
+package com.endersuite.packify;
+
+import lombok.Getter;
+import org.jgroups.JChannel;
+import org.jgroups.protocols.BARRIER;
+import org.jgroups.protocols.FD_ALL;
+import org.jgroups.protocols.FD_SOCK;
+import org.jgroups.protocols.FRAG2;
+import org.jgroups.protocols.MERGE3;
+import org.jgroups.protocols.MFC;
+import org.jgroups.protocols.PING;
+import org.jgroups.protocols.SHARED_LOOPBACK;
+import org.jgroups.protocols.SHARED_LOOPBACK_PING;
+import org.jgroups.protocols.TP;
+import org.jgroups.protocols.UDP;
+import org.jgroups.protocols.UFC;
+import org.jgroups.protocols.UNICAST3;
+import org.jgroups.protocols.VERIFY_SUSPECT;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.protocols.relay.RELAY2;
+import org.jgroups.protocols.relay.config.RelayConfig;
+import org.jgroups.stack.Protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A programmatic JGroups protocol stack used to create the channels of a {@link NetworkManager}.
+ * Presets cover the common trade-offs and can be tuned further using {@link StackProfile#set(Class, String, Object)}
+ * or {@link StackProfile#configure(Class, Consumer)}. Every channel gets fresh protocol instances.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class StackProfile {
+
+    // ======================   VARS
+
+    /**
+     * The name of the cluster formed by the site masters of a multi-site setup.
+     */
+    public static final String BRIDGE_CLUSTER = "packify-bridge";
+
+    /**
+     * A descriptive name of the profile (e.g. for benchmark reports).
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * Creates the protocols of the stack, transport first.
+     */
+    private final Supplier<List<Protocol>> protocols;
+
+    /**
+     * Overrides applied to the protocols of every created stack in order.
+     */
+    private final List<Consumer<List<Protocol>>> overrides;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a custom profile.
+     *
+     * @param name
+     *          A descriptive name
+     * @param protocols
+     *          Creates new protocol instances (Transport first, top most protocol last)
+     */
+    public StackProfile(String name, Supplier<List<Protocol>> protocols) {
+        this.name = name;
+        this.protocols = protocols;
+        this.overrides = new ArrayList<>();
+    }
+
+
+    // ======================   PRESETS
+
+    /**
+     * UDP stack optimized for latency: Messages are sent immediately without bundling.
+     */
+    public static StackProfile lowLatency() {
+        return new StackProfile("low-latency", () -> udpStack(
+                new UDP().<UDP>setValue("bundler_type", "no-bundler").setThreadPoolMaxThreads(50)
+        ));
+    }
+
+    /**
+     * UDP stack optimized for throughput: Messages are bundled using a transfer queue,
+     * with larger socket buffers, thread pool & flow control credits.
+     */
+    public static StackProfile highThroughput() {
+        return new StackProfile("high-throughput", () -> {
+            UDP transport = new UDP().<UDP>setValue("bundler_type", "transfer-queue").setBundlerCapacity(64000).setMaxBundleSize(64000).setThreadPoolMaxThreads(200);
+            transport.setValue("ucast_recv_buf_size", 20_000_000)
+                    .setValue("ucast_send_buf_size", 10_000_000)
+                    .setValue("mcast_recv_buf_size", 25_000_000)
+                    .setValue("mcast_send_buf_size", 10_000_000);
+
+            List<Protocol> stack = udpStack(transport);
+            stack.forEach(protocol -> {
+                if (protocol instanceof UFC || protocol instanceof MFC)
+                    ((org.jgroups.protocols.FlowControl) protocol).setMaxCredits(20_000_000);
+            });
+            return stack;
+        });
+    }
+
+    /**
+     * In-JVM stack that connects all channels of the same cluster inside the process without any sockets.
+     * Useful for tests, benchmarks & replaying traffic with several nodes in one JVM.
+     */
+    public static StackProfile sharedLoopback() {
+        return new StackProfile("shared-loopback", () -> new ArrayList<>(Arrays.asList(
+                new SHARED_LOOPBACK(),
+                new SHARED_LOOPBACK_PING(),
+                new MERGE3(),
+                new NAKACK2(),
+                new UNICAST3(),
+                new STABLE(),
+                new GMS().joinTimeout(1000).setValue("print_local_addr", false),
+                new FRAG2().fragSize(60000)
+        )));
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Overrides a property of all protocols of the given class.
+     *
+     * @param protocol
+     *          The protocol class (e.g. {@code TP.class} for any transport)
+     * @param property
+     *          The name of the protocol field (e.g. {@code "thread_pool_max_threads"})
+     * @param value
+     *          The value matching the type of the field
+     * @return
+     */
+    public StackProfile set(Class<? extends Protocol> protocol, String property, Object value) {
+        return configure(protocol, instance -> instance.setValue(property, value));
+    }
+
+    /**
+     * Configures all protocols of the given class using their typed setters.
+     *
+     * @param protocol
+     *          The protocol class (e.g. {@code TP.class} for any transport)
+     * @param configurator
+     *          Configures a protocol instance
+     * @param <P>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <P extends Protocol> StackProfile configure(Class<P> protocol, Consumer<P> configurator) {
+        this.overrides.add(stack -> stack.stream()
+                .filter(protocol::isInstance)
+                .forEach(instance -> configurator.accept((P) instance)));
+        return this;
+    }
+
+    /**
+     * Overrides the bundler of the transport (e.g. {@code "no-bundler"}, {@code "transfer-queue"}, {@code "ring-buffer"}).
+     *
+     * @param bundlerType
+     *          The JGroups bundler type
+     * @return
+     */
+    public StackProfile bundler(String bundlerType) {
+        return set(TP.class, "bundler_type", bundlerType);
+    }
+
+    /**
+     * Overrides the maximum size of the transport's thread pool.
+     *
+     * @param maxThreads
+     *          The maximum amount of threads
+     * @return
+     */
+    public StackProfile threadPool(int maxThreads) {
+        return configure(TP.class, transport -> transport.setThreadPoolMaxThreads(maxThreads));
+    }
+
+    /**
+     * Adds {@code RELAY2} on top of the stack, which connects the cluster of this site with the clusters of the other
+     * sites (e.g. datacenters). The site masters of all sites form a bridge cluster using the bridge profile.
+     * Broadcasts are relayed to all sites unless sent with {@link org.jgroups.Message.Flag#NO_RELAY}.
+     * <br><br><i>Note: All nodes must list the same sites. To run several sites inside one JVM, use
+     * {@link StackProfile#sharedLoopback()} for both and connect each site using a different cluster name.</i>
+     *
+     * @param site
+     *          The site of the nodes using this profile
+     * @param bridge
+     *          The profile of the bridge channels connecting the site masters
+     * @param sites
+     *          All sites (Including this one)
+     * @return
+     */
+    public StackProfile relay(String site, StackProfile bridge, String... sites) {
+
+        // THROW: Unknown local site
+        if (!Arrays.asList(sites).contains(site))
+            throw new IllegalArgumentException("The sites must contain the local site " + site + "!");
+
+        this.overrides.add(stack -> {
+            RELAY2 relay = new RELAY2().site(site).relayMulticasts(true).asyncRelayCreation(false);
+            for (String name : sites) {
+                RelayConfig.BridgeConfig bridgeConfig = new RelayConfig.BridgeConfig(BRIDGE_CLUSTER) {
+                    @Override
+                    public JChannel createChannel() throws Exception {
+                        return bridge.createChannel();
+                    }
+                };
+                relay.addSite(name, new RelayConfig.SiteConfig(name).addBridge(bridgeConfig));
+            }
+            stack.add(relay);
+        });
+        return this;
+    }
+
+    /**
+     * Creates a new channel using this profile.
+     *
+     * @return The channel
+     * @throws Exception
+     */
+    public JChannel createChannel() throws Exception {
+        List<Protocol> stack = this.protocols.get();
+        this.overrides.forEach(override -> override.accept(stack));
+        return new JChannel(stack);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", getClass().getSimpleName(), getName());
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * The default UDP stack of JGroups (udp.xml) on top of the given transport.
+     */
+    private static List<Protocol> udpStack(UDP transport) {
+        return new ArrayList<>(Arrays.asList(
+                transport,
+                new PING(),
+                new MERGE3().setMinInterval(10000).setMaxInterval(30000),
+                new FD_SOCK(),
+                new FD_ALL(),
+                new VERIFY_SUSPECT(),
+                new BARRIER(),
+                new NAKACK2().<NAKACK2>setValue("xmit_interval", 500L).setUseMcastXmit(false),
+                new UNICAST3().setXmitInterval(500),
+                new STABLE().desiredAverageGossip(50000).setValue("max_bytes", 4_000_000L),
+                new GMS().joinTimeout(2000),
+                new UFC(),
+                new MFC(),
+                new FRAG2().fragSize(60000)
+        ));
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.endersuite.packify;
+
+import com.endersuite.packify.packets.APacket;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Decides which channel of a striped {@link NetworkManager} a packet is sent over.
+ * <br><br><i>Note: JGroups only guarantees ordering per channel. Packets that must be delivered in order
+ * have to be mapped to the same stripe!</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@FunctionalInterface
+public interface StripeSelector {
+
+    /**
+     * Selects the stripe for a packet.
+     *
+     * @param packet
+     *          The packet to send
+     * @param stripeCount
+     *          The amount of stripes
+     * @return The stripe index in {@code [0, stripeCount)}
+     */
+    int select(APacket packet, int stripeCount);
+
+
+    // ======================   FACTORIES
+
+    /**
+     * Spreads packet classes over all stripes by the hash of their class name,
+     * so all nodes map a class to the same stripe.
+     */
+    static StripeSelector byPacketClass() {
+        return (packet, stripeCount) -> Math.floorMod(packet.getClass().getName().hashCode(), stripeCount);
+    }
+
+    /**
+     * Maps packet classes to explicit stripes. Unmapped classes use the primary channel (stripe 0).
+     *
+     * @param stripes
+     *          The stripe per packet class
+     */
+    static StripeSelector byPacketClass(Map<Class<? extends APacket>, Integer> stripes) {
+        return (packet, stripeCount) -> stripes.getOrDefault(packet.getClass(), 0);
+    }
+
+    /**
+     * Spreads packets over all stripes by the hash of a key extracted from the packet.
+     *
+     * @param keyExtractor
+     *          Extracts the key (e.g. a player id) from a packet
+     */
+    static StripeSelector byKey(Function<APacket, Object> keyExtractor) {
+        return (packet, stripeCount) -> Math.floorMod(Objects.hashCode(keyExtractor.apply(packet)), stripeCount);
+    }
+
+}
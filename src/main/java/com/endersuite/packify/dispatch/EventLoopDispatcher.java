@@ -0,0 +1,73 @@
+package com.endersuite.packify.dispatch;
+
+import com.endersuite.packify.events.PacketReceivedEvent;
+import com.endersuite.packify.packets.APacket;
+import de.maximilianheidenreich.jeventloop.EventLoop;
+import lombok.Getter;
+
+import java.util.function.Consumer;
+
+/**
+ * Dispatches packets by wrapping them into {@link PacketReceivedEvent}s and pushing them through an {@link EventLoop}.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class EventLoopDispatcher implements PacketDispatcher {
+
+    // ======================   VARS
+
+    /**
+     * The event loop used for packet handling.
+     */
+    @Getter
+    private final EventLoop eventLoop;
+
+    /**
+     * The handler the packets are passed to ({@code null} if not started or shut down).
+     */
+    private volatile Consumer<APacket> handler;
+
+
+    // ======================   CONSTRUCTOR
+
+    public EventLoopDispatcher(EventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public void start(Consumer<APacket> handler) {
+        boolean registered = this.handler != null;
+        this.handler = handler;
+
+        // Make sure packets are not handled twice or more times
+        if (!registered)
+            getEventLoop().addEventHandler(PacketReceivedEvent.class, this::handlePacketReceivedEvent);
+    }
+
+    @Override
+    public void dispatch(APacket packet) {
+        getEventLoop().dispatch(new PacketReceivedEvent(packet));
+    }
+
+    @Override
+    public void shutdown() {
+        this.handler = null;
+    }
+
+
+    // ======================   EVENT HANDLERS
+
+    private void handlePacketReceivedEvent(PacketReceivedEvent event) {
+        Consumer<APacket> handler = this.handler;
+
+        // RET: Dispatcher was shut down
+        if (handler == null) return;
+
+        handler.accept(event.getPacket());
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.endersuite.packify.dispatch;
+
+import com.endersuite.packify.packets.APacket;
+
+import java.util.function.Consumer;
+
+/**
+ * An engine that hands received packets over from the receiving thread to the packet handlers.
+ * Implementations are bound to an {@link com.endersuite.packify.APacketDelegator}
+ * using {@link com.endersuite.packify.APacketDelegator#setDispatcher(PacketDispatcher)}.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public interface PacketDispatcher {
+
+    /**
+     * Starts the dispatcher. Called once when the dispatcher gets bound to a delegator.
+     *
+     * @param handler
+     *          The handler every dispatched packet must be passed to
+     */
+    void start(Consumer<APacket> handler);
+
+    /**
+     * Queues a packet for handling.
+     *
+     * @param packet
+     *          The received packet
+     */
+    void dispatch(APacket packet);
+
+    /**
+     * Stops the dispatcher. Called when the dispatcher gets replaced.
+     */
+    void shutdown();
+
+}
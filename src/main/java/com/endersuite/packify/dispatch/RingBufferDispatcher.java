@@ -0,0 +1,310 @@
+package com.endersuite.packify.dispatch;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.packets.APacket;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Dispatches packets through a preallocated, bounded ring buffer that is drained by a fixed set of consumer threads.
+ * Publishing a packet only claims a slot and stores a reference, no event or future objects are allocated.
+ * <br><br><i>Note: With more than one consumer thread, packets are handled concurrently and the delivery order
+ * of JGroups is no longer preserved! If the buffer is full, the receiving thread waits for a free slot. Packets
+ * dispatched by a consumer thread itself (e.g. loopback packets sent by a handler) are handled inline instead, as the
+ * consumer would otherwise wait for itself.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class RingBufferDispatcher implements PacketDispatcher {
+
+    // ======================   VARS
+
+    /**
+     * The preallocated slots. A slot is writable for the producer claiming sequence {@code s}
+     * if its sequence equals {@code s} and readable for the consumer claiming {@code s} if it equals {@code s + 1}.
+     */
+    private final Slot[] slots;
+    private final int mask;
+
+    /**
+     * The next sequence producers / consumers will claim.
+     */
+    private final AtomicLong producerSequence;
+    private final AtomicLong consumerSequence;
+
+    @Getter
+    private final int consumerCount;
+
+    @Getter
+    private final WaitStrategy waitStrategy;
+
+    private final List<Thread> consumers;
+    private volatile Consumer<APacket> handler;
+    private volatile boolean running;
+
+    /**
+     * The amount of packets dispatched after or left inside the buffer at shutdown, which were never handled.
+     */
+    private final LongAdder dropped;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a new ring buffer dispatcher with one consumer thread and the {@link WaitStrategy#sleeping()} strategy.
+     *
+     * @param bufferSize
+     *          The amount of slots (Gets rounded up to the next power of two)
+     */
+    public RingBufferDispatcher(int bufferSize) {
+        this(bufferSize, 1, WaitStrategy.sleeping());
+    }
+
+    /**
+     * Creates a new ring buffer dispatcher.
+     *
+     * @param bufferSize
+     *          The amount of slots (Gets rounded up to the next power of two)
+     * @param consumerCount
+     *          The amount of consumer threads
+     * @param waitStrategy
+     *          How idle consumers wait for new packets
+     */
+    public RingBufferDispatcher(int bufferSize, int consumerCount, WaitStrategy waitStrategy) {
+
+        // THROW: Invalid config
+        if (bufferSize < 1 || consumerCount < 1)
+            throw new IllegalArgumentException("bufferSize and consumerCount must be positive!");
+
+        int capacity = Integer.highestOneBit(bufferSize) == bufferSize ? bufferSize : Integer.highestOneBit(bufferSize) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++)
+            this.slots[i] = new Slot(i);
+
+        this.mask = capacity - 1;
+        this.producerSequence = new AtomicLong();
+        this.consumerSequence = new AtomicLong();
+        this.consumerCount = consumerCount;
+        this.waitStrategy = waitStrategy;
+        this.consumers = new CopyOnWriteArrayList<>();
+        this.dropped = new LongAdder();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public synchronized void start(Consumer<APacket> handler) {
+        this.handler = handler;
+
+        // RET: Already running
+        if (this.running) return;
+
+        this.running = true;
+        for (int i = 0; i < getConsumerCount(); i++) {
+            Thread consumer = new Thread(this::consume, "packify-dispatch-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            this.consumers.add(consumer);
+        }
+    }
+
+    @Override
+    public void dispatch(APacket packet) {
+
+        // RET: Nobody will ever drain the buffer
+        if (!this.running) {
+            drop(1);
+            return;
+        }
+
+        long sequence = this.producerSequence.get();
+        int backoff = 0;
+
+        while (true) {
+            Slot slot = this.slots[(int) sequence & this.mask];
+            long difference = slot.sequence - sequence;
+
+            if (difference == 0) {
+                if (this.producerSequence.compareAndSet(sequence, sequence + 1)) {
+                    slot.packet = packet;
+                    slot.sequence = sequence + 1;       // Publish
+                    getWaitStrategy().signal();
+                    return;
+                }
+            }
+            else if (difference < 0) {
+
+                // RET: Buffer full & nobody will ever drain it
+                if (!this.running) {
+                    drop(1);
+                    return;
+                }
+
+                // RET: Buffer full & called by a consumer -> It would wait for itself
+                if (this.consumers.contains(Thread.currentThread())) {
+                    handle(packet);
+                    return;
+                }
+
+                // Buffer full -> Back pressure onto the receiving thread
+                if (++backoff > 100)
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                else
+                    Thread.yield();
+            }
+
+            sequence = this.producerSequence.get();
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        this.running = false;
+        for (Thread consumer : this.consumers) {
+            consumer.interrupt();
+            LockSupport.unpark(consumer);
+        }
+        getWaitStrategy().signal();
+        this.consumers.clear();
+
+        long backlog = getBacklog();
+        if (backlog > 0)
+            drop(backlog);
+    }
+
+    /**
+     * Returns the approximate amount of packets waiting inside the buffer.
+     *
+     * @return The amount of queued packets
+     */
+    public long getBacklog() {
+        return Math.max(0, this.producerSequence.get() - this.consumerSequence.get());
+    }
+
+    /**
+     * Returns the amount of slots of the buffer.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return this.slots.length;
+    }
+
+    /**
+     * Returns the amount of packets that were dispatched after or still queued at shutdown and therefore never handled.
+     *
+     * @return The amount of dropped packets
+     */
+    public long getDroppedPackets() {
+        return this.dropped.sum();
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * The loop executed by each consumer thread.
+     */
+    private void consume() {
+        int idleCounter = 0;
+
+        while (this.running) {
+            APacket packet = poll();
+
+            if (packet == null) {
+                try { idleCounter = getWaitStrategy().idle(idleCounter, () -> !this.running || isAvailable()); }
+                catch (InterruptedException e) { break; }
+                continue;
+            }
+
+            idleCounter = 0;
+            handle(packet);
+        }
+    }
+
+    /**
+     * Passes a packet to the handler.
+     *
+     * @param packet
+     *          The packet
+     */
+    private void handle(APacket packet) {
+        try { this.handler.accept(packet); }
+        catch (Throwable e) {
+            e.printStackTrace();
+            new StrFmt("{prefix} Dispatching threw an error for " + packet + "!", e)
+                    .setLevel(Level.ERROR).toLog();
+        }
+    }
+
+    /**
+     * Counts packets that are never handled. The first drop gets logged.
+     *
+     * @param amount
+     *          The amount of dropped packets
+     */
+    private void drop(long amount) {
+        if (this.dropped.sum() == 0)
+            new StrFmt("{prefix} Dropping packets dispatched after shutdown (See getDroppedPackets())").setLevel(Level.WARN).toLog();
+        this.dropped.add(amount);
+    }
+
+    /**
+     * Claims & returns the next published packet.
+     *
+     * @return The packet or {@code null} if the buffer is empty
+     */
+    private APacket poll() {
+        long sequence = this.consumerSequence.get();
+
+        while (true) {
+            Slot slot = this.slots[(int) sequence & this.mask];
+            long difference = slot.sequence - (sequence + 1);
+
+            // RET: Nothing published yet
+            if (difference < 0) return null;
+
+            if (difference == 0 && this.consumerSequence.compareAndSet(sequence, sequence + 1)) {
+                APacket packet = slot.packet;
+                slot.packet = null;
+                slot.sequence = sequence + this.slots.length;       // Free slot for the next lap
+                return packet;
+            }
+
+            sequence = this.consumerSequence.get();
+        }
+    }
+
+    private boolean isAvailable() {
+        long sequence = this.consumerSequence.get();
+        return this.slots[(int) sequence & this.mask].sequence == sequence + 1;
+    }
+
+
+    // ======================   SLOT
+
+    /**
+     * A preallocated entry of the ring buffer.
+     */
+    private static final class Slot {
+
+        private volatile long sequence;
+        private APacket packet;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+    }
+
+}
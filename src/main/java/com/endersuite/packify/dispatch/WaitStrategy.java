@@ -0,0 +1,129 @@
+package com.endersuite.packify.dispatch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides how idle consumers of a {@link RingBufferDispatcher} wait for new packets.
+ * The strategies trade CPU usage for wake-up latency, from {@link #busySpin()} (lowest latency, burns a core)
+ * to {@link #blocking()} (no CPU usage while idle, highest latency).
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public interface WaitStrategy {
+
+    /**
+     * Called by a consumer whenever no packet is available.
+     *
+     * @param counter
+     *          The amount of consecutive idle calls (0 for the first one)
+     * @param available
+     *          Returns {@code true} once a packet is available or the dispatcher was shut down
+     * @return The counter to pass to the next idle call
+     * @throws InterruptedException
+     *          If the consumer got interrupted whilst waiting
+     */
+    int idle(int counter, BooleanSupplier available) throws InterruptedException;
+
+    /**
+     * Called by the producer after a packet got published.
+     */
+    void signal();
+
+
+    // ======================   FACTORIES
+
+    /**
+     * Spins in a tight loop. Lowest latency, but keeps one core busy per consumer.
+     */
+    static WaitStrategy busySpin() {
+        return new WaitStrategy() {
+            @Override
+            public int idle(int counter, BooleanSupplier available) {
+                return counter + 1;
+            }
+
+            @Override
+            public void signal() {}
+        };
+    }
+
+    /**
+     * Spins for a while and then yields the thread to others.
+     */
+    static WaitStrategy yielding() {
+        return new WaitStrategy() {
+            @Override
+            public int idle(int counter, BooleanSupplier available) {
+                if (counter > 100)
+                    Thread.yield();
+                return counter + 1;
+            }
+
+            @Override
+            public void signal() {}
+        };
+    }
+
+    /**
+     * Spins, yields and finally parks the thread for short periods. A good default for latency sensitive nodes
+     * that must not burn cores while idle.
+     */
+    static WaitStrategy sleeping() {
+        return new WaitStrategy() {
+            @Override
+            public int idle(int counter, BooleanSupplier available) {
+                if (counter > 200)
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                else if (counter > 100)
+                    Thread.yield();
+                return counter + 1;
+            }
+
+            @Override
+            public void signal() {}
+        };
+    }
+
+    /**
+     * Blocks on a condition until the producer signals a new packet.
+     * The producer only takes the lock if a consumer is actually waiting.
+     */
+    static WaitStrategy blocking() {
+        return new WaitStrategy() {
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Condition notEmpty = lock.newCondition();
+            private volatile int waiting;
+
+            @Override
+            public int idle(int counter, BooleanSupplier available) throws InterruptedException {
+                lock.lock();
+                try {
+                    waiting++;
+                    while (!available.getAsBoolean())
+                        notEmpty.await();
+                } finally {
+                    waiting--;
+                    lock.unlock();
+                }
+                return 0;
+            }
+
+            @Override
+            public void signal() {
+
+                // RET: Nobody waiting
+                if (waiting == 0) return;
+
+                lock.lock();
+                try { notEmpty.signalAll(); }
+                finally { lock.unlock(); }
+            }
+        };
+    }
+
+}
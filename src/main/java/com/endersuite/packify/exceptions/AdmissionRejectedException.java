@@ -0,0 +1,27 @@
+package com.endersuite.packify.exceptions;
+
+import com.endersuite.packify.transmission.CompletableTransmission;
+import lombok.Getter;
+
+/**
+ * Thrown when a {@link CompletableTransmission} is not admitted because too many collectable requests are in flight
+ * (See {@link com.endersuite.packify.transmission.AdmissionControl}).
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class AdmissionRejectedException extends PackifyException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The rejected transmission ({@code null} if the exception was deserialized).
+     */
+    @Getter
+    private final transient CompletableTransmission<?> transmission;
+
+    public AdmissionRejectedException(CompletableTransmission<?> transmission) {
+        this.transmission = transmission;
+    }
+
+}
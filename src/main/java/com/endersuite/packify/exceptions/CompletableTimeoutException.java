@@ -12,9 +12,9 @@ import lombok.Getter;
 public class CompletableTimeoutException extends PackifyException {
 
     @Getter
-    private CompletableTransmission transmission;
+    private CompletableTransmission<?> transmission;
 
-    public CompletableTimeoutException(CompletableTransmission transmission) {
+    public CompletableTimeoutException(CompletableTransmission<?> transmission) {
         this.transmission = transmission;
     }
 
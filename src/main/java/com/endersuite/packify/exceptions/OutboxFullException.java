@@ -0,0 +1,25 @@
+package com.endersuite.packify.exceptions;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a packet can not be sent right now and the outbox has reached its size limit.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class OutboxFullException extends PackifyException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The size limit of the outbox in bytes.
+     */
+    @Getter
+    private final long maxBytes;
+
+    public OutboxFullException(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.endersuite.packify.handlers;
+
+/**
+ * The execution priority of a packet handler. Handlers with a higher priority are executed first.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public enum HandlerPriority {
+    LOWEST,
+    LOW,
+    NORMAL,
+    HIGH,
+    HIGHEST
+}
@@ -0,0 +1,332 @@
+package com.endersuite.packify.handlers;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.packets.APacket;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures every handler invocation of an {@link com.endersuite.packify.APacketDelegator} and watches for handlers
+ * that block the dispatch thread. While a handler runs longer than the slow threshold, the stack trace of its thread
+ * is sampled and logged, so that the blocking call can be found.
+ * <br><br>Packet classes can be isolated: Their handlers are then executed on a dedicated single thread executor
+ * (per packet class, so their order is kept) instead of the dispatch thread. With {@code autoIsolate} enabled,
+ * this happens automatically once a handler was slow {@code isolateAfter} times.
+ * <br><br>Inline handlers run on the receiving thread of the channel and must never block it. They are held to the
+ * much lower inline threshold and moved to the dispatch thread once they exceeded it {@code demoteAfter} times.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class HandlerWatchdog {
+
+    // ======================   VARS
+
+    /**
+     * The window in which the slow invocations of a handler are counted.
+     */
+    private static final long SLOW_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * The duration after which an invocation is considered slow (Defaults to 100ms).
+     */
+    @Getter
+    private volatile Duration slowThreshold;
+
+    /**
+     * Whether packet classes of persistently slow handlers are isolated automatically (Defaults to {@code false}).
+     */
+    @Getter @Setter
+    private volatile boolean autoIsolate;
+
+    /**
+     * The amount of slow invocations within a minute after which a handler's packet class is isolated (Defaults to 5).
+     */
+    @Getter @Setter
+    private volatile int isolateAfter;
+
+    /**
+     * The duration after which an inline invocation is considered blocking (Defaults to 1ms).
+     */
+    @Getter @Setter
+    private volatile Duration inlineThreshold;
+
+    /**
+     * The amount of blocking inline invocations after which a handler is moved to the dispatch thread (Defaults to 3).
+     */
+    @Getter @Setter
+    private volatile int demoteAfter;
+
+    /**
+     * The innermost invocation currently running on each thread that ever invoked a handler.
+     */
+    private final Set<Invocation> invocations;
+    private final ThreadLocal<Invocation> currentInvocation;
+
+    /**
+     * The executors of isolated packet classes.
+     */
+    private final Map<Class<? extends APacket>, ExecutorService> isolatedExecutors;
+
+    private final ScheduledExecutorService monitor;
+
+
+    // ======================   CONSTRUCTOR
+
+    public HandlerWatchdog() {
+        this.slowThreshold = Duration.ofMillis(100);
+        this.isolateAfter = 5;
+        this.inlineThreshold = Duration.ofMillis(1);
+        this.demoteAfter = 3;
+        this.invocations = ConcurrentHashMap.newKeySet();
+        this.currentInvocation = ThreadLocal.withInitial(() -> {
+            Invocation invocation = new Invocation(Thread.currentThread());
+            this.invocations.add(invocation);
+            return invocation;
+        });
+        this.isolatedExecutors = new ConcurrentHashMap<>();
+        this.monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "packify-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleSampling();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Invokes a handler and measures the invocation.
+     *
+     * @param handler
+     *          The handler
+     * @param packet
+     *          The packet to handle
+     * @throws Throwable
+     *          Anything the handler throws
+     */
+    public void invoke(RegisteredPacketHandler handler, APacket packet) throws Throwable {
+        Invocation invocation = this.currentInvocation.get();
+
+        // Nested invocation (e.g. a handler sending a packet handled inline by a local handler)
+        // -> The outer one continues afterwards and must still be sampled
+        RegisteredPacketHandler outerHandler = invocation.handler;
+        APacket outerPacket = invocation.packet;
+        long outerStart = invocation.start;
+        boolean outerSampled = invocation.sampled;
+
+        long start = System.nanoTime();
+        invocation.begin(handler, packet, start);
+        try {
+            handler.invoke(packet);
+        }
+        catch (Throwable throwable) {
+            handler.getErrors().increment();
+            throw throwable;
+        }
+        finally {
+            invocation.restore(outerHandler, outerPacket, outerStart, outerSampled);
+            record(handler, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the executor of an isolated packet class.
+     *
+     * @param packetClass
+     *          The packet class
+     * @return The executor or {@code null} if the class is not isolated
+     */
+    public ExecutorService getIsolatedExecutor(Class<? extends APacket> packetClass) {
+        return this.isolatedExecutors.get(packetClass);
+    }
+
+    /**
+     * Returns all isolated packet classes.
+     *
+     * @return The classes
+     */
+    public Set<Class<? extends APacket>> getIsolatedClasses() {
+        return this.isolatedExecutors.keySet();
+    }
+
+    /**
+     * Executes the handlers of a packet class on a dedicated thread from now on.
+     *
+     * @param packetClass
+     *          The packet class
+     */
+    public void isolate(Class<? extends APacket> packetClass) {
+        this.isolatedExecutors.computeIfAbsent(packetClass, clazz -> {
+            new StrFmt("{prefix} Isolating handlers of %s onto a dedicated thread", clazz.getSimpleName())
+                    .setLevel(Level.WARN).toLog();
+            return Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "packify-isolated-" + clazz.getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        });
+    }
+
+    /**
+     * Executes the handlers of an isolated packet class on the dispatch thread again.
+     * Already queued packets are still handled by the isolated thread.
+     *
+     * @param packetClass
+     *          The packet class
+     */
+    public void release(Class<? extends APacket> packetClass) {
+        ExecutorService executor = this.isolatedExecutors.remove(packetClass);
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    /**
+     * Sets the duration after which an invocation is considered slow.
+     *
+     * @param slowThreshold
+     *          The threshold
+     */
+    public void setSlowThreshold(Duration slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * Stops the watchdog and all isolated executors.
+     */
+    public void shutdown() {
+        this.monitor.shutdownNow();
+        this.isolatedExecutors.values().forEach(ExecutorService::shutdown);
+        this.isolatedExecutors.clear();
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Records the duration of an invocation, demotes blocking inline handlers
+     * and isolates the packet class if the handler is persistently slow.
+     */
+    private void record(RegisteredPacketHandler handler, long nanos) {
+        handler.getLatency().record(nanos);
+
+        // Blocked the receiving thread
+        if (handler.isInline() && nanos >= this.inlineThreshold.toNanos()
+                && handler.getInlineOverruns().incrementAndGet() >= getDemoteAfter()) {
+            handler.setInline(false);
+            new StrFmt("{prefix} Inline handler %s blocked the receiving thread %d times (Last: %.3fms), moving it to the dispatch thread",
+                    handler, handler.getInlineOverruns().get(), nanos / 1_000_000d)
+                    .setLevel(Level.WARN).toLog();
+        }
+
+        // RET: Fast enough
+        if (nanos < this.slowThreshold.toNanos()) return;
+
+        long now = System.nanoTime();
+        if (now - handler.getSlowWindowStart() > SLOW_WINDOW_NANOS) {
+            handler.setSlowWindowStart(now);
+            handler.getSlowInvocations().set(0);
+        }
+        int slowInvocations = handler.getSlowInvocations().incrementAndGet();
+        new StrFmt("{prefix} Handler %s took %dms", handler, TimeUnit.NANOSECONDS.toMillis(nanos)).setLevel(Level.DEBUG).toLog();
+
+        if (isAutoIsolate() && slowInvocations >= getIsolateAfter() && getIsolatedExecutor(handler.getPacketClass()) == null)
+            isolate(handler.getPacketClass());
+    }
+
+    /**
+     * Samples the stack traces of all threads whose current invocation exceeded the slow threshold (Once per invocation).
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        long threshold = this.slowThreshold.toNanos();
+
+        for (Invocation invocation : this.invocations) {
+
+            // Thread died -> Forget it
+            if (!invocation.thread.isAlive()) {
+                this.invocations.remove(invocation);
+                continue;
+            }
+
+            RegisteredPacketHandler handler = invocation.handler;
+            APacket packet = invocation.packet;
+            long start = invocation.start;
+            if (handler == null || invocation.sampled || now - start < threshold) continue;
+
+            StackTraceElement[] stack = invocation.thread.getStackTrace();
+
+            // Invocation changed whilst sampling -> The stack belongs to a different one
+            if (invocation.start != start) continue;
+
+            invocation.sampled = true;
+            handler.setSlowStackTrace(stack);
+            new StrFmt("{prefix} Handler %s is blocking %s for %dms handling %s:\n\tat %s", handler, invocation.thread.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(now - start), packet,
+                    Arrays.stream(stack).map(StackTraceElement::toString).collect(Collectors.joining("\n\tat ")))
+                    .setLevel(Level.WARN).toLog();
+        }
+    }
+
+    /**
+     * Samples every half threshold, so a blocking invocation is caught at most 1.5 thresholds after it started.
+     */
+    private void scheduleSampling() {
+        long delay = Math.max(1, this.slowThreshold.toMillis() / 2);
+        this.monitor.schedule(() -> {
+            try { sample(); }
+            finally { scheduleSampling(); }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+
+    // ======================   INVOCATION
+
+    /**
+     * The state of the handler invocation of one thread (Written by the thread, read by the monitor).
+     */
+    private static class Invocation {
+
+        private final Thread thread;
+        private volatile RegisteredPacketHandler handler;
+        private volatile APacket packet;
+        private volatile long start;
+        private volatile boolean sampled;
+
+        private Invocation(Thread thread) {
+            this.thread = thread;
+        }
+
+        private void begin(RegisteredPacketHandler handler, APacket packet, long start) {
+            this.sampled = false;
+            this.packet = packet;
+            this.start = start;
+            this.handler = handler;
+        }
+
+        /**
+         * Continues the invocation that was running before ({@code handler} is {@code null} if there was none).
+         */
+        private void restore(RegisteredPacketHandler handler, APacket packet, long start, boolean sampled) {
+            this.sampled = sampled;
+            this.packet = packet;
+            this.start = start;
+            this.handler = handler;
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.endersuite.packify.handlers;
+
+import com.endersuite.packify.APacketDelegator;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a listener object as packet handler.
+ * The method must be non-static and accept exactly one parameter, the packet class it handles.
+ * Annotated listeners are registered using {@link APacketDelegator#registerListener(Object)}.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PacketHandler {
+
+    /**
+     * The priority of the handler. Handlers with a higher priority are executed first.
+     */
+    HandlerPriority priority() default HandlerPriority.NORMAL;
+
+    /**
+     * Whether the handler should be skipped if a previous handler cancelled the packet.
+     */
+    boolean ignoreCancelled() default false;
+
+    /**
+     * Whether the handler is non-blocking and should be invoked directly on the receiving thread
+     * (See {@link APacketDelegator#addInlinePacketHandler(Class, java.util.function.Consumer)}).
+     */
+    boolean inline() default false;
+
+}
@@ -0,0 +1,28 @@
+package com.endersuite.packify.handlers;
+
+import com.endersuite.packify.packets.APacket;
+
+/**
+ * Invokes a single handler for a packet.
+ * Instances for annotated methods are generated once at registration time (see {@link PacketInvokers}),
+ * so no reflection is involved when a packet is dispatched.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@FunctionalInterface
+public interface PacketInvoker {
+
+    /**
+     * Invokes the handler.
+     *
+     * @param listener
+     *          The listener object owning the handler ({@code null} for plain consumers)
+     * @param packet
+     *          The packet to handle
+     * @throws Throwable
+     *          Anything the handler throws
+     */
+    void invoke(Object listener, APacket packet) throws Throwable;
+
+}
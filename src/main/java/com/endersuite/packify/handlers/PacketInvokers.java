@@ -0,0 +1,120 @@
+package com.endersuite.packify.handlers;
+
+import com.endersuite.packify.packets.APacket;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Builds {@link PacketInvoker}s for {@link PacketHandler} annotated methods.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public final class PacketInvokers {
+
+    // ======================   VARS
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, APacket.class);
+
+
+    // ======================   CONSTRUCTOR
+
+    private PacketInvokers() {}
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Creates an invoker for the given handler method.
+     * Public methods of classes visible to Packify are bound using the {@link LambdaMetafactory} which results in
+     * a plain interface call. All other methods (e.g. non-public or loaded by a foreign class loader) fall back
+     * to an exact {@link MethodHandle} invocation.
+     *
+     * @param method
+     *          The annotated handler method
+     * @return The invoker
+     * @throws IllegalArgumentException
+     *          If the method does not have a valid handler signature
+     */
+    public static PacketInvoker create(Method method) {
+        Class<? extends APacket> packetClass = getPacketClass(method);
+
+        try {
+            if (isDirectlyBindable(method))
+                return createLambda(method, packetClass);
+        } catch (Throwable ignored) {
+            // Fall back to a method handle below
+        }
+
+        try {
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(INVOKER_TYPE);
+            return (listener, packet) -> { handle.invokeExact(listener, packet); };
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access packet handler " + method, e);
+        }
+    }
+
+    /**
+     * Returns the packet class a handler method accepts.
+     *
+     * @param method
+     *          The annotated handler method
+     * @return The packet class
+     * @throws IllegalArgumentException
+     *          If the method does not have a valid handler signature
+     */
+    @SuppressWarnings("unchecked")
+    public static Class<? extends APacket> getPacketClass(Method method) {
+
+        // THROW: Invalid signature
+        if (Modifier.isStatic(method.getModifiers()))
+            throw new IllegalArgumentException("Packet handler " + method + " must not be static!");
+        if (method.getParameterCount() != 1 || !APacket.class.isAssignableFrom(method.getParameterTypes()[0]))
+            throw new IllegalArgumentException("Packet handler " + method + " must accept exactly one APacket parameter!");
+
+        return (Class<? extends APacket>) method.getParameterTypes()[0];
+    }
+
+
+    // ======================   HELPERS
+
+    private static PacketInvoker createLambda(Method method, Class<? extends APacket> packetClass) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        CallSite site = LambdaMetafactory.metafactory(
+                lookup,
+                "invoke",
+                MethodType.methodType(PacketInvoker.class),
+                INVOKER_TYPE,
+                lookup.unreflect(method),
+                MethodType.methodType(void.class, method.getDeclaringClass(), packetClass)
+        );
+        return (PacketInvoker) site.getTarget().invokeExact();
+    }
+
+    /**
+     * Returns whether the generated lambda class (which lives in Packify's class loader) can link against the
+     * declaring class & parameter type of the method.
+     */
+    private static boolean isDirectlyBindable(Method method) {
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers()))
+            return false;
+
+        return isVisible(method.getDeclaringClass()) && isVisible(method.getParameterTypes()[0]);
+    }
+
+    private static boolean isVisible(Class<?> clazz) {
+        try {
+            return Class.forName(clazz.getName(), false, PacketInvokers.class.getClassLoader()) == clazz;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.endersuite.packify.handlers;
+
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.stats.LatencyHistogram;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A handler registered at an {@link com.endersuite.packify.APacketDelegator}, either as plain {@link Consumer}
+ * or as {@link PacketHandler} annotated method of a listener object.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class RegisteredPacketHandler {
+
+    // ======================   VARS
+
+    /**
+     * The packet class the handler is registered for.
+     */
+    private final Class<? extends APacket> packetClass;
+
+    /**
+     * The listener object owning the handler ({@code null} for plain consumers).
+     */
+    private final Object listener;
+
+    /**
+     * The consumer the handler was registered with ({@code null} for annotated methods).
+     */
+    private final Consumer<? extends APacket> consumer;
+
+    /**
+     * The invoker that calls the actual handler.
+     */
+    private final PacketInvoker invoker;
+
+    private final HandlerPriority priority;
+
+    private final boolean ignoreCancelled;
+
+    /**
+     * Whether the handler is invoked directly on the receiving thread instead of the dispatch thread.
+     * Reset by the {@link HandlerWatchdog} if the handler blocks.
+     */
+    @Setter
+    private volatile boolean inline;
+
+    /**
+     * The amount of inline invocations that exceeded the inline threshold of the {@link HandlerWatchdog}.
+     */
+    private final AtomicInteger inlineOverruns;
+
+    /**
+     * The durations of the invocations (Measured by the {@link HandlerWatchdog}).
+     */
+    private final LatencyHistogram latency;
+
+    /**
+     * The amount of invocations that threw.
+     */
+    private final LongAdder errors;
+
+    /**
+     * The amount of slow invocations in the current window of the {@link HandlerWatchdog}.
+     */
+    private final AtomicInteger slowInvocations;
+
+    @Setter
+    private volatile long slowWindowStart;
+
+    /**
+     * The stack trace sampled during the last slow invocation ({@code null} if the handler was never slow).
+     */
+    @Setter
+    private volatile StackTraceElement[] slowStackTrace;
+
+
+    // ======================   CONSTRUCTOR
+
+    public RegisteredPacketHandler(Class<? extends APacket> packetClass, Object listener, Consumer<? extends APacket> consumer,
+                                   PacketInvoker invoker, HandlerPriority priority, boolean ignoreCancelled, boolean inline) {
+        this.packetClass = packetClass;
+        this.listener = listener;
+        this.consumer = consumer;
+        this.invoker = invoker;
+        this.priority = priority;
+        this.ignoreCancelled = ignoreCancelled;
+        this.inline = inline;
+        this.inlineOverruns = new AtomicInteger();
+        this.latency = new LatencyHistogram();
+        this.errors = new LongAdder();
+        this.slowInvocations = new AtomicInteger();
+        this.slowWindowStart = System.nanoTime();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Invokes the handler unless it ignores cancelled packets and the packet was cancelled.
+     *
+     * @param packet
+     *          The packet to handle
+     * @throws Throwable
+     *          Anything the handler throws
+     */
+    public void invoke(APacket packet) throws Throwable {
+
+        // RET: Packet was cancelled by a previous handler
+        if (isIgnoreCancelled() && packet.isCancelled()) return;
+
+        getInvoker().invoke(getListener(), packet);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)-p(%s)%s", getClass().getSimpleName(),
+                getListener() != null ? getListener().getClass().getSimpleName() : getConsumer(), getPriority(),
+                isInline() ? "-inline" : "");
+    }
+
+}
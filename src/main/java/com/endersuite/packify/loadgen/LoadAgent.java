@@ -0,0 +1,209 @@
+package com.endersuite.packify.loadgen;
+
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.packets.ACollectablePacket;
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.stats.LatencyHistogram;
+import com.endersuite.packify.transmission.Transmission;
+import lombok.Getter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The part of the {@link LoadGenerator} running on every node of the load cluster: Records the one-way latency of
+ * received broadcasts & unicasts, answers load requests and reports its statistics to the generator.
+ * <br><br>Latencies are measured from the time a message was <i>intended</i> to be sent by the schedule of the generator,
+ * not from when it actually was sent. A generator that falls behind therefore adds its delay to the latency instead of
+ * hiding it (Coordinated omission). The uncorrected latency is recorded as well for comparison.
+ * <br><br><i>Note: Timestamps are {@link System#nanoTime()}, which is only comparable inside the same JVM. Agents in
+ * other JVMs (e.g. worker processes) therefore only count the messages they received.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class LoadAgent {
+
+    // ======================   VARS
+
+    /**
+     * Identifies the JVM whose {@link System#nanoTime()} the timestamps of a {@link LoadPacket} belong to.
+     */
+    private static final UUID JVM_ID = UUID.randomUUID();
+
+    @Getter
+    private final NetworkManager networkManager;
+
+    /**
+     * The latencies of received one-way messages measured from their intended send time, by operation.
+     */
+    private final Map<LoadGenerator.Operation, LatencyHistogram> latencies;
+
+    /**
+     * The latencies of received one-way messages measured from their actual send time, by operation.
+     */
+    private final Map<LoadGenerator.Operation, LatencyHistogram> serviceTimes;
+
+    /**
+     * The amount of received one-way messages by operation.
+     */
+    private final Map<LoadGenerator.Operation, LongAdder> received;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates an agent & registers its handlers on the node.
+     *
+     * @param networkManager
+     *          The node
+     */
+    public LoadAgent(NetworkManager networkManager) {
+        this.networkManager = networkManager;
+        this.latencies = new EnumMap<>(LoadGenerator.Operation.class);
+        this.serviceTimes = new EnumMap<>(LoadGenerator.Operation.class);
+        this.received = new EnumMap<>(LoadGenerator.Operation.class);
+        for (LoadGenerator.Operation operation : LoadGenerator.Operation.values()) {
+            this.latencies.put(operation, new LatencyHistogram());
+            this.serviceTimes.put(operation, new LatencyHistogram());
+            this.received.put(operation, new LongAdder());
+        }
+
+        networkManager.addPacketHandler(LoadPacket.class, this::handleLoadPacket);
+        networkManager.addPacketHandler(LoadRequestPacket.class, this::handleLoadRequest);
+        networkManager.addPacketHandler(ReportRequestPacket.class, this::handleReportRequest);
+    }
+
+
+    // ======================   EVENT HANDLERS
+
+    private void handleLoadPacket(LoadPacket packet) {
+
+        // RET: Sent during the warm-up
+        if (!packet.isMeasured()) return;
+
+        long now = System.nanoTime();
+        this.received.get(packet.getOperation()).increment();
+
+        // RET: Sent from another JVM -> Timestamps not comparable
+        if (!packet.getOrigin().equals(JVM_ID)) return;
+
+        this.latencies.get(packet.getOperation()).record(now - packet.getIntendedAt());
+        this.serviceTimes.get(packet.getOperation()).record(now - packet.getSentAt());
+    }
+
+    private void handleLoadRequest(LoadRequestPacket request) {
+        Transmission.newBuilder(getNetworkManager(), new LoadResponsePacket(request))
+                .to(request.getSender())
+                .build()
+                .sneakyTransmit();
+    }
+
+    private void handleReportRequest(ReportRequestPacket request) {
+        Map<LoadGenerator.Operation, Long> received = new EnumMap<>(LoadGenerator.Operation.class);
+        this.received.forEach((operation, count) -> received.put(operation, count.sum()));
+
+        Transmission.newBuilder(getNetworkManager(), new ReportPacket(request, this.latencies, this.serviceTimes, received))
+                .to(request.getSender())
+                .build()
+                .sneakyTransmit();
+    }
+
+
+    // ======================   PACKETS
+
+    /**
+     * A broadcast or unicast sent by the generator.
+     */
+    @Getter
+    public static class LoadPacket extends APacket {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LoadGenerator.Operation operation;
+        private final UUID origin;
+        private final long intendedAt;
+        private final long sentAt;
+        private final boolean measured;
+        private final byte[] payload;
+
+        public LoadPacket(LoadGenerator.Operation operation, long intendedAt, boolean measured, byte[] payload) {
+            super();
+            this.operation = operation;
+            this.origin = JVM_ID;
+            this.intendedAt = intendedAt;
+            this.sentAt = System.nanoTime();
+            this.measured = measured;
+            this.payload = payload;
+        }
+
+    }
+
+    /**
+     * A request sent by the generator, answered by every receiving node.
+     */
+    @Getter
+    public static class LoadRequestPacket extends ACollectablePacket {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] payload;
+
+        public LoadRequestPacket(byte[] payload) {
+            super();
+            this.payload = payload;
+        }
+
+    }
+
+    /**
+     * The answer to a {@link LoadRequestPacket}.
+     */
+    public static class LoadResponsePacket extends ACollectablePacket {
+
+        private static final long serialVersionUID = 1L;
+
+        public LoadResponsePacket(LoadRequestPacket request) {
+            super(request);
+        }
+
+    }
+
+    /**
+     * Asks all nodes for their statistics once the load was generated.
+     */
+    public static class ReportRequestPacket extends ACollectablePacket {
+
+        private static final long serialVersionUID = 1L;
+
+        public ReportRequestPacket() {
+            super();
+        }
+
+    }
+
+    /**
+     * The statistics of a node.
+     */
+    @Getter
+    public static class ReportPacket extends ACollectablePacket {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Map<LoadGenerator.Operation, LatencyHistogram> latencies;
+        private final Map<LoadGenerator.Operation, LatencyHistogram> serviceTimes;
+        private final Map<LoadGenerator.Operation, Long> received;
+
+        public ReportPacket(ReportRequestPacket request, Map<LoadGenerator.Operation, LatencyHistogram> latencies,
+                            Map<LoadGenerator.Operation, LatencyHistogram> serviceTimes, Map<LoadGenerator.Operation, Long> received) {
+            super(request);
+            this.latencies = latencies;
+            this.serviceTimes = serviceTimes;
+            this.received = received;
+        }
+
+    }
+
+}
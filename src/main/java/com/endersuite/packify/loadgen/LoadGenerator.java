@@ -0,0 +1,588 @@
+package com.endersuite.packify.loadgen;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.StackProfile;
+import com.endersuite.packify.dispatch.RingBufferDispatcher;
+import com.endersuite.packify.packets.ACollectablePacket;
+import com.endersuite.packify.stats.LatencyHistogram;
+import com.endersuite.packify.transmission.CompletableTransmission;
+import com.endersuite.packify.transmission.Transmission;
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates load on a cluster of {@link NetworkManager} nodes and reports the throughput & latency percentiles per
+ * operation. Every generating node sends a weighted mix of broadcasts, unicasts, {@code collectAll()} and anycast
+ * {@code collectOne()} requests at a fixed rate (Open loop: Operations are never skipped or delayed because earlier
+ * ones did not complete yet). Latencies are measured from the time an operation was scheduled, so a saturated node
+ * shows up as rising latencies instead of a silently lower rate (Corrected for coordinated omission).
+ * <br><br>The nodes are started inside this JVM or as local processes. Worker processes only receive & answer,
+ * the load is generated by the nodes inside this JVM.
+ * <br><br>Usage: {@code java com.endersuite.packify.loadgen.LoadGenerator [--nodes n] [--processes n] [--rate ops/s]
+ * [--duration s] [--warmup s] [--payload bytes] [--timeout ms] [--mix broadcast=1,unicast=1,collect_all=1,collect_one=1]}
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class LoadGenerator {
+
+    /**
+     * The operations of the load mix.
+     */
+    public enum Operation {
+        BROADCAST,      // Broadcast to all other nodes, latency measured by every receiver
+        UNICAST,        // Sent to a random other node, latency measured by the receiver
+        COLLECT_ALL,    // Request answered by all nodes (Including the sender), latency measured until completed
+        COLLECT_ONE     // Anycast request answered by one other node, latency measured until completed
+    }
+
+    /**
+     * Creates the nodes of the load cluster.
+     */
+    @FunctionalInterface
+    public interface NodeFactory {
+
+        NetworkManager create(String nodeName) throws Exception;
+
+    }
+
+
+    // ======================   VARS
+
+    @Getter
+    private final NodeFactory nodeFactory;
+
+    /**
+     * The amount of generating nodes inside this JVM (Defaults to 3).
+     */
+    @Getter @Setter
+    private int nodes;
+
+    /**
+     * The amount of additional, non-generating nodes started as local processes (Defaults to 0).
+     * <br><br><i>Note: Requires a node factory whose stack connects processes, e.g. {@link StackProfile#lowLatency()}.</i>
+     */
+    @Getter @Setter
+    private int processes;
+
+    /**
+     * The total rate of operations per second, split evenly across the generating nodes (Defaults to 1000).
+     */
+    @Getter @Setter
+    private double rate;
+
+    /**
+     * How long the load is measured (Defaults to 10s).
+     */
+    @Getter @Setter
+    private Duration duration;
+
+    /**
+     * How long the load is generated before measuring starts (Defaults to 2s).
+     */
+    @Getter @Setter
+    private Duration warmup;
+
+    /**
+     * The payload size of every packet in bytes (Defaults to 256).
+     */
+    @Getter @Setter
+    private int payloadSize;
+
+    /**
+     * The timeout of collectable requests (Defaults to 5s).
+     */
+    @Getter @Setter
+    private Duration timeout;
+
+    /**
+     * The weights of the operations in the mix (Defaults to equal weights).
+     */
+    @Getter
+    private final Map<Operation, Integer> mix;
+
+    /**
+     * The nodes of the load cluster inside this JVM (Available during {@link LoadGenerator#run()}).
+     */
+    @Getter
+    private final List<NetworkManager> cluster;
+
+    private final List<Process> workers;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a generator whose nodes use a {@link RingBufferDispatcher} and {@link StackProfile#sharedLoopback()}.
+     */
+    public LoadGenerator() {
+        this(name -> new NetworkManager(new RingBufferDispatcher(1 << 16), name, StackProfile.sharedLoopback()));
+    }
+
+    /**
+     * Creates a generator.
+     *
+     * @param nodeFactory
+     *          Creates the nodes inside this JVM (The {@link LoadAgent} is installed by the generator)
+     */
+    public LoadGenerator(NodeFactory nodeFactory) {
+        this.nodeFactory = nodeFactory;
+        this.nodes = 3;
+        this.rate = 1000;
+        this.duration = Duration.ofSeconds(10);
+        this.warmup = Duration.ofSeconds(2);
+        this.payloadSize = 256;
+        this.timeout = Duration.ofSeconds(5);
+        this.mix = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values())
+            this.mix.put(operation, 1);
+        this.cluster = new ArrayList<>();
+        this.workers = new ArrayList<>();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Sets the weight of an operation in the mix ({@code 0} to exclude it).
+     *
+     * @param operation
+     *          The operation
+     * @param weight
+     *          The relative weight
+     * @return
+     */
+    public LoadGenerator weight(Operation operation, int weight) {
+
+        // THROW: Invalid weight
+        if (weight < 0)
+            throw new IllegalArgumentException("weight must not be negative!");
+
+        this.mix.put(operation, weight);
+        return this;
+    }
+
+    /**
+     * Starts the load cluster, generates the load and collects the statistics of all nodes.
+     *
+     * @return The result
+     * @throws Exception
+     */
+    public Result run() throws Exception {
+
+        // THROW: Nothing to generate
+        if (getNodes() < 1 || getRate() <= 0 || this.mix.values().stream().mapToInt(Integer::intValue).sum() == 0)
+            throw new IllegalStateException("At least one generating node, a positive rate and an operation are required!");
+
+        startCluster();
+        new StrFmt("{prefix} Generating %.0f ops/s on %d nodes (+%d processes) for %ds: %s", getRate(), getNodes(),
+                getProcesses(), getDuration().getSeconds(), this.mix).setLevel(Level.INFO).toLog();
+
+        Statistics statistics = new Statistics();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFrom = start + getWarmup().toNanos();
+        long end = measureFrom + getDuration().toNanos();
+
+        List<Thread> senders = new ArrayList<>();
+        for (NetworkManager node : this.cluster) {
+            Thread sender = new Thread(() -> generate(node, statistics, start, measureFrom, end),
+                    "packify-load-" + node.getJChannel().getName());
+            sender.start();
+            senders.add(sender);
+        }
+        for (Thread sender : senders)
+            sender.join();
+
+        // Let the last operations complete
+        long drainUntil = System.nanoTime() + getTimeout().toNanos();
+        while (statistics.getPending() > 0 && System.nanoTime() < drainUntil)
+            Thread.sleep(10);
+
+        collectReports(statistics);
+        return new Result(statistics, getDuration().toNanos());
+    }
+
+    /**
+     * Disconnects all nodes and stops the worker processes.
+     */
+    public void close() {
+        this.cluster.forEach(NetworkManager::disconnect);
+        this.cluster.clear();
+        this.workers.forEach(Process::destroy);
+        this.workers.clear();
+    }
+
+
+    // ======================   HELPERS
+
+    private void startCluster() throws Exception {
+        String clusterName = "packify-load-" + UUID.randomUUID().toString().split("-")[0];
+        for (int i = 0; i < getNodes(); i++) {
+            NetworkManager node = getNodeFactory().create("load-" + i);
+            new LoadAgent(node);
+            node.connect(clusterName);
+            this.cluster.add(node);
+        }
+
+        for (int i = 0; i < getProcesses(); i++) {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            this.workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    "-Djava.net.preferIPv4Stack=true", LoadGenerator.class.getName(), "--worker", clusterName, "worker-" + i)
+                    .inheritIO()
+                    .start());
+        }
+
+        // Wait until every node sees the whole cluster
+        int size = getNodes() + getProcesses();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (NetworkManager node : this.cluster) {
+            while (node.getNodeCount() < size) {
+
+                // THROW: Cluster did not form
+                if (System.nanoTime() > deadline)
+                    throw new IllegalStateException("Load cluster did not form!");
+
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    /**
+     * Sends the operations of one node on its fixed schedule until the end.
+     */
+    private void generate(NetworkManager node, Statistics statistics, long start, long measureFrom, long end) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) * getNodes() / getRate());
+        int totalWeight = this.mix.values().stream().mapToInt(Integer::intValue).sum();
+        byte[] payload = new byte[getPayloadSize()];
+
+        // Stagger the nodes, so they do not all send at the same instant
+        long intendedAt = start + interval * this.cluster.indexOf(node) / getNodes();
+        for (; intendedAt < end; intendedAt += interval) {
+            long wait;
+            while ((wait = intendedAt - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+
+            boolean measured = intendedAt >= measureFrom;
+            if (measured)
+                statistics.lateness.record(System.nanoTime() - intendedAt);
+
+            Operation operation = pick(ThreadLocalRandom.current().nextInt(totalWeight));
+            try {
+                send(node, operation, intendedAt, measured, payload, statistics);
+            } catch (Exception e) {
+
+                // Only one-way messages throw (Requests count their failures in the error consumer)
+                if (measured)
+                    statistics.errors.get(operation).increment();
+            }
+        }
+    }
+
+    private void send(NetworkManager node, Operation operation, long intendedAt, boolean measured, byte[] payload, Statistics statistics) throws Exception {
+        switch (operation) {
+            case BROADCAST:
+                Transmission.newBuilder(node, new LoadAgent.LoadPacket(operation, intendedAt, measured, payload))
+                        .broadcast(false).build().transmit();
+                break;
+            case UNICAST:
+                Transmission.newBuilder(node, new LoadAgent.LoadPacket(operation, intendedAt, measured, payload))
+                        .to(pickOther(node)).build().transmit();
+                break;
+            case COLLECT_ALL:
+            case COLLECT_ONE:
+                Transmission.TransmissionBuilder builder = Transmission.newBuilder(node, new LoadAgent.LoadRequestPacket(payload));
+                CompletableTransmission.CompletableTransmissionBuilder<List<ACollectablePacket>> request = operation == Operation.COLLECT_ALL
+                        ? builder.broadcast(true).collectAll()
+                        : builder.broadcast(false).collectOne().anycast();
+
+                long sentAt = System.nanoTime();
+                if (measured) {
+                    statistics.sent.get(operation).increment();
+                    statistics.pending.increment();
+                }
+                request.timeout(getTimeout())
+                        .onDone(responses -> {
+                            if (!measured) return;
+                            long now = System.nanoTime();
+                            statistics.latencies.get(operation).record(now - intendedAt);
+                            statistics.serviceTimes.get(operation).record(now - sentAt);
+                            statistics.completed.get(operation).increment();
+                            statistics.pending.decrement();
+                        })
+                        .onTimeout(exception -> {
+                            // Counts as error but still contributes the time waited to the histograms
+                            if (!measured) return;
+                            long now = System.nanoTime();
+                            statistics.latencies.get(operation).record(now - intendedAt);
+                            statistics.serviceTimes.get(operation).record(now - sentAt);
+                            statistics.errors.get(operation).increment();
+                            statistics.pending.decrement();
+                        })
+                        .onError(throwable -> {
+                            if (!measured) return;
+                            statistics.errors.get(operation).increment();
+                            statistics.pending.decrement();
+                        });
+
+                CompletableTransmission<List<ACollectablePacket>> transmission = request.build();
+                try {
+                    transmission.transmit();
+                } catch (Exception e) {
+
+                    // Passes failures that did not reach the error consumer yet (e.g. rejected admissions) to it
+                    // (Ignored if already errored)
+                    transmission.error(e);
+                }
+                return;
+        }
+
+        if (measured)
+            statistics.sent.get(operation).increment();
+    }
+
+    /**
+     * Asks every node for the latencies of the one-way messages it received and adds them to the statistics.
+     */
+    private void collectReports(Statistics statistics) throws Exception {
+        CompletableTransmission<List<ACollectablePacket>> request = Transmission.newBuilder(this.cluster.get(0), new LoadAgent.ReportRequestPacket())
+                .broadcast(true)
+                .collectAll()
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        request.transmit();
+
+        for (ACollectablePacket packet : request.join()) {
+            LoadAgent.ReportPacket report = (LoadAgent.ReportPacket) packet;
+            report.getLatencies().forEach((operation, latencies) -> statistics.latencies.get(operation).add(latencies));
+            report.getServiceTimes().forEach((operation, serviceTimes) -> statistics.serviceTimes.get(operation).add(serviceTimes));
+            report.getReceived().forEach((operation, received) -> statistics.completed.get(operation).add(received));
+        }
+    }
+
+    private Operation pick(int random) {
+        for (Map.Entry<Operation, Integer> entry : this.mix.entrySet()) {
+            random -= entry.getValue();
+            if (random < 0)
+                return entry.getKey();
+        }
+        throw new IllegalStateException("Empty mix!");
+    }
+
+    private static Address pickOther(NetworkManager node) {
+        List<Address> members = node.getJChannel().getView().getMembers();
+        Address self = node.getJChannel().getAddress();
+        Address other;
+        do {
+            other = members.get(ThreadLocalRandom.current().nextInt(members.size()));
+        } while (other.equals(self) && members.size() > 1);
+        return other;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        // Worker process: Join the cluster and answer until destroyed
+        if (args.length == 3 && args[0].equals("--worker")) {
+            NetworkManager node = new NetworkManager(new RingBufferDispatcher(1 << 16), args[2], StackProfile.lowLatency());
+            new LoadAgent(node);
+            node.connect(args[1]);
+            Thread.currentThread().join();
+            return;
+        }
+
+        // Processes are only reachable through a real transport
+        LoadGenerator generator = containsProcesses(args)
+                ? new LoadGenerator(name -> new NetworkManager(new RingBufferDispatcher(1 << 16), name, StackProfile.lowLatency()))
+                : new LoadGenerator();
+        for (int i = 0; i < args.length; i += 2) {
+
+            // THROW: Missing value
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value of " + args[i] + "!");
+
+            String value = args[i + 1];
+
+            switch (args[i]) {
+                case "--nodes": generator.setNodes(Integer.parseInt(value)); break;
+                case "--processes": generator.setProcesses(Integer.parseInt(value)); break;
+                case "--rate": generator.setRate(Double.parseDouble(value)); break;
+                case "--duration": generator.setDuration(Duration.ofSeconds(Long.parseLong(value))); break;
+                case "--warmup": generator.setWarmup(Duration.ofSeconds(Long.parseLong(value))); break;
+                case "--payload": generator.setPayloadSize(Integer.parseInt(value)); break;
+                case "--timeout": generator.setTimeout(Duration.ofMillis(Long.parseLong(value))); break;
+                case "--mix":
+                    for (Operation operation : Operation.values())
+                        generator.weight(operation, 0);
+                    for (String weight : value.split(",")) {
+                        String[] parts = weight.split("=");
+                        generator.weight(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + "!");
+            }
+        }
+        try {
+            System.out.println(generator.run());
+        } finally {
+            generator.close();
+        }
+    }
+
+    private static boolean containsProcesses(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--processes"))
+                return true;
+        }
+        return false;
+    }
+
+
+    // ======================   RESULT
+
+    /**
+     * The statistics gathered during the measured period.
+     */
+    @Getter
+    public static class Statistics {
+
+        /**
+         * Latencies measured from the intended start of the operations (Corrected for coordinated omission).
+         */
+        private final Map<Operation, LatencyHistogram> latencies;
+
+        /**
+         * Latencies measured from the actual start of the operations (Hides the delays of a saturated sender).
+         */
+        private final Map<Operation, LatencyHistogram> serviceTimes;
+
+        /**
+         * Sent operations.
+         */
+        private final Map<Operation, LongAdder> sent;
+
+        /**
+         * Completed requests & received one-way messages (Every receiver of a broadcast counts).
+         */
+        private final Map<Operation, LongAdder> completed;
+
+        /**
+         * Operations that could not be sent or whose requests failed or timed out.
+         */
+        private final Map<Operation, LongAdder> errors;
+
+        /**
+         * How late the operations were started compared to their schedule (Shows whether the generator kept up).
+         */
+        private final LatencyHistogram lateness;
+
+        private final LongAdder pending;
+
+        public Statistics() {
+            this.latencies = new EnumMap<>(Operation.class);
+            this.serviceTimes = new EnumMap<>(Operation.class);
+            this.sent = new EnumMap<>(Operation.class);
+            this.completed = new EnumMap<>(Operation.class);
+            this.errors = new EnumMap<>(Operation.class);
+            for (Operation operation : Operation.values()) {
+                this.latencies.put(operation, new LatencyHistogram());
+                this.serviceTimes.put(operation, new LatencyHistogram());
+                this.sent.put(operation, new LongAdder());
+                this.completed.put(operation, new LongAdder());
+                this.errors.put(operation, new LongAdder());
+            }
+            this.lateness = new LatencyHistogram();
+            this.pending = new LongAdder();
+        }
+
+        /**
+         * Returns the amount of measured requests that did not complete yet.
+         *
+         * @return The amount
+         */
+        public long getPending() {
+            return this.pending.sum();
+        }
+
+    }
+
+    /**
+     * The outcome of a load run.
+     */
+    @Getter
+    public static class Result {
+
+        private final Statistics statistics;
+
+        private final long durationNanos;
+
+        public Result(Statistics statistics, long durationNanos) {
+            this.statistics = statistics;
+            this.durationNanos = durationNanos;
+        }
+
+        /**
+         * Returns the rate of completed requests & received one-way messages (Every receiver of a broadcast counts).
+         * Once the cluster is saturated, it stays below the rate of sent operations.
+         *
+         * @param operation
+         *          The operation
+         * @return The operations per second
+         */
+        public double getThroughput(Operation operation) {
+            return this.statistics.getCompleted().get(operation).sum() / (this.durationNanos / 1e9);
+        }
+
+        /**
+         * Returns the rate of sent operations (Matches the configured rate unless the generator fell behind).
+         *
+         * @param operation
+         *          The operation
+         * @return The operations per second
+         */
+        public double getSentRate(Operation operation) {
+            return this.statistics.getSent().get(operation).sum() / (this.durationNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format("%s(duration=%dms, lateness=%s)%n", getClass().getSimpleName(),
+                    TimeUnit.NANOSECONDS.toMillis(this.durationNanos), this.statistics.getLateness()));
+            builder.append(String.format("%-12s %8s %8s %10s %8s %9s %9s %9s %9s %9s %12s%n",
+                    "operation", "sent/s", "done/s", "completed", "errors", "p50", "p90", "p99", "p99.9", "max", "p99 (uncor.)"));
+
+            for (Operation operation : Operation.values()) {
+                if (this.statistics.getSent().get(operation).sum() == 0) continue;
+
+                LatencyHistogram latencies = this.statistics.getLatencies().get(operation);
+                builder.append(String.format("%-12s %8.0f %8.0f %10d %8d %9s %9s %9s %9s %9s %12s%n",
+                        operation.name().toLowerCase(), getSentRate(operation), getThroughput(operation),
+                        this.statistics.getCompleted().get(operation).sum(), this.statistics.getErrors().get(operation).sum(),
+                        format(latencies.getPercentile(0.5)), format(latencies.getPercentile(0.9)),
+                        format(latencies.getPercentile(0.99)), format(latencies.getPercentile(0.999)),
+                        format(latencies.getMax()), format(this.statistics.getServiceTimes().get(operation).getPercentile(0.99))));
+            }
+            return builder.toString();
+        }
+
+        private static String format(long nanos) {
+            return String.format("%.3fms", nanos / 1e6);
+        }
+
+    }
+
+}
@@ -1,8 +1,16 @@
 package com.endersuite.packify.packets;
 
+import com.endersuite.packify.transmission.AggregationTree;
 import lombok.Getter;
+import lombok.Setter;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OptionalDataException;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * TODO: Add docs
@@ -20,6 +28,11 @@ public abstract class ACollectablePacket extends APacket {
 
     // ======================   VARS
 
+    /**
+     * Pinned like the one of {@link APacket} (Value computed for version 1.2.0).
+     */
+    private static final long serialVersionUID = 7531094243388965306L;
+
     /**
      * The type of the collectable packet (Used by internal handler).
      */
@@ -32,6 +45,33 @@ public abstract class ACollectablePacket extends APacket {
     @Getter
     private final UUID collectionId;
 
+    /**
+     * The amount of responses merged into this response packet (Greater than 1 if aggregated by a {@link Combinable}).
+     */
+    @Getter @Setter
+    private int aggregatedResponses;
+
+    /**
+     * The tree used to aggregate the responses to this request ({@code null} if responses are sent directly).
+     */
+    @Getter @Setter
+    private AggregationTree aggregationTree;
+
+    /**
+     * The load of the responding node when it sent the response (Piggybacked for load aware routing).
+     */
+    @Getter @Setter
+    private double responderLoad;
+
+    /**
+     * The {@link System#nanoTime()} after which the requester no longer waits for responses ({@code 0} if there is none).
+     * Expired requests are dropped by the receivers before they reach any handler.
+     * <br><br><i>Note: Sent as the remaining time budget and turned into a deadline of the receiver's clock on receipt,
+     * so the clocks of the nodes do not need to be synchronized (Transit time is not deducted).</i>
+     */
+    @Getter @Setter
+    private transient long deadline;
+
 
     // ======================   CONSTRUCTOR
 
@@ -39,19 +79,62 @@ public abstract class ACollectablePacket extends APacket {
         super();
         this.type = Type.REQUEST;
         this.collectionId = UUID.randomUUID();
+        this.aggregatedResponses = 1;
     }
 
     public ACollectablePacket(ACollectablePacket requestPacket) {
         super();
         this.type = Type.RESPONSE;
         this.collectionId = requestPacket.getCollectionId();
+        this.aggregatedResponses = 1;
     }
 
 
     // ======================   BUSINESS LOGIC
 
+    /**
+     * Returns whether the deadline of the request passed. Long running handlers can use this to stop early.
+     *
+     * @return {@code true} if the requester does not wait for responses anymore
+     */
+    public boolean isExpired() {
+        return this.deadline != 0 && System.nanoTime() - this.deadline > 0;
+    }
+
+    /**
+     * Returns the time until the deadline of the request passes.
+     *
+     * @return The remaining millis ({@code 0} if expired, {@link Long#MAX_VALUE} if there is no deadline)
+     */
+    public long getRemainingMillis() {
+        if (this.deadline == 0)
+            return Long.MAX_VALUE;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(this.deadline - System.nanoTime()));
+    }
+
+
     // ======================   HELPERS
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        // An expired budget must stay distinguishable from none
+        out.writeLong(this.deadline == 0 ? 0 : Math.max(1, getRemainingMillis()));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        // Packets of versions without deadlines end after the fields
+        long budget;
+        try {
+            budget = in.readLong();
+        } catch (OptionalDataException | EOFException e) {
+            budget = 0;
+        }
+        this.deadline = budget > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget) : 0;
+    }
+
     /**
      * Returns the string representation of the packet containing
      * the class name, id, type and sender/receiver if present..
@@ -1,10 +1,13 @@
 package com.endersuite.packify.packets;
 
+import com.endersuite.packify.handlers.RegisteredPacketHandler;
+import com.endersuite.packify.tracing.TraceContext;
 import lombok.Getter;
 import lombok.Setter;
 import org.jgroups.Address;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -14,10 +17,16 @@ import java.util.UUID;
  * @since 09.05.21
  */
 @Getter
-public abstract class APacket implements Serializable {
+public abstract class APacket implements Serializable, Cloneable {
 
     // ======================   VARS
 
+    /**
+     * Pinned to the value computed for the fields of version 1.2.0, so that packets stay readable by nodes
+     * running that version.
+     */
+    private static final long serialVersionUID = 3393899179451033829L;
+
     /**
      * A unique id identifying the packet.
      */
@@ -29,17 +38,37 @@ public abstract class APacket implements Serializable {
      */
     private final long createdAt;
 
+    /**
+     * The trace the packet belongs to ({@code null} if it is not sampled, see {@link com.endersuite.packify.tracing.Tracer}).
+     */
+    @Setter
+    private TraceContext traceContext;
+
     /**
      * The sender of the packet (Only populated when received).
      */
     @Setter
-    private Address sender;
+    private transient Address sender;
 
     /**
      * The recipient of the packet (Only populated when received).
      */
     @Setter
-    private Address recipient;
+    private transient Address recipient;
+
+    /**
+     * Whether a handler cancelled the packet.
+     * Handlers registered with {@code ignoreCancelled} won't be called for cancelled packets (Local only, never sent).
+     */
+    @Setter
+    private transient boolean cancelled;
+
+    /**
+     * The inline handlers that already handled the packet on the receiving thread,
+     * so they are skipped on the dispatch thread (Local only, never sent).
+     */
+    @Setter
+    private transient List<RegisteredPacketHandler> inlineHandlers;
 
 
     // ======================   CONSTRUCTOR
@@ -65,6 +94,22 @@ public abstract class APacket implements Serializable {
 
     // ======================   HELPERS
 
+    /**
+     * Creates a shallow copy of the packet which is used for in-process loopback delivery
+     * (see {@link com.endersuite.packify.NetworkManager.LoopbackMode#COPY}).
+     * <br><br><i>Note: Override this if your packet holds mutable state that must not be shared between the sender
+     * and local handlers!</i>
+     *
+     * @return The copied packet
+     */
+    public APacket copy() {
+        try {
+            return (APacket) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Returns the string representation of the packet containing the class name, id and sender/receiver if present..
      *
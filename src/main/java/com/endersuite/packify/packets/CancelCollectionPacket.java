@@ -0,0 +1,41 @@
+package com.endersuite.packify.packets;
+
+import com.endersuite.packify.transmission.DeliveryPolicy;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Sent by a requester whose {@link com.endersuite.packify.transmission.CompletableTransmission} completed early or was
+ * cancelled, so that the other nodes skip the pending requests of these collections instead of answering them.
+ * <br><br><i>Note: Handled internally by Packify, never passed to handlers.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Delivery(DeliveryPolicy.RELIABLE_UNORDERED)
+public class CancelCollectionPacket extends APacket {
+
+    // ======================   VARS
+
+    /**
+     * Pinned, as requesters & responders may run different versions.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The ids of the cancelled collections.
+     */
+    @Getter
+    private final List<UUID> collectionIds;
+
+
+    // ======================   CONSTRUCTOR
+
+    public CancelCollectionPacket(List<UUID> collectionIds) {
+        super();
+        this.collectionIds = collectionIds;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.endersuite.packify.packets;
+
+/**
+ * Implemented by response packets that can be merged with other responses of the same collection.
+ * Combinable responses allow intermediate nodes to aggregate the responses of their subtree when a request
+ * is sent using {@link com.endersuite.packify.transmission.CompletableTransmission.CompletableTransmissionBuilder#aggregate(int)}.
+ *
+ * @param <P>
+ *          The response packet type
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public interface Combinable<P extends ACollectablePacket> {
+
+    /**
+     * Merges another response into this one.
+     * <br><br><i>Note: May return {@code this} after mutating it or a new response packet.
+     * The amount of aggregated responses is tracked by Packify, it must not be handled here!</i>
+     *
+     * @param other
+     *          The response to merge
+     * @return The merged response
+     */
+    P combine(P other);
+
+}
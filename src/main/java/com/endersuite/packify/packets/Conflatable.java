@@ -0,0 +1,23 @@
+package com.endersuite.packify.packets;
+
+/**
+ * Implemented by update packets of which only the newest one per key matters (e.g. positions or load reports).
+ * Conflatable packets are queued by the {@link com.endersuite.packify.transmission.ConflationQueue} and a queued
+ * packet is replaced by a newer one with the same key & destination, so that a congested node sends fewer,
+ * fresher packets instead of building a stale backlog.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public interface Conflatable {
+
+    /**
+     * Returns the key identifying what the packet updates. Queued packets of the same class, key & destination
+     * are replaced by newer ones.
+     * <br><br><i>Note: Must implement {@code equals()} & {@code hashCode()} (e.g. a UUID or String)!</i>
+     *
+     * @return The key
+     */
+    Object getConflationKey();
+
+}
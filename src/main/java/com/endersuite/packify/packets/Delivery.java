@@ -0,0 +1,27 @@
+package com.endersuite.packify.packets;
+
+import com.endersuite.packify.transmission.DeliveryPolicy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares how a packet class is delivered. Packets without this annotation are delivered reliably & in order.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Inherited
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Delivery {
+
+    /**
+     * The delivery policy of the packet class.
+     */
+    DeliveryPolicy value();
+
+}
@@ -0,0 +1,71 @@
+package com.endersuite.packify.packets;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
+import org.jgroups.util.Util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Carries a packet that is broadcast inside a remote site (See
+ * {@link com.endersuite.packify.transmission.Transmission.TransmissionBuilder#toSite(String)}).
+ * It is sent to the site master of the site, which broadcasts it to the members of its site. They handle
+ * the carried packet as if it was received from the origin directly, so responses are sent back across the sites.
+ * <br><br><i>Note: Handled internally by Packify, never passed to handlers.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class SiteBroadcastPacket extends APacket {
+
+    // ======================   VARS
+
+    /**
+     * Pinned, as sites are often upgraded one after another.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The site the packet is broadcast in.
+     */
+    private final String site;
+
+    /**
+     * The carried packet.
+     */
+    private final APacket packet;
+
+    /**
+     * The node that sent the packet to the site master ({@code null} until broadcast by the site master).
+     * <br><br><i>Note: Written manually, as JGroups addresses are not serializable.</i>
+     */
+    @Setter
+    private transient Address origin;
+
+
+    // ======================   CONSTRUCTOR
+
+    public SiteBroadcastPacket(String site, APacket packet) {
+        super();
+        this.site = site;
+        this.packet = packet;
+    }
+
+
+    // ======================   HELPERS
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Util.writeAddress(this.origin, out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.origin = Util.readAddress(in);
+    }
+
+}
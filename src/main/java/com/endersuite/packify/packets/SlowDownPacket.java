@@ -0,0 +1,44 @@
+package com.endersuite.packify.packets;
+
+import com.endersuite.packify.transmission.DeliveryPolicy;
+import lombok.Getter;
+
+/**
+ * Sent back to a member whose packets are throttled by the {@link com.endersuite.packify.ratelimit.InboundRateLimiter}
+ * of the receiving node (If enabled). It is dispatched to the handlers of the throttled member like any other packet,
+ * so that the application can back off.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+@Delivery(DeliveryPolicy.RELIABLE_UNORDERED)
+public class SlowDownPacket extends APacket {
+
+    // ======================   VARS
+
+    /**
+     * Pinned, as throttled senders may run a different version than the receiver.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The name of the throttled packet class ({@code null} if all packets of the member are throttled).
+     */
+    private final String packetClassName;
+
+    /**
+     * The time after which the receiver accepts packets again.
+     */
+    private final long retryAfterMillis;
+
+
+    // ======================   CONSTRUCTOR
+
+    public SlowDownPacket(String packetClassName, long retryAfterMillis) {
+        super();
+        this.packetClassName = packetClassName;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+}
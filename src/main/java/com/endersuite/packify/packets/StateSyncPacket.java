@@ -0,0 +1,47 @@
+package com.endersuite.packify.packets;
+
+import com.endersuite.packify.state.StateEntry;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Carries changed entries (delta) or a chunk of all entries (snapshot) of a {@link com.endersuite.packify.state.ReplicatedState}.
+ * <br><br><i>Note: Handled by the {@link com.endersuite.packify.state.StateReplicator}.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class StateSyncPacket extends APacket {
+
+    // ======================   VARS
+
+    /**
+     * Pinned, so that nodes of different versions keep replicating.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The name of the replicated state.
+     */
+    private final String stateName;
+
+    private final List<StateEntry<?, ?>> entries;
+
+    /**
+     * Whether the entries are part of a snapshot sent to a joining member.
+     */
+    private final boolean snapshot;
+
+
+    // ======================   CONSTRUCTOR
+
+    public StateSyncPacket(String stateName, List<StateEntry<?, ?>> entries, boolean snapshot) {
+        super();
+        this.stateName = stateName;
+        this.entries = entries;
+        this.snapshot = snapshot;
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.endersuite.packify.packets;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Sent by a node to itself through the protocol stack while warming up (See {@link com.endersuite.packify.PacketRegistry}).
+ * It carries a sample of every registered packet class, so that their serialization & deserialization paths are
+ * initialized before the node receives live traffic.
+ * <br><br><i>Note: Handled internally by Packify, never passed to handlers.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class WarmupPacket extends APacket {
+
+    // ======================   VARS
+
+    /**
+     * Pinned like the other wire types (Only ever sent to the node itself).
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Identifies the warm-up round.
+     */
+    private final UUID roundId;
+
+    /**
+     * One instance of every registered packet class that could be instantiated.
+     */
+    private final List<APacket> samples;
+
+
+    // ======================   CONSTRUCTOR
+
+    public WarmupPacket(UUID roundId, List<APacket> samples) {
+        super();
+        this.roundId = roundId;
+        this.samples = samples;
+    }
+
+}
@@ -0,0 +1,271 @@
+package com.endersuite.packify.ratelimit;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.packets.CancelCollectionPacket;
+import com.endersuite.packify.packets.SlowDownPacket;
+import com.endersuite.packify.packets.WarmupPacket;
+import com.endersuite.packify.transmission.Transmission;
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.View;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the rate of packets received from each member and of each packet class using {@link TokenBucket}s.
+ * Limits are enforced on the receiving thread before a packet is deserialized: The class name is read from
+ * the header of the serialized payload, so throttled packets cost almost nothing.
+ * <br><br>If enabled, a throttled member is sent a {@link SlowDownPacket} (At most once per second).
+ * Packify's internal packets are never throttled.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class InboundRateLimiter {
+
+    // ======================   VARS
+
+    /**
+     * The type byte JGroups prefixes java serialized payloads with ({@code Util.TYPE_SERIALIZABLE}).
+     */
+    private static final byte TYPE_SERIALIZABLE = 2;
+
+    /**
+     * The offset of the class name length inside the payload: type, stream magic & version, TC_OBJECT, TC_CLASSDESC.
+     */
+    private static final int CLASS_NAME_OFFSET = 1 + 4 + 1 + 1;
+
+    private static final long SLOW_DOWN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Getter
+    private final NetworkManager networkManager;
+
+    /**
+     * The limit applied to every member without an explicit limit ({@code null} for unlimited).
+     */
+    @Getter @Setter
+    private volatile RateLimit defaultSenderLimit;
+
+    /**
+     * Whether throttled members are sent a {@link SlowDownPacket} (Defaults to {@code false}).
+     */
+    @Getter @Setter
+    private volatile boolean slowDown;
+
+    // Limits & buckets
+    private final Map<Address, RateLimit> senderLimits;
+    private final Map<String, RateLimit> classLimits;
+    private final Map<Address, TokenBucket> senderBuckets;
+    private final Map<String, TokenBucket> classBuckets;
+    private final Map<Address, Long> lastSlowDowns;
+
+    // Metrics
+    @Getter
+    private final LongAdder throttled;
+    @Getter
+    private final Map<Address, LongAdder> throttledBySender;
+    @Getter
+    private final Map<String, LongAdder> throttledByClass;
+
+
+    // ======================   CONSTRUCTOR
+
+    public InboundRateLimiter(NetworkManager networkManager) {
+        this.networkManager = networkManager;
+        this.senderLimits = new ConcurrentHashMap<>();
+        this.classLimits = new ConcurrentHashMap<>();
+        this.senderBuckets = new ConcurrentHashMap<>();
+        this.classBuckets = new ConcurrentHashMap<>();
+        this.lastSlowDowns = new ConcurrentHashMap<>();
+        this.throttled = new LongAdder();
+        this.throttledBySender = new ConcurrentHashMap<>();
+        this.throttledByClass = new ConcurrentHashMap<>();
+    }
+
+
+    // ======================   CONFIGURATION
+
+    /**
+     * Limits the packets received from a specific member (Overrides the default sender limit).
+     *
+     * @param sender
+     *          The member
+     * @param limit
+     *          The limit or {@code null} to use the default sender limit again
+     */
+    public void setSenderLimit(Address sender, RateLimit limit) {
+        if (limit == null)
+            this.senderLimits.remove(sender);
+        else
+            this.senderLimits.put(sender, limit);
+        this.senderBuckets.remove(sender);
+    }
+
+    /**
+     * Limits the packets of a class received from all members together.
+     *
+     * @param packetClass
+     *          The packet class
+     * @param limit
+     *          The limit or {@code null} for unlimited
+     */
+    public void setClassLimit(Class<? extends APacket> packetClass, RateLimit limit) {
+        if (limit == null)
+            this.classLimits.remove(packetClass.getName());
+        else
+            this.classLimits.put(packetClass.getName(), limit);
+        this.classBuckets.remove(packetClass.getName());
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Decides whether a received message may be deserialized & dispatched.
+     *
+     * @param sender
+     *          The sender (Address of the primary channel)
+     * @param message
+     *          The received message
+     * @return {@code true} if the message is permitted | {@code false} if it must be dropped
+     */
+    public boolean tryAcquire(Address sender, Message message) {
+
+        // RET: Nothing configured
+        if (this.defaultSenderLimit == null && this.senderLimits.isEmpty() && this.classLimits.isEmpty()) return true;
+
+        String className = peekClassName(message);
+
+        // RET: Packify internals
+        if (CancelCollectionPacket.class.getName().equals(className) || SlowDownPacket.class.getName().equals(className)
+                || WarmupPacket.class.getName().equals(className))
+            return true;
+
+        TokenBucket senderBucket = getSenderBucket(sender);
+        TokenBucket classBucket = className != null && !this.classLimits.isEmpty() ? getClassBucket(className) : null;
+
+        // Check both limits before taking permits, so a packet dropped by one does not use up the other
+        if (senderBucket != null && !senderBucket.isAvailable()) {
+            throttle(sender, null, senderBucket);
+            return false;
+        }
+        if (classBucket != null && !classBucket.isAvailable()) {
+            throttle(sender, className, classBucket);
+            return false;
+        }
+
+        if (senderBucket != null && !senderBucket.tryAcquire()) {
+            throttle(sender, null, senderBucket);
+            return false;
+        }
+        if (classBucket != null && !classBucket.tryAcquire()) {
+
+            // Taken concurrently -> Give the sender its permit back
+            if (senderBucket != null)
+                senderBucket.release();
+            throttle(sender, className, classBucket);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Drops the buckets of members that left the cluster.
+     *
+     * @param view
+     *          The current view
+     */
+    public void retain(View view) {
+        this.senderBuckets.keySet().retainAll(view.getMembers());
+        this.lastSlowDowns.keySet().retainAll(view.getMembers());
+    }
+
+    /**
+     * Reads the class name of a java serialized payload without deserializing it.
+     *
+     * @param message
+     *          The message
+     * @return The fully qualified class name or {@code null} if the payload is not a serialized object
+     */
+    public static String peekClassName(Message message) {
+        byte[] buffer = message.getRawBuffer();
+        int offset = message.getOffset();
+        int length = message.getLength();
+
+        // RET: Too short or not a serialized object
+        if (buffer == null || length < CLASS_NAME_OFFSET + 2 || buffer[offset] != TYPE_SERIALIZABLE) return null;
+
+        int nameLength = ((buffer[offset + CLASS_NAME_OFFSET] & 0xFF) << 8) | (buffer[offset + CLASS_NAME_OFFSET + 1] & 0xFF);
+
+        // RET: Malformed
+        if (CLASS_NAME_OFFSET + 2 + nameLength > length) return null;
+
+        return new String(buffer, offset + CLASS_NAME_OFFSET + 2, nameLength, StandardCharsets.UTF_8);
+    }
+
+
+    // ======================   HELPERS
+
+    private TokenBucket getSenderBucket(Address sender) {
+        RateLimit limit = this.senderLimits.getOrDefault(sender, this.defaultSenderLimit);
+
+        // RET: Unlimited
+        if (limit == null || sender == null) return null;
+
+        TokenBucket bucket = this.senderBuckets.get(sender);
+
+        // RET: Up to date
+        if (bucket != null && bucket.getLimit() == limit) return bucket;
+
+        // Atomic, so concurrent first packets of a sender share one bucket
+        return this.senderBuckets.compute(sender, (address, current) ->
+                current != null && current.getLimit() == limit ? current : new TokenBucket(limit));
+    }
+
+    private TokenBucket getClassBucket(String className) {
+        RateLimit limit = this.classLimits.get(className);
+
+        // RET: Unlimited
+        if (limit == null) return null;
+
+        return this.classBuckets.computeIfAbsent(className, name -> new TokenBucket(limit));
+    }
+
+    /**
+     * Updates the metrics and signals the sender to slow down if enabled.
+     */
+    private void throttle(Address sender, String className, TokenBucket bucket) {
+        this.throttled.increment();
+        if (sender != null)
+            this.throttledBySender.computeIfAbsent(sender, address -> new LongAdder()).increment();
+        if (className != null)
+            this.throttledByClass.computeIfAbsent(className, name -> new LongAdder()).increment();
+
+        // RET: No signal wanted or nobody to signal
+        if (!isSlowDown() || sender == null || sender.equals(getNetworkManager().getJChannel().getAddress())) return;
+
+        long now = System.nanoTime();
+        Long last = this.lastSlowDowns.get(sender);
+
+        // RET: Signalled recently
+        if (last != null && now - last < SLOW_DOWN_INTERVAL_NANOS) return;
+        this.lastSlowDowns.put(sender, now);
+
+        new StrFmt("{prefix} Throttling %s%s", sender, className != null ? " (" + className + ")" : "").setLevel(Level.WARN).toLog();
+        Transmission.newBuilder(getNetworkManager(), new SlowDownPacket(className, bucket.getRetryAfterMillis()))
+                .to(sender)
+                .build()
+                .sneakyTransmit();
+    }
+
+}
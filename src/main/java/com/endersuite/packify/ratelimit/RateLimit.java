@@ -0,0 +1,57 @@
+package com.endersuite.packify.ratelimit;
+
+import lombok.Getter;
+
+/**
+ * The configuration of a {@link TokenBucket}: A sustained rate and a burst that may be exceeded shortly.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class RateLimit {
+
+    // ======================   VARS
+
+    /**
+     * The amount of packets per second that are permitted in the long run.
+     */
+    private final double permitsPerSecond;
+
+    /**
+     * The amount of packets that are permitted at once after a quiet period.
+     */
+    private final int burst;
+
+
+    // ======================   CONSTRUCTOR
+
+    public RateLimit(double permitsPerSecond, int burst) {
+
+        // THROW: Invalid configuration
+        if (permitsPerSecond <= 0 || burst < 1)
+            throw new IllegalArgumentException("Rate & burst must be positive!");
+
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * Creates a rate limit.
+     *
+     * @param permitsPerSecond
+     *          The sustained amount of packets per second
+     * @param burst
+     *          The amount of packets permitted at once
+     * @return The rate limit
+     */
+    public static RateLimit of(double permitsPerSecond, int burst) {
+        return new RateLimit(permitsPerSecond, burst);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%.1f/s, burst=%d)", getClass().getSimpleName(), getPermitsPerSecond(), getBurst());
+    }
+
+}
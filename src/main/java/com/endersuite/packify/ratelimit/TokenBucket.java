@@ -0,0 +1,95 @@
+package com.endersuite.packify.ratelimit;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free token bucket. Instead of refilling tokens, it stores the time at which the bucket would be full again
+ * (Generic cell rate algorithm), so acquiring a permit is a single compare and set.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class TokenBucket {
+
+    // ======================   VARS
+
+    @Getter
+    private final RateLimit limit;
+
+    /**
+     * The time a single permit takes to be refilled.
+     */
+    private final long intervalNanos;
+
+    /**
+     * The amount of time the bucket may run ahead of the current time (= burst).
+     */
+    private final long toleranceNanos;
+
+    /**
+     * The time (nano time) at which the bucket is full again.
+     */
+    private final AtomicLong fullAt;
+
+
+    // ======================   CONSTRUCTOR
+
+    public TokenBucket(RateLimit limit) {
+        this.limit = limit;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / limit.getPermitsPerSecond()));
+        this.toleranceNanos = this.intervalNanos * limit.getBurst();
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Takes a permit if one is available.
+     *
+     * @return {@code true} if the permit was taken | {@code false} if the rate is exceeded
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long fullAt = this.fullAt.get();
+            long next = Math.max(fullAt, now) + this.intervalNanos;
+
+            // RET: Bucket empty
+            if (next - now > this.toleranceNanos) return false;
+
+            if (this.fullAt.compareAndSet(fullAt, next)) return true;
+        }
+    }
+
+    /**
+     * Returns whether a permit is available without taking it.
+     *
+     * @return {@code true} if {@link TokenBucket#tryAcquire()} would currently succeed
+     */
+    public boolean isAvailable() {
+        long now = System.nanoTime();
+        return Math.max(this.fullAt.get(), now) + this.intervalNanos - now <= this.toleranceNanos;
+    }
+
+    /**
+     * Gives back a permit that was taken but not used.
+     */
+    public void release() {
+        this.fullAt.addAndGet(-this.intervalNanos);
+    }
+
+    /**
+     * Returns the time until the next permit becomes available.
+     *
+     * @return The time in milliseconds (0 if a permit is available)
+     */
+    public long getRetryAfterMillis() {
+        long wait = this.fullAt.get() + this.intervalNanos - this.toleranceNanos - System.nanoTime();
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(wait));
+    }
+
+}
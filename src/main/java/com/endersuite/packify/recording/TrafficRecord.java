@@ -0,0 +1,116 @@
+package com.endersuite.packify.recording;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message recorded by a {@link TrafficRecorder}.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class TrafficRecord {
+
+    public enum Direction {
+        SENT,           // Sent by the recording node
+        RECEIVED        // Received by the recording node
+    }
+
+
+    // ======================   VARS
+
+    private final Direction direction;
+
+    /**
+     * The time since the recording started.
+     */
+    private final long offsetNanos;
+
+    private final short flags;
+
+    private final short transientFlags;
+
+    private final int stripe;
+
+    /**
+     * The name of the sending node.
+     */
+    private final String source;
+
+    /**
+     * The name of the receiving node ({@code null} for broadcasts).
+     */
+    private final String destination;
+
+    /**
+     * The serialized payload of the message.
+     */
+    private final byte[] payload;
+
+
+    // ======================   CONSTRUCTOR
+
+    public TrafficRecord(Direction direction, long offsetNanos, short flags, short transientFlags, int stripe,
+                         String source, String destination, byte[] payload) {
+        this.direction = direction;
+        this.offsetNanos = offsetNanos;
+        this.flags = flags;
+        this.transientFlags = transientFlags;
+        this.stripe = stripe;
+        this.source = source;
+        this.destination = destination;
+        this.payload = payload;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Decodes a record written by {@link TrafficRecorder}.
+     *
+     * @param buffer
+     *          The record
+     * @return The decoded record
+     */
+    public static TrafficRecord decode(ByteBuffer buffer) {
+        Direction direction = Direction.values()[buffer.get()];
+        long offsetNanos = buffer.getLong();
+        short flags = buffer.getShort();
+        short transientFlags = buffer.getShort();
+        int stripe = buffer.getInt();
+        String source = readString(buffer);
+        String destination = readString(buffer);
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        return new TrafficRecord(direction, offsetNanos, flags, transientFlags, stripe, source,
+                destination.isEmpty() ? null : destination, payload);
+    }
+
+    /**
+     * Returns the size of an encoded string.
+     */
+    static int sizeOf(byte[] string) {
+        return 2 + string.length;
+    }
+
+    static void writeString(ByteBuffer buffer, byte[] string) {
+        buffer.putShort((short) string.length);
+        buffer.put(string);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] string = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(string);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s, +%dus, %s -> %s, %d bytes)", getClass().getSimpleName(), this.direction,
+                this.offsetNanos / 1000, this.source, this.destination != null ? this.destination : "*", this.payload.length);
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.endersuite.packify.recording;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.storage.MappedSegmentLog;
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
+import org.jgroups.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records sent & received messages with their timestamps into a {@link MappedSegmentLog}, so that real traffic can be
+ * replayed later using the {@link TrafficReplayer}. The serialized payload is copied as is, so recording costs a
+ * copy into the mapped segment and never serializes anything.
+ * <br><br>The first record of a log is a header with the start time and the name of the recording node.
+ * Once the recording reached its size limit, further messages are dropped (Counted by {@link TrafficRecorder#getDropped()}).
+ * <br><br><i>Note: Packets delivered locally without leaving the process are not recorded. Every record is appended
+ * under the lock of the log, so all sending & receiving threads briefly contend on it (One copy of the message each).
+ * Prefer recording limited time windows on nodes with a high message rate.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class TrafficRecorder implements Closeable {
+
+    // ======================   VARS
+
+    static final int MAGIC = 0x504B5246;    // "PKRF"
+
+    private static final byte[] BROADCAST = new byte[0];
+
+    @Getter
+    private final MappedSegmentLog log;
+
+    /**
+     * The nano time the recording started at (All records are relative to it).
+     */
+    private final long startNanos;
+
+    /**
+     * The amount of recorded messages.
+     */
+    @Getter
+    private final LongAdder recorded;
+
+    /**
+     * The amount of messages that could not be recorded (e.g. larger than a segment).
+     */
+    @Getter
+    private final LongAdder failed;
+
+    /**
+     * The amount of messages dropped because the recording reached its size limit.
+     */
+    @Getter
+    private final LongAdder dropped;
+
+    /**
+     * The maximum size of the recorded messages in bytes, after which recording stops (Defaults to 1GB).
+     */
+    @Getter @Setter
+    private volatile long maxBytes;
+
+    private final AtomicLong recordedBytes;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Starts a new recording into a directory using segments of 64MB.
+     *
+     * @param directory
+     *          An empty directory
+     * @param nodeName
+     *          The name of the recording node
+     * @throws IOException
+     */
+    public TrafficRecorder(Path directory, String nodeName) throws IOException {
+        this(directory, nodeName, 64 * 1024 * 1024);
+    }
+
+    /**
+     * Starts a new recording into a directory.
+     *
+     * @param directory
+     *          An empty directory
+     * @param nodeName
+     *          The name of the recording node
+     * @param segmentSize
+     *          The size of each segment (Also limits the size of a recorded message)
+     * @throws IOException
+     */
+    public TrafficRecorder(Path directory, String nodeName, int segmentSize) throws IOException {
+        this.log = new MappedSegmentLog(directory, segmentSize);
+        this.startNanos = System.nanoTime();
+        this.recorded = new LongAdder();
+        this.failed = new LongAdder();
+        this.dropped = new LongAdder();
+        this.maxBytes = 1024L * 1024 * 1024;
+        this.recordedBytes = new AtomicLong();
+
+        // THROW: Would mix two recordings
+        if (this.log.getEndPosition() != this.log.getStartPosition())
+            throw new IOException("Recording directory " + directory + " is not empty!");
+
+        byte[] name = nodeName.getBytes(StandardCharsets.UTF_8);
+        this.log.append(4 + 8 + TrafficRecord.sizeOf(name), buffer -> {
+            buffer.putInt(MAGIC);
+            buffer.putLong(System.currentTimeMillis());
+            TrafficRecord.writeString(buffer, name);
+        });
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Records a message. Never throws, failures are counted.
+     *
+     * @param direction
+     *          Whether the message was sent or received
+     * @param message
+     *          The serialized message
+     * @param stripe
+     *          The stripe the message was sent / received on
+     * @param source
+     *          The sender (Primary channel address)
+     * @param destination
+     *          The recipient (Primary channel address, {@code null} for broadcasts)
+     */
+    public void record(TrafficRecord.Direction direction, Message message, int stripe, Address source, Address destination) {
+        long offsetNanos = System.nanoTime() - this.startNanos;
+        byte[] buffer = message.getRawBuffer();
+
+        // RET: Nothing to record
+        if (buffer == null) return;
+
+        byte[] sourceName = source != null ? source.toString().getBytes(StandardCharsets.UTF_8) : BROADCAST;
+        byte[] destinationName = destination != null ? destination.toString().getBytes(StandardCharsets.UTF_8) : BROADCAST;
+        int length = 1 + 8 + 2 + 2 + 4 + TrafficRecord.sizeOf(sourceName) + TrafficRecord.sizeOf(destinationName) + message.getLength();
+
+        // RET: Size limit reached
+        if (!reserve(length)) {
+            this.dropped.increment();
+            return;
+        }
+
+        try {
+            this.log.append(length, record -> {
+                record.put((byte) direction.ordinal());
+                record.putLong(offsetNanos);
+                record.putShort(message.getFlags());
+                record.putShort(message.getTransientFlags());
+                record.putInt(stripe);
+                TrafficRecord.writeString(record, sourceName);
+                TrafficRecord.writeString(record, destinationName);
+                record.put(buffer, message.getOffset(), message.getLength());
+            });
+            this.recorded.increment();
+        } catch (IOException | RuntimeException e) {
+            this.failed.increment();
+            new StrFmt("{prefix} Could not record " + message + "!", e).setLevel(Level.DEBUG).toLog();
+        }
+    }
+
+    /**
+     * Flushes and closes the recording.
+     */
+    @Override
+    public void close() {
+        this.log.close();
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Reserves space for a record unless the size limit would be exceeded. Reaching the limit gets logged once.
+     *
+     * @param length
+     *          The length of the record
+     * @return {@code true} if the record may be appended
+     */
+    private boolean reserve(int length) {
+        while (true) {
+            long recorded = this.recordedBytes.get();
+
+            // RET: Full
+            if (recorded + length > getMaxBytes()) {
+                if (this.dropped.sum() == 0)
+                    new StrFmt("{prefix} Traffic recording reached its limit of %d bytes, dropping further messages", getMaxBytes())
+                            .setLevel(Level.WARN).toLog();
+                return false;
+            }
+
+            if (this.recordedBytes.compareAndSet(recorded, recorded + length)) return true;
+        }
+    }
+
+    /**
+     * Reads the header of a recording.
+     *
+     * @param buffer
+     *          The first record of the log
+     * @return The name of the recording node
+     * @throws IOException
+     *          If the record is not a header
+     */
+    static String readHeader(ByteBuffer buffer) throws IOException {
+
+        // THROW: Not a recording
+        if (buffer == null || buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+            throw new IOException("Not a traffic recording!");
+
+        buffer.getLong();   // Start time (epoch millis)
+        return TrafficRecord.readString(buffer);
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.endersuite.packify.recording;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.StackProfile;
+import com.endersuite.packify.dispatch.RingBufferDispatcher;
+import com.endersuite.packify.stats.LatencyHistogram;
+import com.endersuite.packify.storage.MappedSegmentLog;
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
+import org.jgroups.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recording of a {@link TrafficRecorder} into a local in-JVM cluster. A node is created for every node name
+ * found in the recording and each recorded message is sent again by the node that originally sent it, at the original
+ * or an accelerated speed. Register the handlers under test using a custom {@link NodeFactory}.
+ * <br><br>Usage: {@code java com.endersuite.packify.recording.TrafficReplayer <directory> [speed]}
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class TrafficReplayer {
+
+    /**
+     * Creates the nodes of the replay cluster.
+     */
+    @FunctionalInterface
+    public interface NodeFactory {
+
+        NetworkManager create(String nodeName) throws Exception;
+
+    }
+
+
+    // ======================   VARS
+
+    @Getter
+    private final Path directory;
+
+    @Getter
+    private final NodeFactory nodeFactory;
+
+    /**
+     * The speed relative to the recording (e.g. {@code 10} for ten times faster, {@code 0} for as fast as possible).
+     */
+    @Getter @Setter
+    private double speed;
+
+    /**
+     * Whether messages that the recording node received are replayed as well (Defaults to {@code true}).
+     */
+    @Getter @Setter
+    private boolean includeReceived;
+
+    /**
+     * The nodes of the replay cluster by name (Available after {@link TrafficReplayer#replay()}).
+     */
+    @Getter
+    private final Map<String, NetworkManager> nodes;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Creates a replayer whose nodes use a {@link RingBufferDispatcher} and {@link StackProfile#sharedLoopback()}.
+     *
+     * @param directory
+     *          The directory of the recording
+     */
+    public TrafficReplayer(Path directory) {
+        this(directory, name -> new NetworkManager(new RingBufferDispatcher(1 << 16), name, StackProfile.sharedLoopback()));
+    }
+
+    /**
+     * Creates a replayer.
+     *
+     * @param directory
+     *          The directory of the recording
+     * @param nodeFactory
+     *          Creates the nodes (Must use an in-JVM stack such as {@link StackProfile#sharedLoopback()})
+     */
+    public TrafficReplayer(Path directory, NodeFactory nodeFactory) {
+        this.directory = directory;
+        this.nodeFactory = nodeFactory;
+        this.speed = 1;
+        this.includeReceived = true;
+        this.nodes = new LinkedHashMap<>();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Creates the replay cluster and replays the recording.
+     *
+     * @return The result
+     * @throws Exception
+     */
+    public Result replay() throws Exception {
+        try (MappedSegmentLog log = MappedSegmentLog.open(getDirectory())) {
+
+            // First pass: Only collect the node names (The records are streamed by the second pass, as a recording
+            // may be much larger than the heap)
+            MappedSegmentLog.Reader reader = log.reader(log.getStartPosition());
+            String recordingNode = TrafficRecorder.readHeader(reader.next());
+            Set<String> names = new LinkedHashSet<>();
+            names.add(recordingNode);
+            int total = 0;
+            for (ByteBuffer buffer = reader.next(); buffer != null; buffer = reader.next()) {
+                TrafficRecord record = TrafficRecord.decode(buffer);
+                if (!isReplayed(record, recordingNode)) continue;
+
+                total++;
+                names.add(record.getSource());
+                if (record.getDestination() != null)
+                    names.add(record.getDestination());
+            }
+
+            startCluster(names);
+            new StrFmt("{prefix} Replaying %d messages of %d nodes at %sx", total, names.size(), getSpeed())
+                    .setLevel(Level.INFO).toLog();
+
+            LatencyHistogram lateness = new LatencyHistogram();
+            int messages = 0;
+            reader = log.reader(log.getStartPosition());
+            reader.next();      // Header
+            long start = System.nanoTime();
+            for (ByteBuffer buffer = reader.next(); buffer != null; buffer = reader.next()) {
+                TrafficRecord record = TrafficRecord.decode(buffer);
+                if (!isReplayed(record, recordingNode)) continue;
+
+                long due = start + (getSpeed() > 0 ? (long) (record.getOffsetNanos() / getSpeed()) : 0);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0)
+                    LockSupport.parkNanos(wait);
+                lateness.record(System.nanoTime() - due);
+
+                NetworkManager node = this.nodes.get(record.getSource());
+                Address destination = record.getDestination() != null
+                        ? this.nodes.get(record.getDestination()).getJChannel().getAddress()
+                        : null;
+                Message message = new Message(destination, record.getPayload());
+                message.setFlag(record.getFlags());
+                message.setTransientFlag(record.getTransientFlags());
+                node.sendRaw(message, record.getStripe());
+                messages++;
+            }
+
+            return new Result(messages, System.nanoTime() - start, lateness);
+        }
+    }
+
+    /**
+     * Disconnects all nodes of the replay cluster.
+     */
+    public void close() {
+        this.nodes.values().forEach(NetworkManager::disconnect);
+        this.nodes.clear();
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Returns whether a record is replayed: Received messages only if included, and never the ones the recording node
+     * sent itself (e.g. broadcasts looped back through the stack), as they are replayed by their sent record already.
+     */
+    private boolean isReplayed(TrafficRecord record, String recordingNode) {
+
+        // RET: Sent
+        if (record.getDirection() != TrafficRecord.Direction.RECEIVED) return true;
+
+        return isIncludeReceived() && !record.getSource().equals(recordingNode);
+    }
+
+    private void startCluster(Set<String> names) throws Exception {
+        String clusterName = "packify-replay-" + UUID.randomUUID().toString().split("-")[0];
+        for (String name : names) {
+            NetworkManager node = getNodeFactory().create(name);
+            node.connect(clusterName);
+            this.nodes.put(name, node);
+        }
+
+        // Wait until every node sees the whole cluster
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (NetworkManager node : this.nodes.values()) {
+            while (node.getNodeCount() < names.size()) {
+
+                // THROW: Cluster did not form
+                if (System.nanoTime() > deadline)
+                    throw new IllegalStateException("Replay cluster did not form!");
+
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        // THROW: Missing arguments
+        if (args.length < 1)
+            throw new IllegalArgumentException("Usage: TrafficReplayer <directory> [speed]");
+
+        TrafficReplayer replayer = new TrafficReplayer(Paths.get(args[0]));
+        if (args.length > 1)
+            replayer.setSpeed(Double.parseDouble(args[1]));
+
+        try {
+            System.out.println(replayer.replay());
+        } finally {
+            replayer.close();
+        }
+    }
+
+
+    // ======================   RESULT
+
+    /**
+     * The outcome of a replay.
+     */
+    @Getter
+    public static class Result {
+
+        /**
+         * The amount of replayed messages.
+         */
+        private final int messages;
+
+        private final long durationNanos;
+
+        /**
+         * How late the messages were sent compared to their schedule (Shows whether the replay kept up).
+         */
+        private final LatencyHistogram lateness;
+
+        public Result(int messages, long durationNanos, LatencyHistogram lateness) {
+            this.messages = messages;
+            this.durationNanos = durationNanos;
+            this.lateness = lateness;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(messages=%d, duration=%dms, rate=%.0f/s, lateness=%s)", getClass().getSimpleName(),
+                    this.messages, TimeUnit.NANOSECONDS.toMillis(this.durationNanos),
+                    this.messages / Math.max(1e-9, this.durationNanos / 1e9), this.lateness);
+        }
+
+    }
+
+}
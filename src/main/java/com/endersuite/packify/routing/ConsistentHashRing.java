@@ -0,0 +1,131 @@
+package com.endersuite.packify.routing;
+
+import lombok.Getter;
+import org.jgroups.Address;
+import org.jgroups.View;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A consistent hash ring over the members of a {@link View}. Every member owns a configurable amount of
+ * virtual nodes, so keys are spread evenly and a view change only remaps the keys of joined / left members.
+ * Lookups are a binary search over a sorted array.
+ * <br><br><i>Note: Keys must have a {@code hashCode()} that is stable across JVMs (e.g. {@link String}, {@link java.util.UUID},
+ * numbers), otherwise nodes disagree about the owner of a key!</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class ConsistentHashRing {
+
+    // ======================   VARS
+
+    /**
+     * The view the ring was built from.
+     */
+    @Getter
+    private final View view;
+
+    @Getter
+    private final int virtualNodes;
+
+    // Sorted ring positions & the member owning each of them
+    private final long[] points;
+    private final Address[] owners;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Builds a ring for the members of the view.
+     *
+     * @param view
+     *          The view
+     * @param virtualNodes
+     *          The amount of virtual nodes per member
+     */
+    public ConsistentHashRing(View view, int virtualNodes) {
+
+        // THROW: Invalid config
+        if (virtualNodes < 1)
+            throw new IllegalArgumentException("virtualNodes must be positive!");
+
+        this.view = view;
+        this.virtualNodes = virtualNodes;
+
+        List<Address> members = view.getMembers();
+        int size = members.size() * virtualNodes;
+        long[][] entries = new long[size][];
+        for (int member = 0; member < members.size(); member++) {
+            long memberHash = members.get(member).hashCode();
+            for (int node = 0; node < virtualNodes; node++)
+                entries[member * virtualNodes + node] = new long[] { mix((memberHash << 32) ^ node), member };
+        }
+        Arrays.sort(entries, Comparator.comparingLong(entry -> entry[0]));
+
+        this.points = new long[size];
+        this.owners = new Address[size];
+        for (int i = 0; i < size; i++) {
+            this.points[i] = entries[i][0];
+            this.owners[i] = members.get((int) entries[i][1]);
+        }
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns the member owning the key.
+     *
+     * @param key
+     *          The key
+     * @return The owner or {@code null} if the view is empty
+     */
+    public Address getOwner(Object key) {
+
+        // RET: No members
+        if (this.points.length == 0) return null;
+
+        int index = Arrays.binarySearch(this.points, mix(key.hashCode()));
+        if (index < 0)
+            index = -index - 1;
+        return this.owners[index == this.points.length ? 0 : index];
+    }
+
+    /**
+     * Groups keys by the member owning them.
+     *
+     * @param keys
+     *          The keys
+     * @param <K>
+     * @return The keys per owner (Iteration order follows the first occurrence of each owner)
+     */
+    public <K> Map<Address, List<K>> groupByOwner(Collection<K> keys) {
+        Map<Address, List<K>> groups = new LinkedHashMap<>();
+        for (K key : keys)
+            groups.computeIfAbsent(getOwner(key), owner -> new ArrayList<>()).add(key);
+        return groups;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Spreads the bits of a hash over the whole {@code long} range (MurmurHash3 finalizer).
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
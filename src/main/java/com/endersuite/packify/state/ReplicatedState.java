@@ -0,0 +1,260 @@
+package com.endersuite.packify.state;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A keyed state that is replicated to all members of the cluster. Every key carries a version, so only changed keys
+ * (deltas) are broadcast and each node converges to the latest write of every key (Last writer wins).
+ * Changes are batched for the flush interval of the {@link StateReplicator}; multiple writes to a key within one
+ * batch only send the latest value. Joining members receive a snapshot of all keys.
+ * <br><br>Create instances using {@link StateReplicator#getState(String)}.
+ *
+ * @param <K>
+ *          The key type
+ * @param <V>
+ *          The value type
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class ReplicatedState<K extends Serializable, V extends Serializable> {
+
+    // ======================   VARS
+
+    /**
+     * The time tombstones of removed keys are kept to reject older writes arriving late.
+     */
+    private static final long TOMBSTONE_TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final StateReplicator replicator;
+
+    /**
+     * All entries including tombstones.
+     */
+    private final Map<K, StateEntry<K, V>> entries;
+
+    /**
+     * The entries changed locally since the last flush.
+     */
+    private final Map<K, StateEntry<K, V>> pendingDeltas;
+
+    /**
+     * The local time at which keys were removed (For purging their tombstones).
+     */
+    private final Map<K, Long> tombstones;
+
+    private final List<BiConsumer<K, V>> listeners;
+
+    /**
+     * The lamport clock of the state.
+     */
+    private long clock;
+
+
+    // ======================   CONSTRUCTOR
+
+    ReplicatedState(String name, StateReplicator replicator) {
+        this.name = name;
+        this.replicator = replicator;
+        this.entries = new ConcurrentHashMap<>();
+        this.pendingDeltas = new LinkedHashMap<>();
+        this.tombstones = new HashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key
+     *          The key
+     * @return The value or {@code null} if the key does not exist
+     */
+    public V get(K key) {
+        StateEntry<K, V> entry = this.entries.get(key);
+        return entry != null ? entry.getValue() : null;
+    }
+
+    /**
+     * Sets the value of a key and replicates it with the next flush.
+     *
+     * @param key
+     *          The key
+     * @param value
+     *          The value (Must not be {@code null}, use {@link ReplicatedState#remove(Object)})
+     */
+    public void put(K key, V value) {
+
+        // THROW: Null marks removed keys
+        if (value == null)
+            throw new IllegalArgumentException("Values must not be null!");
+
+        write(key, value);
+    }
+
+    /**
+     * Removes a key and replicates the removal with the next flush.
+     *
+     * @param key
+     *          The key
+     */
+    public void remove(K key) {
+        write(key, null);
+    }
+
+    /**
+     * Returns a copy of all existing keys and their values.
+     *
+     * @return The map
+     */
+    public Map<K, V> asMap() {
+        Map<K, V> map = new HashMap<>();
+        for (StateEntry<K, V> entry : this.entries.values()) {
+            if (!entry.isRemoved())
+                map.put(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    /**
+     * Returns the amount of existing keys.
+     *
+     * @return The size
+     */
+    public int size() {
+        int size = 0;
+        for (StateEntry<K, V> entry : this.entries.values()) {
+            if (!entry.isRemoved()) size++;
+        }
+        return size;
+    }
+
+    /**
+     * Adds a listener that is called after a key was changed locally or by another node.
+     *
+     * @param listener
+     *          Called with the key and the new value ({@code null} if the key was removed)
+     */
+    public void addListener(BiConsumer<K, V> listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Broadcasts the pending changes immediately instead of waiting for the flush interval.
+     */
+    public void flush() {
+        getReplicator().flush(this);
+    }
+
+
+    // ======================   HELPERS
+
+    private void write(K key, V value) {
+        boolean schedule;
+        synchronized (this) {
+            StateEntry<K, V> entry = new StateEntry<>(key, value, ++this.clock, getReplicator().getNodeName());
+            this.entries.put(key, entry);
+            updateTombstone(entry);
+            schedule = this.pendingDeltas.isEmpty();
+            this.pendingDeltas.put(key, entry);
+        }
+
+        if (schedule)
+            getReplicator().scheduleFlush(this);
+        for (BiConsumer<K, V> listener : this.listeners)
+            listener.accept(key, value);
+    }
+
+    /**
+     * Takes the changes since the last flush.
+     *
+     * @return The changed entries
+     */
+    synchronized List<StateEntry<?, ?>> drainDeltas() {
+        List<StateEntry<?, ?>> deltas = new ArrayList<>(this.pendingDeltas.values());
+        this.pendingDeltas.clear();
+        return deltas;
+    }
+
+    /**
+     * Returns all entries including tombstones.
+     *
+     * @return The entries
+     */
+    List<StateEntry<?, ?>> snapshot() {
+        return new ArrayList<>(this.entries.values());
+    }
+
+    /**
+     * Merges entries received from another node. Only entries newer than the local ones are applied.
+     *
+     * @param received
+     *          The received entries
+     */
+    @SuppressWarnings("unchecked")
+    void apply(List<StateEntry<?, ?>> received) {
+        List<StateEntry<K, V>> changed = new ArrayList<>();
+        synchronized (this) {
+            for (StateEntry<?, ?> raw : received) {
+                StateEntry<K, V> entry = (StateEntry<K, V>) raw;
+                this.clock = Math.max(this.clock, entry.getVersion());
+
+                if (!entry.isNewerThan(this.entries.get(entry.getKey()))) continue;
+
+                this.entries.put(entry.getKey(), entry);
+                this.pendingDeltas.remove(entry.getKey());
+                updateTombstone(entry);
+                changed.add(entry);
+            }
+        }
+        notifyListeners(changed);
+    }
+
+    private void updateTombstone(StateEntry<K, V> entry) {
+        if (entry.isRemoved())
+            this.tombstones.put(entry.getKey(), System.nanoTime());
+        else
+            this.tombstones.remove(entry.getKey());
+    }
+
+    /**
+     * Removes the tombstones that are older than their TTL (Called periodically by the replicator).
+     */
+    synchronized void purgeTombstones() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<K, Long>> iterator = this.tombstones.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<K, Long> tombstone = iterator.next();
+            if (now - tombstone.getValue() < TOMBSTONE_TTL_NANOS) continue;
+
+            iterator.remove();
+            StateEntry<K, V> entry = this.entries.get(tombstone.getKey());
+            if (entry != null && entry.isRemoved())
+                this.entries.remove(tombstone.getKey());
+        }
+    }
+
+    private void notifyListeners(List<StateEntry<K, V>> changed) {
+        for (StateEntry<K, V> entry : changed) {
+            for (BiConsumer<K, V> listener : this.listeners)
+                listener.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.endersuite.packify.state;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * A versioned key of a {@link ReplicatedState}. Entries with a {@code null} value are tombstones of removed keys.
+ * <br><br>Versions are lamport timestamps. Equal versions (concurrent writes) are ordered by the name of the writing node,
+ * so that every node picks the same winner.
+ *
+ * @param <K>
+ *          The key type
+ * @param <V>
+ *          The value type
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class StateEntry<K extends Serializable, V extends Serializable> implements Serializable {
+
+    // ======================   VARS
+
+    /**
+     * Pinned like the one of {@link com.endersuite.packify.packets.StateSyncPacket}, which carries the entries.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private final K key;
+
+    /**
+     * The value ({@code null} if the key was removed).
+     */
+    private final V value;
+
+    private final long version;
+
+    /**
+     * The name of the node that wrote the entry.
+     */
+    private final String origin;
+
+
+    // ======================   CONSTRUCTOR
+
+    public StateEntry(K key, V value, long version, String origin) {
+        this.key = key;
+        this.value = value;
+        this.version = version;
+        this.origin = origin;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Returns whether the entry supersedes another entry of the same key.
+     *
+     * @param other
+     *          The other entry (May be {@code null})
+     * @return {@code true} if this entry is newer
+     */
+    public boolean isNewerThan(StateEntry<K, V> other) {
+        if (other == null) return true;
+        if (this.version != other.version) return this.version > other.version;
+        return this.origin.compareTo(other.origin) > 0;
+    }
+
+    /**
+     * Returns whether the entry marks a removed key.
+     *
+     * @return {@code true} if the entry is a tombstone
+     */
+    public boolean isRemoved() {
+        return this.value == null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s=%s@%d(%s)", this.key, this.value, this.version, this.origin);
+    }
+
+}
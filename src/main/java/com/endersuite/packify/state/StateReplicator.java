@@ -0,0 +1,287 @@
+package com.endersuite.packify.state;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.packets.StateSyncPacket;
+import com.endersuite.packify.transmission.Transmission;
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
+import org.jgroups.MergeView;
+import org.jgroups.View;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replicates the {@link ReplicatedState}s of a {@link NetworkManager}.
+ * Local changes are broadcast as deltas after the flush interval. When members join, the oldest remaining member
+ * sends them a snapshot of every state in chunks, and the joining member broadcasts the entries it wrote before. When partitions merge, the oldest member of each partition sends
+ * its snapshots to the members of the other partitions, so writes made while partitioned flow in all directions
+ * (Duplicate entries are resolved by the last-writer-wins merge).
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class StateReplicator {
+
+    // ======================   VARS
+
+    /**
+     * The interval in which expired tombstones are purged.
+     */
+    private static final long PURGE_INTERVAL_SECONDS = 60;
+
+    @Getter
+    private final NetworkManager networkManager;
+
+    /**
+     * The time local changes are batched before they are broadcast (Defaults to 50ms).
+     */
+    @Getter @Setter
+    private Duration flushInterval;
+
+    /**
+     * The maximum amount of entries per delta / snapshot packet (Defaults to 512).
+     */
+    @Getter @Setter
+    private int snapshotChunkSize;
+
+    private final Map<String, ReplicatedState<?, ?>> states;
+
+    /**
+     * Entries received for states that were not created locally yet.
+     */
+    private final Map<String, List<StateEntry<?, ?>>> pendingEntries;     // Guarded by itself
+
+    /**
+     * The previous view (To detect joining members).
+     */
+    private View lastView;
+
+
+    // ======================   CONSTRUCTOR
+
+    public StateReplicator(NetworkManager networkManager) {
+        this.networkManager = networkManager;
+        this.flushInterval = Duration.ofMillis(50);
+        this.snapshotChunkSize = 512;
+        this.states = new ConcurrentHashMap<>();
+        this.pendingEntries = new ConcurrentHashMap<>();
+        networkManager.addPacketHandler(StateSyncPacket.class, this::handleSyncPacket);
+
+        // Not only on local writes, otherwise nodes that only receive keep their tombstones forever
+        networkManager.getScheduler().scheduleAtFixedRate(this::purgeTombstones, PURGE_INTERVAL_SECONDS,
+                PURGE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns the replicated state with the given name (Creates it if it does not exist yet).
+     *
+     * @param name
+     *          The name identifying the state inside the cluster
+     * @param <K>
+     *          The key type
+     * @param <V>
+     *          The value type
+     * @return The state
+     */
+    @SuppressWarnings("unchecked")
+    public <K extends Serializable, V extends Serializable> ReplicatedState<K, V> getState(String name) {
+        ReplicatedState<K, V> state = (ReplicatedState<K, V>) this.states.get(name);
+
+        // RET: Exists already
+        if (state != null) return state;
+
+        // Create it & apply entries received before it was created
+        synchronized (this.pendingEntries) {
+            state = (ReplicatedState<K, V>) this.states.computeIfAbsent(name, n -> new ReplicatedState<>(n, this));
+            List<StateEntry<?, ?>> pending = this.pendingEntries.remove(name);
+            if (pending != null)
+                state.apply(pending);
+        }
+        return state;
+    }
+
+    /**
+     * Sends snapshots to joining members or to the members of other partitions after a merge.
+     *
+     * @param view
+     *          The new view
+     */
+    public synchronized void handleViewChange(View view) {
+        View lastView = this.lastView;
+        this.lastView = view;
+
+        // RET: Partitions merged -> Exchange snapshots between them
+        if (view instanceof MergeView) {
+            handleMerge((MergeView) view);
+            return;
+        }
+
+        // RET: We just joined ourselves -> The others send us their snapshot, we send ours
+        // (Writes made before we joined were flushed whilst disconnected and never reached the others)
+        if (lastView == null) {
+            if (view.size() > 1) {
+                for (ReplicatedState<?, ?> state : this.states.values())
+                    sendSnapshot(state, null);
+            }
+            return;
+        }
+
+        List<Address> joined = new ArrayList<>(view.getMembers());
+        joined.removeAll(lastView.getMembers());
+
+        // RET: Nobody joined
+        if (joined.isEmpty()) return;
+
+        Address sender = view.getMembers().stream().filter(lastView::containsMember).findFirst().orElse(null);
+
+        // RET: Another member sends the snapshot
+        if (!getNetworkManager().getJChannel().getAddress().equals(sender)) return;
+
+        for (Address member : joined) {
+            for (ReplicatedState<?, ?> state : this.states.values())
+                sendSnapshot(state, member);
+        }
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Sends the snapshots of our partition to the members of the other partitions, if we are its oldest member.
+     *
+     * @param view
+     *          The merged view
+     */
+    private void handleMerge(MergeView view) {
+        Address self = getNetworkManager().getJChannel().getAddress();
+        View partition = view.getSubgroups().stream().filter(subgroup -> subgroup.containsMember(self)).findFirst().orElse(null);
+
+        // RET: Another member of our partition sends the snapshot
+        if (partition == null || !self.equals(partition.getMembers().get(0))) return;
+
+        List<Address> others = new ArrayList<>(view.getMembers());
+        others.removeAll(partition.getMembers());
+        new StrFmt("{prefix} Partitions merged, sending snapshots to %s", others).setLevel(Level.DEBUG).toLog();
+
+        for (Address member : others) {
+            for (ReplicatedState<?, ?> state : this.states.values())
+                sendSnapshot(state, member);
+        }
+    }
+
+    /**
+     * Returns the name of the local node (Used to order concurrent writes).
+     *
+     * @return The name
+     */
+    String getNodeName() {
+        return getNetworkManager().getJChannel().getName();
+    }
+
+    /**
+     * Flushes the state after the flush interval.
+     *
+     * @param state
+     *          The state with pending changes
+     */
+    void scheduleFlush(ReplicatedState<?, ?> state) {
+        getNetworkManager().getScheduler().schedule(() -> flush(state), getFlushInterval().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Broadcasts the pending changes of a state.
+     *
+     * @param state
+     *          The state
+     */
+    void flush(ReplicatedState<?, ?> state) {
+        List<StateEntry<?, ?>> deltas = state.drainDeltas();
+
+        // RET: Nothing changed
+        if (deltas.isEmpty()) return;
+
+        new StrFmt("{prefix} Replicating %d changes of %s", deltas.size(), state.getName()).setLevel(Level.TRACE).toLog();
+        send(state, deltas, null, false);
+    }
+
+    /**
+     * Sends all entries of a state to a member ({@code null} for all other members) in chunks.
+     */
+    private void sendSnapshot(ReplicatedState<?, ?> state, Address member) {
+        List<StateEntry<?, ?>> entries = state.snapshot();
+
+        // RET: Nothing to send
+        if (entries.isEmpty()) return;
+
+        new StrFmt("{prefix} Sending snapshot of %s (%d entries) to %s", state.getName(), entries.size(),
+                member != null ? member : "all members").setLevel(Level.DEBUG).toLog();
+
+        send(state, entries, member, true);
+    }
+
+    /**
+     * Sends entries in chunks of at most {@code snapshotChunkSize} entries.
+     *
+     * @param state
+     *          The state
+     * @param entries
+     *          The entries
+     * @param member
+     *          The recipient ({@code null} to broadcast to all other members)
+     * @param snapshot
+     *          Whether the entries are part of a snapshot
+     */
+    private void send(ReplicatedState<?, ?> state, List<StateEntry<?, ?>> entries, Address member, boolean snapshot) {
+        for (int from = 0; from < entries.size(); from += getSnapshotChunkSize()) {
+            List<StateEntry<?, ?>> chunk = new ArrayList<>(entries.subList(from, Math.min(entries.size(), from + getSnapshotChunkSize())));
+            Transmission.TransmissionBuilder builder = Transmission.newBuilder(getNetworkManager(), new StateSyncPacket(state.getName(), chunk, snapshot));
+            if (member != null)
+                builder.to(member);
+            else
+                builder.broadcast(false);
+            builder.build().sneakyTransmit();
+        }
+    }
+
+    private void purgeTombstones() {
+        try {
+            this.states.values().forEach(ReplicatedState::purgeTombstones);
+        } catch (Exception e) {
+            new StrFmt("{prefix} Could not purge tombstones: " + e.getMessage(), e).setLevel(Level.WARN).toLog();
+        }
+    }
+
+    private void handleSyncPacket(StateSyncPacket packet) {
+
+        // RET: Own delta
+        if (getNetworkManager().getJChannel().getAddress().equals(packet.getSender())) return;
+
+        ReplicatedState<?, ?> state = this.states.get(packet.getStateName());
+
+        // State not created yet -> Keep the entries until it is
+        if (state == null) {
+            synchronized (this.pendingEntries) {
+                state = this.states.get(packet.getStateName());
+                if (state == null) {
+                    this.pendingEntries.computeIfAbsent(packet.getStateName(), name -> new ArrayList<>()).addAll(packet.getEntries());
+                    return;
+                }
+            }
+        }
+
+        state.apply(packet.getEntries());
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.endersuite.packify.stats;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free, fixed size histogram of latencies with a relative precision of ~3%
+ * (log-linear buckets over microseconds, up to ~12 days).
+ * Recording is a single array increment, so it can be used on hot paths.
+ * {@link LatencyHistogram#decay()} halves all counts which lets old samples fade out over time.
+ * Histograms are serializable, so they can be sent to other nodes & merged using {@link LatencyHistogram#add(LatencyHistogram)}.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class LatencyHistogram implements Serializable {
+
+    // ======================   VARS
+
+    /**
+     * Pinned, as histograms are sent in reports (e.g. by the load generator).
+     */
+    private static final long serialVersionUID = 1L;
+
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - 6) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong maxMicros;
+
+
+    // ======================   CONSTRUCTOR
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new AtomicLong();
+        this.maxMicros = new AtomicLong();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos
+     *          The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        this.counts.incrementAndGet(indexOf(micros));
+        this.totalCount.incrementAndGet();
+
+        long max;
+        while (micros > (max = this.maxMicros.get()) && !this.maxMicros.compareAndSet(max, micros));
+    }
+
+    /**
+     * Returns the latency below which the given fraction of all recorded samples lie.
+     *
+     * @param percentile
+     *          The percentile in {@code [0, 1]} (e.g. {@code 0.99})
+     * @return The latency in nanoseconds (0 if nothing was recorded)
+     */
+    public long getPercentile(double percentile) {
+        long total = this.totalCount.get();
+
+        // RET: Empty
+        if (total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target)
+                return TimeUnit.MICROSECONDS.toNanos(Math.min(upperBoundOf(i), this.maxMicros.get()));
+        }
+        return TimeUnit.MICROSECONDS.toNanos(this.maxMicros.get());
+    }
+
+    /**
+     * Returns the amount of recorded samples (Reduced by {@link LatencyHistogram#decay()}).
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return this.totalCount.get();
+    }
+
+    /**
+     * Returns the highest recorded latency.
+     *
+     * @return The latency in nanoseconds
+     */
+    public long getMax() {
+        return TimeUnit.MICROSECONDS.toNanos(this.maxMicros.get());
+    }
+
+    /**
+     * Adds all samples of another histogram to this one.
+     *
+     * @param other
+     *          The histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        long added = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count == 0) continue;
+            this.counts.addAndGet(i, count);
+            added += count;
+        }
+        this.totalCount.addAndGet(added);
+
+        long max;
+        long otherMax = other.maxMicros.get();
+        while (otherMax > (max = this.maxMicros.get()) && !this.maxMicros.compareAndSet(max, otherMax));
+    }
+
+    /**
+     * Halves all counts so that old samples lose weight against new ones.
+     * <br><br><i>Note: Not atomic with concurrent recordings, which only shifts the result marginally.</i>
+     */
+    public void decay() {
+        long remaining = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = this.counts.get(i);
+            if (count == 0) continue;
+            this.counts.addAndGet(i, -(count - count / 2));
+            remaining += count / 2;
+        }
+        this.totalCount.set(remaining);
+        if (remaining == 0)
+            this.maxMicros.set(0);
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            this.counts.set(i, 0);
+        this.totalCount.set(0);
+        this.maxMicros.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(n=%d, p50=%.3fms, p99=%.3fms, max=%.3fms)", getClass().getSimpleName(), getCount(),
+                getPercentile(0.5) / 1e6, getPercentile(0.99) / 1e6, getMax() / 1e6);
+    }
+
+
+    // ======================   HELPERS
+
+    private static int indexOf(long micros) {
+        if (micros < LINEAR_BUCKETS) return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) return BUCKET_COUNT - 1;
+
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 6) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < LINEAR_BUCKETS) return index;
+
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 6;
+        int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.endersuite.packify.stats;
+
+import lombok.Getter;
+import org.jgroups.Address;
+
+/**
+ * The response statistics of a single cluster member as observed by the local node.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class MemberStatistics {
+
+    // ======================   VARS
+
+    /**
+     * The weight of a new sample in the moving average of the latency.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    @Getter
+    private final Address address;
+
+    /**
+     * The latencies of the member's responses (Request sent until response received).
+     */
+    @Getter
+    private final LatencyHistogram latency;
+
+    /**
+     * The exponentially weighted moving average of the latency in nanoseconds (0 if nothing was recorded).
+     */
+    @Getter
+    private volatile double averageLatency;
+
+    /**
+     * The last load reported by the member (0 if the member did not report any load yet).
+     */
+    @Getter
+    private volatile double load;
+
+
+    // ======================   CONSTRUCTOR
+
+    public MemberStatistics(Address address) {
+        this.address = address;
+        this.latency = new LatencyHistogram();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Records the latency of a response.
+     *
+     * @param nanos
+     *          The latency in nanoseconds
+     */
+    public void recordLatency(long nanos) {
+        this.latency.record(nanos);
+        double average = this.averageLatency;
+        this.averageLatency = average == 0 ? nanos : average + SMOOTHING * (nanos - average);
+    }
+
+    /**
+     * Records the load a member reported with its response.
+     *
+     * @param load
+     *          The load (See {@link com.endersuite.packify.NetworkManager#getLoadSupplier()})
+     */
+    public void recordLoad(double load) {
+        this.load = load;
+    }
+
+    /**
+     * Halves the weight of the recorded latencies and the moving average. Members that are not selected anymore
+     * (and therefore do not produce new samples) become attractive again over time and get probed.
+     */
+    public void decay() {
+        this.latency.decay();
+        this.averageLatency = this.averageLatency / 2;
+    }
+
+    /**
+     * Returns the expected cost of sending a request to the member. Lower is better.
+     * The average latency is scaled up by the reported load so that busy members are avoided
+     * before their latency actually degrades.
+     *
+     * @return The score (0 if nothing is known about the member yet)
+     */
+    public double getScore() {
+        return this.averageLatency * (1 + this.load);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s, avg=%.3fms, load=%.2f, %s)", getClass().getSimpleName(), this.address,
+                this.averageLatency / 1e6, this.load, this.latency);
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.endersuite.packify.stats;
+
+import com.endersuite.packify.packets.APacket;
+import lombok.Getter;
+import org.jgroups.Address;
+import org.jgroups.View;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tracks the latency & reported load of the responses to collectable requests per member and per request class.
+ * Used to pick the member an anycast request is sent to and when to hedge it.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class ResponseStatistics {
+
+    // ======================   VARS
+
+    /**
+     * Statistics per responding member.
+     */
+    @Getter
+    private final Map<Address, MemberStatistics> members;
+
+    /**
+     * Latencies per request class (Over all members).
+     */
+    @Getter
+    private final Map<Class<? extends APacket>, LatencyHistogram> packetClasses;
+
+
+    // ======================   CONSTRUCTOR
+
+    public ResponseStatistics() {
+        this.members = new ConcurrentHashMap<>();
+        this.packetClasses = new ConcurrentHashMap<>();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Records the latency of a response.
+     *
+     * @param member
+     *          The responding member
+     * @param requestClass
+     *          The class of the request packet
+     * @param nanos
+     *          The time between sending the request and receiving the response
+     */
+    public void recordLatency(Address member, Class<? extends APacket> requestClass, long nanos) {
+        getMember(member).recordLatency(nanos);
+        getPacketClass(requestClass).record(nanos);
+    }
+
+    /**
+     * Records the load a member reported with its response.
+     *
+     * @param member
+     *          The responding member
+     * @param load
+     *          The reported load
+     */
+    public void recordLoad(Address member, double load) {
+        getMember(member).recordLoad(load);
+    }
+
+    /**
+     * Returns the statistics of a member (Creates empty ones if none exist yet).
+     *
+     * @param member
+     *          The member
+     * @return The statistics
+     */
+    public MemberStatistics getMember(Address member) {
+        return getMembers().computeIfAbsent(member, MemberStatistics::new);
+    }
+
+    /**
+     * Returns the latencies of a request class (Creates an empty histogram if none exist yet).
+     *
+     * @param requestClass
+     *          The class of the request packet
+     * @return The histogram
+     */
+    public LatencyHistogram getPacketClass(Class<? extends APacket> requestClass) {
+        return getPacketClasses().computeIfAbsent(requestClass, c -> new LatencyHistogram());
+    }
+
+    /**
+     * Selects a member using the "power of two choices": Two random candidates are compared and the one with
+     * the lower score wins. Unlike always picking the best member, this does not make all nodes herd onto
+     * the same member while still avoiding slow & busy ones.
+     * Members without any statistics score best, so that new members are probed.
+     *
+     * @param candidates
+     *          The members to choose from
+     * @return The selected member or {@code null} if there are no candidates
+     */
+    public Address select(Collection<Address> candidates) {
+        List<Address> members = new ArrayList<>(candidates);
+
+        // RET: Nothing to choose
+        if (members.size() <= 1) return members.isEmpty() ? null : members.get(0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(members.size());
+        int second = random.nextInt(members.size() - 1);
+        if (second >= first) second++;
+
+        Address a = members.get(first);
+        Address b = members.get(second);
+        return getScore(a) <= getScore(b) ? a : b;
+    }
+
+    /**
+     * Drops the statistics of all members that left the cluster.
+     *
+     * @param view
+     *          The current view
+     */
+    public void retain(View view) {
+        getMembers().keySet().retainAll(view.getMembers());
+    }
+
+    /**
+     * Halves the weight of all recorded latencies so that the statistics follow changes in the cluster.
+     */
+    public void decay() {
+        getMembers().values().forEach(MemberStatistics::decay);
+        getPacketClasses().values().forEach(LatencyHistogram::decay);
+    }
+
+
+    // ======================   HELPERS
+
+    private double getScore(Address member) {
+        MemberStatistics statistics = getMembers().get(member);
+        return statistics != null ? statistics.getScore() : 0;
+    }
+
+}
@@ -0,0 +1,359 @@
+package com.endersuite.packify.storage;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.exceptions.OutboxFullException;
+import com.endersuite.packify.packets.APacket;
+import lombok.Getter;
+import lombok.Setter;
+import org.jgroups.Address;
+import org.jgroups.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stores outgoing messages in a {@link MappedSegmentLog} while the channel is disconnected and sends them in order
+ * once it is connected again. Messages sent whilst the outbox still has a backlog are appended as well,
+ * so that the original order is kept.
+ * <br><br>The outbox is durable: The position up to which messages were sent is stored next to the log,
+ * so a restarted node sends the remaining backlog after connecting. Messages can expire per packet class
+ * and the backlog is limited in size ({@link OutboxFullException}).
+ * <br><br>Draining runs on a dedicated thread, so a send blocked by flow control does not delay other tasks. A record
+ * is only passed once it was sent: If sending fails, draining is retried later starting with the same record.
+ * <br><br><i>Note: Unicast destinations are stored by node name and dropped if that node is gone when draining.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class DurableOutbox implements Closeable {
+
+    // ======================   VARS
+
+    private static final String POSITION_FILE = "outbox.position";
+
+    /**
+     * The delay after which draining is retried if sending failed.
+     */
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    @Getter
+    private final NetworkManager networkManager;
+
+    @Getter
+    private final MappedSegmentLog log;
+
+    /**
+     * The maximum size of the backlog in bytes (Defaults to 256MB).
+     */
+    @Getter @Setter
+    private volatile long maxBytes;
+
+    /**
+     * The amount of messages sent per drain step, after which the position is stored (Defaults to 256).
+     */
+    @Getter @Setter
+    private volatile int batchSize;
+
+    /**
+     * The time after which stored messages are dropped if no expiry is set for their class ({@code null} for never).
+     */
+    @Getter @Setter
+    private volatile Duration defaultExpiry;
+
+    private final Map<Class<? extends APacket>, Duration> expiries;
+
+    /**
+     * The stored position of the first message that was not sent yet.
+     */
+    private final MappedByteBuffer positionBuffer;
+    private final MappedSegmentLog.Reader reader;
+    private final AtomicBoolean draining;
+    private final ScheduledExecutorService executor;
+
+    // Metrics
+    @Getter
+    private final LongAdder stored;
+    @Getter
+    private final LongAdder drained;
+    @Getter
+    private final LongAdder expired;
+    @Getter
+    private final LongAdder undeliverable;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Opens the outbox inside the directory. A backlog left by a previous run is sent after connecting.
+     *
+     * @param networkManager
+     *          The manager to send with
+     * @param directory
+     *          The directory of the outbox
+     * @throws IOException
+     */
+    public DurableOutbox(NetworkManager networkManager, Path directory) throws IOException {
+        this.networkManager = networkManager;
+        this.log = new MappedSegmentLog(directory, 16 * 1024 * 1024);
+        this.maxBytes = 256L * 1024 * 1024;
+        this.batchSize = 256;
+        this.expiries = new ConcurrentHashMap<>();
+        this.draining = new AtomicBoolean();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "packify-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stored = new LongAdder();
+        this.drained = new LongAdder();
+        this.expired = new LongAdder();
+        this.undeliverable = new LongAdder();
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(POSITION_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.positionBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+        this.reader = this.log.reader(Math.max(this.positionBuffer.getLong(0), this.log.getStartPosition()));
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Sets the time after which stored messages of a packet class are dropped instead of being sent.
+     *
+     * @param packetClass
+     *          The packet class
+     * @param expiry
+     *          The expiry or {@code null} to use the default expiry
+     */
+    public void setExpiry(Class<? extends APacket> packetClass, Duration expiry) {
+        if (expiry == null)
+            this.expiries.remove(packetClass);
+        else
+            this.expiries.put(packetClass, expiry);
+    }
+
+    /**
+     * Returns whether there are stored messages that were not sent yet.
+     *
+     * @return {@code true} if new messages must be appended to keep the order
+     */
+    public boolean hasBacklog() {
+        synchronized (this.reader) {
+            return this.reader.getPosition() < this.log.getEndPosition();
+        }
+    }
+
+    /**
+     * Returns the size of the messages that were not sent yet.
+     *
+     * @return The size in bytes
+     */
+    public long getBacklogBytes() {
+        synchronized (this.reader) {
+            return this.log.getEndPosition() - this.reader.getPosition();
+        }
+    }
+
+    /**
+     * Stores a serialized message and starts draining if the channel is connected.
+     *
+     * @param message
+     *          The message (Its payload must be serialized)
+     * @param packetClass
+     *          The class of the carried packet (Used for the expiry, may be {@code null})
+     * @throws OutboxFullException
+     *          If the backlog reached its size limit
+     * @throws IOException
+     *          If the message could not be stored
+     */
+    public void store(Message message, Class<? extends APacket> packetClass) throws OutboxFullException, IOException {
+
+        // THROW: Limit reached
+        if (getBacklogBytes() >= getMaxBytes())
+            throw new OutboxFullException(getMaxBytes());
+
+        Duration expiry = packetClass != null ? this.expiries.getOrDefault(packetClass, getDefaultExpiry()) : getDefaultExpiry();
+        long expiresAt = expiry != null ? System.currentTimeMillis() + expiry.toMillis() : 0;
+        byte[] destination = message.getDest() != null ? message.getDest().toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] buffer = message.getRawBuffer();
+        int offset = message.getOffset();
+        int length = message.getLength();
+
+        this.log.append(8 + 2 + 2 + 2 + destination.length + length, record -> {
+            record.putLong(expiresAt);
+            record.putShort(message.getFlags());
+            record.putShort(message.getTransientFlags());
+            record.putShort((short) destination.length);
+            record.put(destination);
+            if (buffer != null)
+                record.put(buffer, offset, length);
+        });
+        this.stored.increment();
+
+        if (getNetworkManager().getJChannel().isConnected())
+            drain();
+    }
+
+    /**
+     * Starts sending the backlog in the background (If not already happening).
+     */
+    public void drain() {
+        if (!this.draining.compareAndSet(false, true)) return;
+
+        try {
+            this.executor.execute(this::drainBatch);
+        } catch (RejectedExecutionException e) {
+            this.draining.set(false);   // Closed
+        }
+    }
+
+    /**
+     * Stops draining and closes the log. The backlog is kept for the next run.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+        try {
+            this.executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.log.close();
+        this.positionBuffer.force();
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Sends up to one batch, stores the position and continues with the next batch. If sending failed,
+     * the batch is retried after a delay starting with the message that failed.
+     */
+    private void drainBatch() {
+        boolean failed = false;
+        try {
+            Map<String, Address> members = new HashMap<>();
+            for (Address member : getNetworkManager().getJChannel().getView().getMembers())
+                members.put(member.toString(), member);
+
+            long now = System.currentTimeMillis();
+            int sent = 0;
+            while (sent < getBatchSize() && getNetworkManager().getJChannel().isConnected()) {
+                ByteBuffer record;
+                synchronized (this.reader) {
+                    record = this.reader.peek();
+                }
+
+                // Drained completely
+                if (record == null) break;
+
+                sent++;
+                long expiresAt = record.getLong();
+                short flags = record.getShort();
+                short transientFlags = record.getShort();
+                byte[] destinationName = new byte[record.getShort()];
+                record.get(destinationName);
+
+                if (expiresAt > 0 && now > expiresAt) {
+                    this.expired.increment();
+                    skip();
+                    continue;
+                }
+
+                Address destination = null;
+                if (destinationName.length > 0) {
+                    destination = members.get(new String(destinationName, StandardCharsets.UTF_8));
+                    if (destination == null) {
+                        this.undeliverable.increment();
+                        skip();
+                        continue;
+                    }
+                }
+
+                byte[] payload = new byte[record.remaining()];
+                record.get(payload);
+                Message message = new Message(destination, payload);
+                message.setFlag(flags);
+                message.setTransientFlag(transientFlags);
+                getNetworkManager().sendConnected(message);
+
+                // Sent -> Only now move past it (Throws & stays unsent if disconnected meanwhile)
+                skip();
+                this.drained.increment();
+            }
+
+            if (sent > 0)
+                new StrFmt("{prefix} Drained %d messages from the outbox", sent).setLevel(Level.DEBUG).toLog();
+        } catch (Exception e) {
+            failed = true;
+            new StrFmt("{prefix} Could not drain the outbox!", e).setLevel(Level.WARN).toLog();
+        }
+
+        try {
+            storePosition();
+        } catch (Exception e) {
+            new StrFmt("{prefix} Could not store the outbox position!", e).setLevel(Level.WARN).toLog();
+        } finally {
+            this.draining.set(false);
+        }
+
+        // RET: Nothing left or disconnected (Draining continues once connected)
+        if (!hasBacklog() || !getNetworkManager().getJChannel().isConnected()) return;
+
+        // Continue with the next batch (Or retry the failed one later)
+        if (!failed)
+            drain();
+        else {
+            try {
+                this.executor.schedule(this::drain, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // Closed
+            }
+        }
+    }
+
+    /**
+     * Moves the reader past the record it just read.
+     */
+    private void skip() {
+        synchronized (this.reader) {
+            this.reader.skip();
+        }
+    }
+
+    /**
+     * Stores the position of the first message that was not sent yet & frees the sent segments.
+     *
+     * @throws IOException
+     */
+    private void storePosition() throws IOException {
+        long position;
+        synchronized (this.reader) {
+            position = this.reader.getPosition();
+        }
+        this.positionBuffer.putLong(0, position);
+        this.positionBuffer.force();
+        this.log.truncateBefore(position);
+    }
+
+}
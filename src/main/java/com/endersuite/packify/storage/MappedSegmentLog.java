@@ -0,0 +1,374 @@
+package com.endersuite.packify.storage;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * An append only log of binary records stored in fixed size, memory mapped segment files inside a directory.
+ * Appending a record is a copy into the mapped segment, no system call is involved (Except when a new segment is created).
+ * <br><br>Each record is stored as {@code [int length][payload]}. The length is written after the payload,
+ * so a record is either fully visible or not at all, and the log can be recovered after a crash by scanning
+ * up to the first empty length. Every record has a position that is unique & increasing over all segments.
+ * <br><br><i>Note: Mapped segments can not be unmapped explicitly on Java 8, their memory is released once they are
+ * garbage collected.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class MappedSegmentLog implements Closeable {
+
+    // ======================   VARS
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int LENGTH_SIZE = 4;
+
+    @Getter
+    private final Path directory;
+
+    /**
+     * The size of each segment file in bytes.
+     */
+    @Getter
+    private final int segmentSize;
+
+    /**
+     * The mapped segments by index (Guarded by this).
+     */
+    private final TreeMap<Long, MappedByteBuffer> segments;
+
+    /**
+     * The index of the segment that is appended to & the offset of the next record inside it.
+     */
+    private long headIndex;
+    private int headOffset;
+
+    private boolean closed;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Opens the log inside the directory. Existing segments are recovered and appended to.
+     *
+     * @param directory
+     *          The directory (Created if it does not exist)
+     * @param segmentSize
+     *          The size of each segment in bytes (Also the maximum record size)
+     * @throws IOException
+     */
+    public MappedSegmentLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segments = new TreeMap<>();
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    this.segments.put(index, map(file));
+                } catch (NumberFormatException ignored) {
+                    // Not a segment
+                }
+            }
+        }
+
+        if (this.segments.isEmpty()) {
+            this.headIndex = 0;
+            this.segments.put(0L, map(segmentPath(0)));
+        }
+        else
+            this.headIndex = this.segments.lastKey();
+
+        this.headOffset = scan(this.segments.get(this.headIndex));
+    }
+
+
+    /**
+     * Opens an existing log. The segment size is taken from the existing segments.
+     *
+     * @param directory
+     *          The directory of the log
+     * @return The log
+     * @throws IOException
+     *          If the directory does not contain any segments
+     */
+    public static MappedSegmentLog open(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files)
+                return new MappedSegmentLog(directory, (int) Files.size(file));
+        }
+
+        // THROW: Nothing to open
+        throw new IOException("No segments found in " + directory + "!");
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Appends a record.
+     *
+     * @param data
+     *          The array containing the payload
+     * @param offset
+     *          The offset of the payload inside the array
+     * @param length
+     *          The length of the payload
+     * @return The position of the record
+     * @throws IOException
+     *          If a new segment could not be created
+     */
+    public long append(byte[] data, int offset, int length) throws IOException {
+        return append(length, buffer -> buffer.put(data, offset, length));
+    }
+
+    /**
+     * Appends a record whose payload is written by the writer directly into the mapped segment.
+     *
+     * @param length
+     *          The exact length of the payload
+     * @param writer
+     *          Writes the payload into the given buffer (Its remaining bytes equal the length)
+     * @return The position of the record
+     * @throws IOException
+     *          If a new segment could not be created
+     */
+    public synchronized long append(int length, Consumer<ByteBuffer> writer) throws IOException {
+
+        // THROW: Closed
+        if (this.closed)
+            throw new IOException("Log is closed!");
+
+        // THROW: Can never fit
+        if (length <= 0 || LENGTH_SIZE + length > this.segmentSize)
+            throw new IllegalArgumentException("Record size " + length + " does not fit into a segment!");
+
+        if (this.headOffset + LENGTH_SIZE + length > this.segmentSize)
+            roll();
+
+        MappedByteBuffer segment = this.segments.get(this.headIndex);
+        ByteBuffer payload = segment.duplicate();
+        payload.position(this.headOffset + LENGTH_SIZE);
+        payload.limit(this.headOffset + LENGTH_SIZE + length);
+        writer.accept(payload.slice());
+
+        // Publish the record
+        segment.putInt(this.headOffset, length);
+
+        long position = positionOf(this.headIndex, this.headOffset);
+        this.headOffset += LENGTH_SIZE + length;
+        return position;
+    }
+
+    /**
+     * Opens a reader starting at a position.
+     *
+     * @param position
+     *          The position (E.g. {@link MappedSegmentLog#getStartPosition()} or a position returned by {@code append})
+     * @return The reader
+     */
+    public Reader reader(long position) {
+        return new Reader(position);
+    }
+
+    /**
+     * Returns the position of the first record that was not deleted.
+     *
+     * @return The position
+     */
+    public synchronized long getStartPosition() {
+        return positionOf(this.segments.firstKey(), 0);
+    }
+
+    /**
+     * Returns the position the next record will be appended at (If it fits into the current segment).
+     *
+     * @return The position
+     */
+    public synchronized long getEndPosition() {
+        return positionOf(this.headIndex, this.headOffset);
+    }
+
+    /**
+     * Returns the amount of bytes occupied on disk by the segments.
+     *
+     * @return The size in bytes
+     */
+    public synchronized long getDiskSize() {
+        return (long) this.segments.size() * this.segmentSize;
+    }
+
+    /**
+     * Deletes all segments that only contain records before the position.
+     *
+     * @param position
+     *          The position (E.g. the position of the first record that is still needed)
+     * @throws IOException
+     */
+    public synchronized void truncateBefore(long position) throws IOException {
+        while (this.segments.firstKey() < this.headIndex && positionOf(this.segments.firstKey() + 1, 0) <= position) {
+            long index = this.segments.pollFirstEntry().getKey();
+            Files.deleteIfExists(segmentPath(index));
+        }
+    }
+
+    /**
+     * Writes the appended records to the disk.
+     */
+    public synchronized void flush() {
+        this.segments.get(this.headIndex).force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.closed) return;
+        flush();
+        this.closed = true;
+    }
+
+
+    // ======================   HELPERS
+
+    private long positionOf(long index, int offset) {
+        return index * this.segmentSize + offset;
+    }
+
+    private Path segmentPath(long index) {
+        return this.directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Starts a new segment.
+     */
+    private void roll() throws IOException {
+        this.segments.get(this.headIndex).force();
+        this.headIndex++;
+        this.headOffset = 0;
+        this.segments.put(this.headIndex, map(segmentPath(this.headIndex)));
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        }
+    }
+
+    /**
+     * Returns the offset behind the last complete record of a segment.
+     */
+    private int scan(MappedByteBuffer segment) {
+        int offset = 0;
+        while (offset + LENGTH_SIZE <= this.segmentSize) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || offset + LENGTH_SIZE + length > this.segmentSize) break;
+            offset += LENGTH_SIZE + length;
+        }
+        return offset;
+    }
+
+
+    // ======================   READER
+
+    /**
+     * Reads the records of the log in order. Records appended after the reader was opened are read as well.
+     */
+    public class Reader {
+
+        /**
+         * The position of the next record to read.
+         */
+        @Getter
+        private long position;
+
+        /**
+         * The position behind the record returned by the last {@link Reader#peek()} ({@code -1} if none).
+         */
+        private long peekedEnd;
+
+        private Reader(long position) {
+            this.position = position;
+            this.peekedEnd = -1;
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return A read only buffer with the payload or {@code null} if there is no further record yet
+         */
+        public ByteBuffer next() {
+            ByteBuffer payload = peek();
+            skip();
+            return payload;
+        }
+
+        /**
+         * Reads the next record without moving past it, so it is read again unless {@link Reader#skip()} is called.
+         *
+         * @return A read only buffer with the payload or {@code null} if there is no further record yet
+         */
+        public ByteBuffer peek() {
+            synchronized (MappedSegmentLog.this) {
+                this.peekedEnd = -1;
+                while (true) {
+                    long index = this.position / segmentSize;
+                    int offset = (int) (this.position % segmentSize);
+
+                    // Position deleted -> Continue at the first remaining segment
+                    Map.Entry<Long, MappedByteBuffer> entry = segments.ceilingEntry(index);
+                    if (entry == null) return null;
+                    if (entry.getKey() != index) {
+                        this.position = positionOf(entry.getKey(), 0);
+                        continue;
+                    }
+
+                    MappedByteBuffer segment = entry.getValue();
+                    int length = offset + LENGTH_SIZE <= segmentSize ? segment.getInt(offset) : 0;
+
+                    if (length <= 0) {
+
+                        // RET: Reached the end of the log
+                        if (index >= headIndex) return null;
+
+                        // Continue with the next segment
+                        this.position = positionOf(index + 1, 0);
+                        continue;
+                    }
+
+                    ByteBuffer payload = segment.duplicate();
+                    payload.position(offset + LENGTH_SIZE);
+                    payload.limit(offset + LENGTH_SIZE + length);
+                    this.peekedEnd = this.position + LENGTH_SIZE + length;
+                    return payload.slice().asReadOnlyBuffer();
+                }
+            }
+        }
+
+        /**
+         * Moves past the record returned by the last {@link Reader#peek()} (Does nothing if there is none).
+         */
+        public void skip() {
+            synchronized (MappedSegmentLog.this) {
+                if (this.peekedEnd >= 0)
+                    this.position = this.peekedEnd;
+                this.peekedEnd = -1;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.endersuite.packify.tracing;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import lombok.Getter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appends spans as JSON lines to a file. The spans are written by a background thread, so exporting never blocks
+ * on I/O. If the writer can not keep up, spans are dropped.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    // ======================   VARS
+
+    @Getter
+    private final Path path;
+
+    private final BufferedWriter writer;
+    private final BlockingQueue<Span> queue;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * The amount of spans dropped because the queue was full.
+     */
+    @Getter
+    private final LongAdder dropped;
+
+
+    // ======================   CONSTRUCTOR
+
+    /**
+     * Opens the file for appending.
+     *
+     * @param path
+     *          The file
+     * @throws IOException
+     */
+    public FileSpanExporter(Path path) throws IOException {
+        this.path = path;
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.queue = new ArrayBlockingQueue<>(16_384);
+        this.dropped = new LongAdder();
+        this.thread = new Thread(this::write, "packify-span-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public void export(Span span) {
+        if (!this.queue.offer(span))
+            this.dropped.increment();
+    }
+
+    /**
+     * Writes the remaining spans and closes the file.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        try { this.thread.join(1000); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Writes the queued spans until closed, flushing whenever the queue ran empty.
+     */
+    private void write() {
+        List<Span> batch = new ArrayList<>();
+        try {
+            while (!this.closed || !this.queue.isEmpty()) {
+                Span span = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (span == null) continue;
+
+                batch.add(span);
+                this.queue.drainTo(batch);
+                for (Span queued : batch) {
+                    this.writer.write(queued.toJson());
+                    this.writer.newLine();
+                }
+                batch.clear();
+                this.writer.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            new StrFmt("{prefix} Could not write spans to " + this.path + "!", e).setLevel(Level.WARN).toLog();
+        } finally {
+            try { this.writer.close(); }
+            catch (IOException ignored) {}
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.endersuite.packify.tracing;
+
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the most recent spans in memory (e.g. for tests or a diagnostics endpoint).
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    // ======================   VARS
+
+    /**
+     * The maximum amount of kept spans. The oldest spans are dropped first.
+     */
+    @Getter
+    private final int capacity;
+
+    private final Deque<Span> spans;
+
+
+    // ======================   CONSTRUCTOR
+
+    public InMemorySpanExporter() {
+        this(10_000);
+    }
+
+    public InMemorySpanExporter(int capacity) {
+        this.capacity = capacity;
+        this.spans = new ArrayDeque<>();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    @Override
+    public synchronized void export(Span span) {
+        if (this.spans.size() >= this.capacity)
+            this.spans.pollFirst();
+        this.spans.addLast(span);
+    }
+
+    /**
+     * Returns the kept spans.
+     *
+     * @return The spans in the order they were exported
+     */
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<>(this.spans);
+    }
+
+    /**
+     * Returns the kept spans of a trace.
+     *
+     * @param traceId
+     *          The id of the trace
+     * @return The spans ordered by start
+     */
+    public List<Span> getTrace(long traceId) {
+        return getSpans().stream()
+                .filter(span -> span.getTraceId() == traceId)
+                .sorted((a, b) -> Long.compare(a.getStart(), b.getStart()))
+                .collect(Collectors.toList());
+    }
+
+    public synchronized void clear() {
+        this.spans.clear();
+    }
+
+}
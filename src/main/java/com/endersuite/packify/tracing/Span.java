@@ -0,0 +1,88 @@
+package com.endersuite.packify.tracing;
+
+import lombok.Getter;
+
+/**
+ * A recorded, finished span.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class Span {
+
+    // ======================   VARS
+
+    private final long traceId;
+
+    private final long spanId;
+
+    /**
+     * The id of the parent span ({@code 0} for the root span).
+     */
+    private final long parentSpanId;
+
+    private final SpanKind kind;
+
+    /**
+     * Describes the span (e.g. the packet class or handler).
+     */
+    private final String name;
+
+    /**
+     * The name of the node that recorded the span.
+     */
+    private final String node;
+
+    /**
+     * The other node involved (e.g. the sender or responding member, {@code null} if none).
+     */
+    private final String peer;
+
+    /**
+     * The epoch micros at which the span started.
+     */
+    private final long start;
+
+    private final long durationNanos;
+
+
+    // ======================   CONSTRUCTOR
+
+    public Span(long traceId, long spanId, long parentSpanId, SpanKind kind, String name, String node, String peer, long start, long durationNanos) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.kind = kind;
+        this.name = name;
+        this.node = node;
+        this.peer = peer;
+        this.start = start;
+        this.durationNanos = durationNanos;
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Returns the span as single line JSON object.
+     *
+     * @return The JSON
+     */
+    public String toJson() {
+        return String.format("{\"traceId\":\"%016x\",\"spanId\":\"%016x\",\"parentSpanId\":\"%016x\",\"kind\":\"%s\",\"name\":\"%s\",\"node\":\"%s\",%s\"start\":%d,\"durationNanos\":%d}",
+                getTraceId(), getSpanId(), getParentSpanId(), getKind(), escape(getName()), escape(getNode()),
+                getPeer() != null ? "\"peer\":\"" + escape(getPeer()) + "\"," : "", getStart(), getDurationNanos());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s %s on %s%s: %.3fms)", getClass().getSimpleName(), getKind(), getName(), getNode(),
+                getPeer() != null ? " <-> " + getPeer() : "", getDurationNanos() / 1_000_000d);
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
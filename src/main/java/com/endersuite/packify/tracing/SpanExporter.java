@@ -0,0 +1,25 @@
+package com.endersuite.packify.tracing;
+
+/**
+ * Receives the spans recorded by a {@link Tracer}.
+ * <br><br><i>Note: Called on the threads handling the packets, so implementations must be thread safe & fast!</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public interface SpanExporter {
+
+    /**
+     * Exports a finished span.
+     *
+     * @param span
+     *          The span
+     */
+    void export(Span span);
+
+    /**
+     * Releases the resources of the exporter.
+     */
+    default void close() {}
+
+}
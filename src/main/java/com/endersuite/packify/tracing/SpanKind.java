@@ -0,0 +1,42 @@
+package com.endersuite.packify.tracing;
+
+/**
+ * The stages of a packet's way through the cluster recorded as spans.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public enum SpanKind {
+
+    /**
+     * Sending the packet (Serializing & passing it to the stack) on the sender.
+     */
+    SEND,
+
+    /**
+     * From being sent until being received, i.e. the traversal of both protocol stacks & the network.
+     * <br><br><i>Note: Measured across the clocks of two nodes, so it includes their clock skew!</i>
+     */
+    STACK,
+
+    /**
+     * Deserializing the received packet.
+     */
+    RECEIVE,
+
+    /**
+     * Waiting in the dispatcher until the handlers are called.
+     */
+    QUEUE,
+
+    /**
+     * The execution of a single handler.
+     */
+    HANDLER,
+
+    /**
+     * From sending a request to a member until its response is handled on the requester.
+     */
+    RESPONSE
+
+}
@@ -0,0 +1,69 @@
+package com.endersuite.packify.tracing;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * The trace context carried by a sampled packet. It identifies the trace and the span in which the packet was sent,
+ * so that the spans recorded by the receiver become children of it.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+@Getter
+public class TraceContext implements Serializable {
+
+    // ======================   VARS
+
+    /**
+     * Pinned, as the context travels with every sampled packet.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The id of the trace (Shared by all spans of a request / response round trip).
+     */
+    private final long traceId;
+
+    /**
+     * The id of the span in which the packet was sent.
+     */
+    private final long spanId;
+
+    /**
+     * The id of the parent span ({@code 0} for the root span).
+     */
+    private final long parentSpanId;
+
+    /**
+     * The epoch micros at which the packet was sent (Clock of the sender).
+     */
+    private final long sentAt;
+
+    /**
+     * The {@link System#nanoTime()} at which the packet was queued for its handlers (Local only, never sent).
+     */
+    @Setter
+    private transient long queuedAt;
+
+
+    // ======================   CONSTRUCTOR
+
+    public TraceContext(long traceId, long spanId, long parentSpanId, long sentAt) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.sentAt = sentAt;
+    }
+
+
+    // ======================   HELPERS
+
+    @Override
+    public String toString() {
+        return String.format("%s(%016x/%016x)", getClass().getSimpleName(), getTraceId(), getSpanId());
+    }
+
+}
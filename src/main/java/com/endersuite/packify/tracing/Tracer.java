@@ -0,0 +1,217 @@
+package com.endersuite.packify.tracing;
+
+import com.endersuite.packify.packets.APacket;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records spans of sampled packets. A packet sent while no trace is active gets sampled at the configured rate,
+ * packets sent by a handler of a sampled packet (on the handler's thread) continue its trace. The {@link TraceContext}
+ * is carried by the packet, so that the receivers record their spans as part of the same trace.
+ * <br><br><i>Note: Spans are only recorded if an exporter is set. Nodes with a sample rate of 0 (Default)
+ * do not start traces, but still record their part of traces started by others.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class Tracer {
+
+    // ======================   VARS
+
+    /**
+     * The share of packets that start a new trace (Between 0 and 1, defaults to 0).
+     */
+    @Getter @Setter
+    private volatile double sampleRate;
+
+    /**
+     * Receives the recorded spans ({@code null} to disable tracing).
+     */
+    @Getter @Setter
+    private volatile SpanExporter exporter;
+
+    /**
+     * The name of this node, recorded with every span.
+     */
+    @Getter @Setter
+    private volatile String nodeName;
+
+    /**
+     * The context of the handler running on the current thread.
+     */
+    private final ThreadLocal<TraceContext> current;
+
+    // Converts nano time to epoch micros
+    private final long baseEpochMicros;
+    private final long baseNanos;
+
+
+    // ======================   CONSTRUCTOR
+
+    public Tracer() {
+        this.current = new ThreadLocal<>();
+        this.baseEpochMicros = System.currentTimeMillis() * 1000;
+        this.baseNanos = System.nanoTime();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns whether spans are recorded.
+     *
+     * @return {@code true} if an exporter is set
+     */
+    public boolean isEnabled() {
+        return getExporter() != null;
+    }
+
+    /**
+     * Attaches a new trace context to a packet that is about to be sent, if it continues the trace of the current
+     * handler or gets sampled.
+     *
+     * @param packet
+     *          The packet
+     * @return The attached context (Describing the send span) or {@code null} if the packet is not traced
+     */
+    public TraceContext start(APacket packet) {
+
+        // RET: Disabled or already traced (e.g. sent again)
+        if (!isEnabled() || packet.getTraceContext() != null) return null;
+
+        TraceContext parent = this.current.get();
+
+        // RET: Not sampled
+        if (parent == null && ThreadLocalRandom.current().nextDouble() >= getSampleRate()) return null;
+
+        TraceContext context = new TraceContext(parent != null ? parent.getTraceId() : newId(), newId(),
+                parent != null ? parent.getSpanId() : 0, toEpochMicros(System.nanoTime()));
+        packet.setTraceContext(context);
+        return context;
+    }
+
+    /**
+     * Makes a context the current one of this thread, so that packets sent by it continue the trace.
+     *
+     * @param context
+     *          The context ({@code null} to clear it)
+     * @return The previous context (To be restored afterwards)
+     */
+    public TraceContext enter(TraceContext context) {
+        TraceContext previous = this.current.get();
+        this.current.set(context);
+        return previous;
+    }
+
+    /**
+     * Creates the context of a new child span (e.g. of a handler, so that the packets it sends continue the trace).
+     *
+     * @param parent
+     *          The context of the parent span
+     * @return The context of the child span
+     */
+    public TraceContext child(TraceContext parent) {
+        return new TraceContext(parent.getTraceId(), newId(), parent.getSpanId(), 0);
+    }
+
+    /**
+     * Records the span described by a context (See {@link Tracer#child(TraceContext)}).
+     *
+     * @param span
+     *          The context of the span
+     * @param kind
+     *          The kind of the span
+     * @param name
+     *          The name of the span
+     * @param peer
+     *          The other node involved (May be {@code null})
+     * @param startNanos
+     *          The {@link System#nanoTime()} at which the span started
+     * @param durationNanos
+     *          The duration of the span
+     */
+    public void recordSpan(TraceContext span, SpanKind kind, String name, Object peer, long startNanos, long durationNanos) {
+        record(span.getTraceId(), span.getSpanId(), span.getParentSpanId(), kind, name, peer, toEpochMicros(startNanos), durationNanos);
+    }
+
+    /**
+     * Records a span as child of the span described by a context.
+     *
+     * @param parent
+     *          The context of the parent span
+     * @param kind
+     *          The kind of the span
+     * @param name
+     *          The name of the span
+     * @param peer
+     *          The other node involved (May be {@code null})
+     * @param startNanos
+     *          The {@link System#nanoTime()} at which the span started
+     * @param durationNanos
+     *          The duration of the span
+     * @return The id of the recorded span
+     */
+    public long record(TraceContext parent, SpanKind kind, String name, Object peer, long startNanos, long durationNanos) {
+        return record(parent.getTraceId(), newId(), parent.getSpanId(), kind, name, peer, toEpochMicros(startNanos), durationNanos);
+    }
+
+    /**
+     * Records the send span described by a context.
+     *
+     * @param context
+     *          The context attached by {@link Tracer#start(APacket)}
+     * @param name
+     *          The name of the span
+     * @param peer
+     *          The recipient (May be {@code null} for broadcasts)
+     * @param durationNanos
+     *          The duration of sending
+     */
+    public void recordSend(TraceContext context, String name, Object peer, long durationNanos) {
+        record(context.getTraceId(), context.getSpanId(), context.getParentSpanId(), SpanKind.SEND, name, peer, context.getSentAt(), durationNanos);
+    }
+
+    /**
+     * Records the stack traversal of a received packet: From being sent (Clock of the sender) until now.
+     *
+     * @param context
+     *          The context carried by the packet
+     * @param name
+     *          The name of the span
+     * @param sender
+     *          The sender
+     */
+    public void recordStack(TraceContext context, String name, Object sender) {
+        long now = toEpochMicros(System.nanoTime());
+        record(context.getTraceId(), newId(), context.getSpanId(), SpanKind.STACK, name, sender, context.getSentAt(),
+                Math.max(0, now - context.getSentAt()) * 1000);
+    }
+
+    /**
+     * Creates a new random span / trace id.
+     *
+     * @return The id
+     */
+    public static long newId() {
+        long id;
+        do { id = ThreadLocalRandom.current().nextLong(); } while (id == 0);
+        return id;
+    }
+
+
+    // ======================   HELPERS
+
+    private long record(long traceId, long spanId, long parentSpanId, SpanKind kind, String name, Object peer, long start, long durationNanos) {
+        SpanExporter exporter = getExporter();
+        if (exporter != null)
+            exporter.export(new Span(traceId, spanId, parentSpanId, kind, name, getNodeName(), peer != null ? peer.toString() : null, start, durationNanos));
+        return spanId;
+    }
+
+    private long toEpochMicros(long nanos) {
+        return this.baseEpochMicros + (nanos - this.baseNanos) / 1000;
+    }
+
+}
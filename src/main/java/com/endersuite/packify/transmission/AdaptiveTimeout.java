@@ -0,0 +1,123 @@
+package com.endersuite.packify.transmission;
+
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.stats.LatencyHistogram;
+import com.endersuite.packify.stats.ResponseStatistics;
+import lombok.Getter;
+import org.jgroups.Address;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Derives the timeout of a {@link CompletableTransmission} from the observed response times instead of a fixed duration:
+ * The highest percentile of the expected responders (and of the request class) times a factor, clamped to a floor & ceiling.
+ * <br><br>If {@code partial} is enabled and at least one response was received when the timeout elapses,
+ * the transmission completes with the partial result instead of timing out
+ * (See {@link CompletableTransmission#isPartial()}).
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class AdaptiveTimeout {
+
+    // ======================   VARS
+
+    /**
+     * The minimum amount of samples before a histogram is trusted. The ceiling is used below that.
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * The percentile of the response times (e.g. {@code 0.99}).
+     */
+    @Getter
+    private final double percentile;
+
+    /**
+     * The factor the percentile is multiplied with.
+     */
+    @Getter
+    private final double factor;
+
+    /**
+     * The lowest timeout (Protects against timeouts shorter than a GC pause).
+     */
+    @Getter
+    private final Duration floor;
+
+    /**
+     * The highest timeout (Also used while there are not enough samples).
+     */
+    @Getter
+    private final Duration ceiling;
+
+    /**
+     * Whether to complete with the responses received so far instead of timing out.
+     */
+    @Getter
+    private final boolean partial;
+
+
+    // ======================   CONSTRUCTOR
+
+    public AdaptiveTimeout(double percentile, double factor, Duration floor, Duration ceiling, boolean partial) {
+
+        // THROW: Invalid configuration
+        if (percentile <= 0 || percentile > 1 || factor <= 0 || floor.compareTo(ceiling) > 0)
+            throw new IllegalArgumentException("Invalid adaptive timeout configuration!");
+
+        this.percentile = percentile;
+        this.factor = factor;
+        this.floor = floor;
+        this.ceiling = ceiling;
+        this.partial = partial;
+    }
+
+    /**
+     * Creates the default configuration: p99 × 3, between 50ms and 30s, completing with partial results.
+     *
+     * @return The configuration
+     */
+    public static AdaptiveTimeout defaults() {
+        return new AdaptiveTimeout(0.99, 3, Duration.ofMillis(50), Duration.ofSeconds(30), true);
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Computes the timeout for a request.
+     *
+     * @param statistics
+     *          The statistics of previous responses
+     * @param requestClass
+     *          The class of the request packet
+     * @param members
+     *          The members expected to respond
+     * @return The timeout
+     */
+    public Duration compute(ResponseStatistics statistics, Class<? extends APacket> requestClass, Collection<Address> members) {
+        LatencyHistogram classLatency = statistics.getPacketClass(requestClass);
+
+        // RET: Nothing known about the request class yet
+        if (classLatency.getCount() < MIN_SAMPLES) return getCeiling();
+
+        long expected = classLatency.getPercentile(getPercentile());
+        for (Address member : members) {
+            LatencyHistogram memberLatency = statistics.getMember(member).getLatency();
+            if (memberLatency.getCount() >= MIN_SAMPLES)
+                expected = Math.max(expected, memberLatency.getPercentile(getPercentile()));
+        }
+
+        long timeout = (long) (expected * getFactor());
+        return Duration.ofNanos(Math.max(getFloor().toNanos(), Math.min(getCeiling().toNanos(), timeout)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(p%s × %s, %s..%s, partial=%s)", getClass().getSimpleName(), getPercentile() * 100,
+                getFactor(), getFloor(), getCeiling(), isPartial());
+    }
+
+}
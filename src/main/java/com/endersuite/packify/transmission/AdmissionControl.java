@@ -0,0 +1,328 @@
+package com.endersuite.packify.transmission;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.exceptions.AdmissionRejectedException;
+import com.endersuite.packify.packets.ACollectablePacket;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the amount of {@link CompletableTransmission}s in flight, in total and per request class, so that a slow
+ * cluster makes the requester shed load instead of piling up pending transmissions.
+ * A transmission occupies a slot from being sent until it completes, errors, times out or is cancelled.
+ * Transmissions exceeding a limit are handled according to their {@link AdmissionPolicy}.
+ * Queued transmissions are sent on a dedicated thread once admitted.
+ * <br><br><i>Note: Unlimited unless configured!</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class AdmissionControl {
+
+    // ======================   VARS
+
+    @Getter
+    private final NetworkManager networkManager;
+
+    /**
+     * The maximum amount of transmissions in flight ({@code 0} for unlimited).
+     */
+    @Getter @Setter
+    private volatile int maxInFlight;
+
+    /**
+     * The policy of transmissions that do not specify one (Defaults to {@link AdmissionPolicy#FAIL_FAST}).
+     */
+    @Getter @Setter
+    private volatile AdmissionPolicy defaultPolicy;
+
+    /**
+     * The maximum time a transmission waits or is queued for a slot (Defaults to 1s).
+     */
+    @Getter @Setter
+    private volatile Duration maxWait;
+
+    /**
+     * The maximum amount of queued transmissions (Defaults to 1024).
+     */
+    @Getter @Setter
+    private volatile int maxQueued;
+
+    private final Map<Class<? extends ACollectablePacket>, Integer> classLimits;
+    private final Map<Class<? extends ACollectablePacket>, AtomicInteger> classInFlight;
+    private int inFlight;
+
+    /**
+     * The queued transmissions in the order they were queued.
+     */
+    private final Deque<CompletableTransmission<?>> queue;
+
+    /**
+     * Sends queued transmissions once admitted (So a send blocked by flow control does not stall the scheduler).
+     */
+    private final ExecutorService executor;
+
+    // Metrics
+    @Getter
+    private final LongAdder admitted;
+    @Getter
+    private final LongAdder rejected;
+
+
+    // ======================   CONSTRUCTOR
+
+    public AdmissionControl(NetworkManager networkManager) {
+        this.networkManager = networkManager;
+        this.defaultPolicy = AdmissionPolicy.FAIL_FAST;
+        this.maxWait = Duration.ofSeconds(1);
+        this.maxQueued = 1024;
+        this.classLimits = new ConcurrentHashMap<>();
+        this.classInFlight = new ConcurrentHashMap<>();
+        this.queue = new ArrayDeque<>();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "packify-admission");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.admitted = new LongAdder();
+        this.rejected = new LongAdder();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Limits the amount of transmissions in flight of a request class.
+     *
+     * @param requestClass
+     *          The request class
+     * @param maxInFlight
+     *          The maximum amount ({@code 0} for unlimited)
+     */
+    public void setClassLimit(Class<? extends ACollectablePacket> requestClass, int maxInFlight) {
+        if (maxInFlight <= 0)
+            this.classLimits.remove(requestClass);
+        else
+            this.classLimits.put(requestClass, maxInFlight);
+    }
+
+    /**
+     * Returns the amount of transmissions in flight.
+     *
+     * @return The amount
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Returns the amount of transmissions in flight of a request class.
+     *
+     * @param requestClass
+     *          The request class
+     * @return The amount
+     */
+    public int getInFlight(Class<? extends ACollectablePacket> requestClass) {
+        AtomicInteger count = this.classInFlight.get(requestClass);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Returns the amount of queued transmissions.
+     *
+     * @return The amount
+     */
+    public synchronized int getQueued() {
+        return this.queue.size();
+    }
+
+    /**
+     * Occupies a slot for a transmission as configured by the policy.
+     *
+     * @param transmission
+     *          The transmission
+     * @param policy
+     *          The policy ({@code null} for the default policy)
+     * @return {@code true} if admitted | {@code false} if queued (It is transmitted once admitted)
+     * @throws AdmissionRejectedException
+     *          If no slot became free in time (or the queue is full)
+     * @throws InterruptedException
+     *          If interrupted whilst waiting
+     */
+    public boolean acquire(CompletableTransmission<?> transmission, AdmissionPolicy policy) throws AdmissionRejectedException, InterruptedException {
+        if (policy == null)
+            policy = getDefaultPolicy();
+
+        // Waiting inside a handler or a consumer of a completed transmission may block the thread that handles
+        // the responses or timeouts freeing the slots
+        if (policy == AdmissionPolicy.WAIT && getNetworkManager().isHandlerThread())
+            policy = AdmissionPolicy.QUEUE;
+
+        Class<? extends ACollectablePacket> requestClass = getRequestClass(transmission);
+
+        synchronized (this) {
+
+            // RET: Free slot (Queued transmissions go first)
+            if ((policy != AdmissionPolicy.QUEUE || this.queue.isEmpty()) && tryAcquire(requestClass)) {
+                this.admitted.increment();
+                return true;
+            }
+
+            switch (policy) {
+                case WAIT:
+                    long deadline = System.nanoTime() + getMaxWait().toNanos();
+                    while (!tryAcquire(requestClass)) {
+                        long remaining = deadline - System.nanoTime();
+
+                        // THROW: Waited too long
+                        if (remaining <= 0)
+                            throw reject(transmission);
+
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                    this.admitted.increment();
+                    return true;
+
+                case QUEUE:
+
+                    // THROW: Queue full
+                    if (this.queue.size() >= getMaxQueued())
+                        throw reject(transmission);
+
+                    this.queue.add(transmission);
+                    break;
+
+                default:
+                    throw reject(transmission);
+            }
+        }
+
+        // Queued -> Give up after the maximum wait
+        getNetworkManager().getScheduler().schedule(() -> getNetworkManager().runAsHandler(() -> {
+            if (remove(transmission))
+                transmission.error(reject(transmission));
+        }), getMaxWait().toNanos(), TimeUnit.NANOSECONDS);
+        return false;
+    }
+
+    /**
+     * Frees the slot of a transmission and admits queued transmissions.
+     *
+     * @param transmission
+     *          The transmission
+     */
+    public void release(CompletableTransmission<?> transmission) {
+        Class<? extends ACollectablePacket> requestClass = getRequestClass(transmission);
+        synchronized (this) {
+            this.inFlight--;
+            AtomicInteger count = this.classInFlight.get(requestClass);
+            if (count != null)
+                count.decrementAndGet();
+            notifyAll();
+        }
+        admitQueued();
+    }
+
+    /**
+     * Removes a transmission from the queue.
+     *
+     * @param transmission
+     *          The transmission
+     * @return {@code true} if it was queued
+     */
+    public synchronized boolean remove(CompletableTransmission<?> transmission) {
+        return this.queue.remove(transmission);
+    }
+
+    /**
+     * Stops sending queued transmissions and cancels the ones still queued.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+
+        List<CompletableTransmission<?>> queued;
+        synchronized (this) {
+            queued = new ArrayList<>(this.queue);
+            this.queue.clear();
+        }
+        queued.forEach(CompletableTransmission::cancel);
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Occupies a slot if the limits allow it.
+     * <br><br><i>Note: Must hold the monitor!</i>
+     */
+    private boolean tryAcquire(Class<? extends ACollectablePacket> requestClass) {
+        int maxInFlight = getMaxInFlight();
+
+        // RET: Global limit reached
+        if (maxInFlight > 0 && this.inFlight >= maxInFlight) return false;
+
+        AtomicInteger count = this.classInFlight.computeIfAbsent(requestClass, clazz -> new AtomicInteger());
+        Integer classLimit = this.classLimits.get(requestClass);
+
+        // RET: Class limit reached
+        if (classLimit != null && count.get() >= classLimit) return false;
+
+        count.incrementAndGet();
+        this.inFlight++;
+        return true;
+    }
+
+    /**
+     * Sends the queued transmissions for which slots are free (Skipping the ones whose class is still at its limit).
+     */
+    private void admitQueued() {
+        synchronized (this) {
+            for (Iterator<CompletableTransmission<?>> iterator = this.queue.iterator(); iterator.hasNext(); ) {
+
+                // RET: Global limit reached
+                if (getMaxInFlight() > 0 && this.inFlight >= getMaxInFlight()) return;
+
+                CompletableTransmission<?> transmission = iterator.next();
+                if (!tryAcquire(getRequestClass(transmission))) continue;
+
+                iterator.remove();
+                this.admitted.increment();
+                try {
+                    this.executor.execute(transmission::transmitAdmitted);
+                } catch (RejectedExecutionException ignored) {
+                    // Shut down -> Cancelled by shutdown()
+                }
+            }
+        }
+    }
+
+    private AdmissionRejectedException reject(CompletableTransmission<?> transmission) {
+        this.rejected.increment();
+        new StrFmt("{prefix} Rejecting %s: %d transmissions in flight", transmission.getPacket(), this.inFlight)
+                .setLevel(Level.DEBUG).toLog();
+        return new AdmissionRejectedException(transmission);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends ACollectablePacket> getRequestClass(CompletableTransmission<?> transmission) {
+        return (Class<? extends ACollectablePacket>) transmission.getPacket().getClass();
+    }
+
+}
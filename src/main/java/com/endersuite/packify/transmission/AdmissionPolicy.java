@@ -0,0 +1,30 @@
+package com.endersuite.packify.transmission;
+
+/**
+ * Decides what happens to a {@link CompletableTransmission} that exceeds the in-flight limits of the
+ * {@link AdmissionControl}.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public enum AdmissionPolicy {
+
+    /**
+     * {@code transmit()} blocks until a slot is free or the maximum wait elapsed.
+     * <br><br><i>Note: Inside packet handlers & the consumers of completed transmissions, {@link AdmissionPolicy#QUEUE}
+     * is used instead, as the calling thread may be the one that handles the responses or timeouts freeing the slots!</i>
+     */
+    WAIT,
+
+    /**
+     * {@code transmit()} throws an {@link com.endersuite.packify.exceptions.AdmissionRejectedException} right away (Default).
+     */
+    FAIL_FAST,
+
+    /**
+     * {@code transmit()} returns right away and the transmission is sent once a slot is free.
+     * If the queue is full or the maximum wait elapses, the error consumer is called instead.
+     */
+    QUEUE
+
+}
@@ -0,0 +1,264 @@
+package com.endersuite.packify.transmission;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.packets.ACollectablePacket;
+import com.endersuite.packify.packets.Combinable;
+import lombok.Getter;
+import org.jgroups.Address;
+import org.jgroups.Message;
+import org.jgroups.View;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the responses of a node's subtree for requests that are aggregated using an {@link AggregationTree}.
+ * Each intermediate node waits for its own response and one aggregate per child, merges them using
+ * {@link Combinable#combine(ACollectablePacket)} and sends a single packet to its parent.
+ * Aggregates of children arriving after the partial aggregate was flushed are sent to the requester directly.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class AggregationManager {
+
+    // ======================   VARS
+
+    /**
+     * Time after which aggregates of children are dropped if the matching request never arrived.
+     */
+    private static final long ORPHAN_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @Getter
+    private final NetworkManager networkManager;
+
+    /**
+     * Open aggregation sessions by collection id. Flushed sessions are kept until the deadline of their request,
+     * so that late aggregates of children are passed on to the requester.
+     */
+    @Getter
+    private final Map<UUID, Session> sessions;
+
+
+    // ======================   CONSTRUCTOR
+
+    public AggregationManager(NetworkManager networkManager) {
+        this.networkManager = networkManager;
+        this.sessions = new ConcurrentHashMap<>();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Opens an aggregation session for a received request if this node is an intermediate or leaf node of its tree.
+     *
+     * @param request
+     *          The received request
+     */
+    public void open(ACollectablePacket request) {
+        AggregationTree tree = request.getAggregationTree();
+        int index = tree.indexOf(getNetworkManager().getJChannel().getAddress());
+
+        // RET: We are the requester or not part of the tree -> Respond directly
+        if (index <= 0) return;
+
+        boolean localPending = getNetworkManager().getHandlers().containsKey(request.getClass())
+                && !getNetworkManager().getHandlers().get(request.getClass()).isEmpty();
+        List<Address> children = tree.getChildren(index);
+
+        // RET: Nothing to wait for
+        if (!localPending && children.isEmpty()) return;
+
+        Session session = getSessions().computeIfAbsent(request.getCollectionId(), Session::new);
+        synchronized (session) {
+            session.requester = tree.getRequester();
+            session.parent = tree.getParent(index);
+            session.pendingChildren.addAll(children);
+            session.pendingChildren.removeAll(session.finishedChildren);
+            session.localPending = localPending;
+            session.initialized = true;
+            session.retainMillis = request.getDeadline() != 0 ? request.getRemainingMillis() : ORPHAN_TIMEOUT_MILLIS;
+            reschedule(session, tree.getFlushDelayMillis(index));
+        }
+        flushIfDone(session);
+    }
+
+    /**
+     * Offers a response of the local handlers for aggregation.
+     *
+     * @param response
+     *          The response about to be sent
+     * @return {@code true} if the response was consumed | {@code false} if it must be sent as usual
+     */
+    public boolean offerLocal(ACollectablePacket response) {
+        Session session = getSessions().get(response.getCollectionId());
+
+        // RET: Not aggregated
+        if (session == null) return false;
+
+        synchronized (session) {
+
+            // RET: Not initialized or already flushed
+            if (!session.initialized || session.flushed) return false;
+
+            session.localPending = false;
+            if (!(response instanceof Combinable)) {
+                flushIfDone(session);
+                return false;
+            }
+
+            merge(session, response);
+        }
+        flushIfDone(session);
+        return true;
+    }
+
+    /**
+     * Offers the aggregate of a child for aggregation.
+     *
+     * @param response
+     *          The received aggregate
+     * @return {@code true} if the response was consumed | {@code false} if no session exists for it
+     */
+    public boolean offerRemote(ACollectablePacket response) {
+
+        // RET: Only combinable responses are sent along the tree
+        if (!(response instanceof Combinable)) return false;
+
+        Session session = getSessions().computeIfAbsent(response.getCollectionId(), Session::new);
+        synchronized (session) {
+
+            // Late aggregate -> Pass it on to the requester directly
+            if (session.flushed) {
+                if (session.initialized)
+                    send(session.requester, response);
+                else
+                    new StrFmt("{prefix} Dropping orphaned aggregated response %s", response).setLevel(Level.WARN).toLog();
+                return true;
+            }
+
+            // Aggregate arrived before the request -> Keep it until the request arrives
+            if (!session.initialized && session.flushTask == null)
+                reschedule(session, ORPHAN_TIMEOUT_MILLIS);
+
+            session.pendingChildren.remove(response.getSender());
+            session.finishedChildren.add(response.getSender());
+            merge(session, response);
+        }
+        flushIfDone(session);
+        return true;
+    }
+
+    /**
+     * Stops waiting for children which left the cluster.
+     *
+     * @param view
+     *          The new view
+     */
+    public void handleViewChange(View view) {
+        for (Session session : getSessions().values()) {
+            synchronized (session) {
+                session.pendingChildren.removeIf(child -> !view.containsMember(child));
+            }
+            flushIfDone(session);
+        }
+    }
+
+
+    // ======================   HELPERS
+
+    @SuppressWarnings("unchecked")
+    private void merge(Session session, ACollectablePacket response) {
+        int count = session.count + response.getAggregatedResponses();
+        session.merged = session.merged == null
+                ? response
+                : ((Combinable<ACollectablePacket>) session.merged).combine(response);
+        session.count = count;
+        session.merged.setAggregatedResponses(count);
+    }
+
+    private void flushIfDone(Session session) {
+        synchronized (session) {
+            if (session.initialized && !session.localPending && session.pendingChildren.isEmpty())
+                flush(session);
+        }
+    }
+
+    private void flush(Session session) {
+        synchronized (session) {
+
+            // RET: Already flushed
+            if (session.flushed) return;
+
+            session.flushed = true;
+            if (session.flushTask != null)
+                session.flushTask.cancel(false);
+
+            // RET: Request never arrived -> We don't know where to send the aggregate
+            if (!session.initialized) {
+                getSessions().remove(session.collectionId, session);
+                new StrFmt("{prefix} Dropping %d orphaned aggregated responses for %s", session.count, session.collectionId)
+                        .setLevel(Level.WARN).toLog();
+                return;
+            }
+
+            if (session.merged != null)
+                send(session.parent, session.merged);
+
+            // Keep the session to forward late aggregates until the requester stops waiting
+            session.flushTask = getNetworkManager().getScheduler().schedule(
+                    () -> getSessions().remove(session.collectionId, session), session.retainMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reschedule(Session session, long delayMillis) {
+        if (session.flushTask != null)
+            session.flushTask.cancel(false);
+        session.flushTask = getNetworkManager().getScheduler().schedule(() -> flush(session), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void send(Address destination, ACollectablePacket response) {
+        try { getNetworkManager().send(DeliveryPolicy.of(response.getClass()).apply(new Message(destination)), response); }
+        catch (Exception e) {
+            new StrFmt("{prefix} Could not send aggregated response " + response + "!", e)
+                    .setLevel(Level.ERROR).toLog();
+        }
+    }
+
+
+    // ======================   SESSION
+
+    /**
+     * The aggregation state of a single request on this node.
+     */
+    private static class Session {
+
+        private final UUID collectionId;
+        private final Set<Address> pendingChildren = new HashSet<>();
+        private final Set<Address> finishedChildren = new HashSet<>();
+        private Address requester;
+        private Address parent;
+        private boolean localPending;
+        private boolean initialized;
+        private boolean flushed;
+        private ACollectablePacket merged;
+        private int count;
+        private long retainMillis;
+        private ScheduledFuture<?> flushTask;
+
+        private Session(UUID collectionId) {
+            this.collectionId = collectionId;
+        }
+
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.endersuite.packify.transmission;
+
+import lombok.Getter;
+import org.jgroups.Address;
+import org.jgroups.View;
+import org.jgroups.util.Util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the k-ary tree used to aggregate responses of a collectable request.
+ * The requester is the root, all other members of the {@link View} the request was built for follow in view order.
+ * The tree travels with the request, so all members derive the same layout even if their views differ.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class AggregationTree implements Serializable {
+
+    // ======================   VARS
+
+    /**
+     * Pinned, as the tree travels with every aggregated request.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The members of the tree in heap order (Index 0 is the requester).
+     */
+    private transient List<Address> members;
+
+    /**
+     * The maximum amount of children per node.
+     */
+    @Getter
+    private final int fanOut;
+
+    /**
+     * The time after which the deepest nodes flush their partial aggregate. Nodes closer to the root wait longer.
+     */
+    @Getter
+    private final long flushAfterMillis;
+
+
+    // ======================   CONSTRUCTOR
+
+    private AggregationTree(List<Address> members, int fanOut, long flushAfterMillis) {
+        this.members = members;
+        this.fanOut = fanOut;
+        this.flushAfterMillis = flushAfterMillis;
+    }
+
+    /**
+     * Creates a tree rooted at the requester containing all members of the view.
+     *
+     * @param view
+     *          The current view
+     * @param requester
+     *          The address of the requesting node
+     * @param fanOut
+     *          The maximum amount of children per node
+     * @param flushAfter
+     *          The time after which the deepest nodes flush their partial aggregate
+     * @return The tree
+     */
+    public static AggregationTree of(View view, Address requester, int fanOut, Duration flushAfter) {
+
+        // THROW: Invalid fan out
+        if (fanOut < 1)
+            throw new IllegalArgumentException("fanOut must be positive!");
+
+        List<Address> members = new ArrayList<>(view.getMembers());
+        int requesterIndex = members.indexOf(requester);
+        if (requesterIndex > 0)
+            Collections.rotate(members, -requesterIndex);
+        else if (requesterIndex < 0)
+            members.add(0, requester);
+
+        return new AggregationTree(members, fanOut, flushAfter.toMillis());
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Returns the position of the member inside the tree.
+     *
+     * @param address
+     *          The member
+     * @return The index or {@code -1} if the member is not part of the tree
+     */
+    public int indexOf(Address address) {
+        return this.members.indexOf(address);
+    }
+
+    public Address getRequester() {
+        return this.members.get(0);
+    }
+
+    public int size() {
+        return this.members.size();
+    }
+
+    /**
+     * Returns the parent of the member at the given index.
+     *
+     * @param index
+     *          The index of the member
+     * @return The parent or {@code null} for the root
+     */
+    public Address getParent(int index) {
+        return index == 0 ? null : this.members.get((index - 1) / getFanOut());
+    }
+
+    /**
+     * Returns the direct children of the member at the given index.
+     *
+     * @param index
+     *          The index of the member
+     * @return The children (may be empty)
+     */
+    public List<Address> getChildren(int index) {
+        List<Address> children = new ArrayList<>(getFanOut());
+        for (int child = index * getFanOut() + 1; child <= index * getFanOut() + getFanOut() && child < size(); child++)
+            children.add(this.members.get(child));
+        return children;
+    }
+
+    /**
+     * Returns the delay after which the member at the given index flushes its partial aggregate.
+     * Deeper members flush earlier so that partial results still propagate up to the root.
+     *
+     * @param index
+     *          The index of the member
+     * @return The delay in milliseconds
+     */
+    public long getFlushDelayMillis(int index) {
+        int height = getDepth(size() - 1);
+        return getFlushAfterMillis() * (height - getDepth(index) + 1) / (height + 1);
+    }
+
+
+    // ======================   HELPERS
+
+    private int getDepth(int index) {
+        int depth = 0;
+        for (; index > 0; index = (index - 1) / getFanOut())
+            depth++;
+        return depth;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Util.writeAddresses(this.members, out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.members = Util.readAddresses(in, ArrayList::new);
+    }
+
+}
@@ -1,11 +1,17 @@
 package com.endersuite.packify.transmission;
 
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
 import com.endersuite.packify.NetworkManager;
 import com.endersuite.packify.packets.ACollectablePacket;
+import com.endersuite.packify.packets.CancelCollectionPacket;
+import com.endersuite.packify.tracing.SpanKind;
+import com.endersuite.packify.tracing.Tracer;
 import lombok.Getter;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages {@link ACollectablePacket}s and pending transmissions.
@@ -17,6 +23,8 @@ public class CollectableManager {
 
     // ======================   VARS
 
+    private static final int COLLECTION_HISTORY_CAPACITY = 4096;
+
     @Getter
     private final NetworkManager networkManager;
 
@@ -24,7 +32,36 @@ public class CollectableManager {
      * Stores CompletableTransmissions that are not completable yet (-> waiting for more response packets).
      */
     @Getter
-    private final Map<UUID, CompletableTransmission> pendingTransmissions;
+    private final Map<UUID, CompletableTransmission<?>> pendingTransmissions;
+
+    /**
+     * The ids of the most recently completed collections. Late responses to them (e.g. to {@code collectOne()}
+     * broadcasts or hedged requests) are dropped instead of being mistaken for aggregates of children.
+     */
+    private final Set<UUID> completedCollections;
+
+    /**
+     * The ids of the most recently cancelled collections of other nodes. Requests of them are not handled anymore.
+     */
+    private final Set<UUID> cancelledCollections;
+
+    /**
+     * Bounds the amount of our collectable requests in flight.
+     */
+    @Getter
+    private final AdmissionControl admissionControl;
+
+    /**
+     * The amount of received requests that were dropped because their deadline passed.
+     */
+    @Getter
+    private final LongAdder expiredRequests;
+
+    /**
+     * The amount of received requests that were dropped because the requester cancelled them.
+     */
+    @Getter
+    private final LongAdder cancelledRequests;
 
 
     // ======================   CONSTRUCTOR
@@ -32,6 +69,11 @@ public class CollectableManager {
     public CollectableManager(NetworkManager networkManager) {
         this.networkManager = networkManager;
         this.pendingTransmissions = new ConcurrentHashMap<>();
+        this.completedCollections = newHistory();
+        this.cancelledCollections = newHistory();
+        this.admissionControl = new AdmissionControl(networkManager);
+        this.expiredRequests = new LongAdder();
+        this.cancelledRequests = new LongAdder();
     }
 
     // ======================   BUSINESS LOGIC
@@ -39,16 +81,37 @@ public class CollectableManager {
     /**
      * Handles a collectable packet by adding it to matching pending transmissions and
      * completing them if they are completable.
+     * Packets of collections we did not request are passed to the {@link AggregationManager}.
      *
      * @param packet
      *          The packet to handle
      */
     public void handleCollectablePacket(ACollectablePacket packet) {
 
-        // RET: No pending transmission or the received collection id
-        if (!getPendingTransmissions().containsKey(packet.getCollectionId())) return;
+        CompletableTransmission<?> transmission = getPendingTransmissions().get(packet.getCollectionId());
+
+        // RET: No pending transmission or the received collection id -> Late response or maybe the aggregate of a child
+        if (transmission == null) {
+            if (this.completedCollections.contains(packet.getCollectionId()))
+                new StrFmt("{prefix} Dropping late response: %s", packet).setLevel(Level.TRACE).toLog();
+            else
+                getNetworkManager().getAggregationManager().offerRemote(packet);
+            return;
+        }
+
+        // Aggregated responses do not reflect the latency of a single member
+        if (packet.getAggregatedResponses() == 1 && packet.getSender() != null) {
+            long sentAt = transmission.getSentAt(packet.getSender());
+            long latency = System.nanoTime() - sentAt;
+            getNetworkManager().getResponseStatistics().recordLatency(packet.getSender(), transmission.getPacket().getClass(), latency);
+            getNetworkManager().getResponseStatistics().recordLoad(packet.getSender(), packet.getResponderLoad());
+
+            Tracer tracer = getNetworkManager().getTracer();
+            if (packet.getTraceContext() != null && tracer.isEnabled())
+                tracer.record(packet.getTraceContext(), SpanKind.RESPONSE, transmission.getPacket().getClass().getSimpleName(),
+                        packet.getSender(), sentAt, latency);
+        }
 
-        CompletableTransmission transmission = getPendingTransmissions().get(packet.getCollectionId());
         transmission.addResponsePacket(packet);
 
         // RET: Waiting for more response packets
@@ -57,19 +120,77 @@ public class CollectableManager {
         transmission.complete();
     }
 
+    /**
+     * Remembers the collections of a received cancel packet, so that their requests are skipped.
+     *
+     * @param packet
+     *          The received cancel packet
+     */
+    public void handleCancelPacket(CancelCollectionPacket packet) {
+        new StrFmt("{prefix} Requester cancelled collections: %s", packet.getCollectionIds()).setLevel(Level.TRACE).toLog();
+        this.cancelledCollections.addAll(packet.getCollectionIds());
+    }
+
+    /**
+     * Returns whether a received request does not need to be handled anymore, because its deadline passed
+     * or the requester cancelled it. Updates the drop counters.
+     *
+     * @param request
+     *          The received request
+     * @return {@code true} if the request should be dropped
+     */
+    public boolean isStale(ACollectablePacket request) {
+        if (request.isExpired()) {
+            this.expiredRequests.increment();
+            return true;
+        }
+        if (this.cancelledCollections.contains(request.getCollectionId())) {
+            this.cancelledRequests.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remembers a collection as completed so that late responses to it are dropped.
+     *
+     * @param collectionId
+     *          The id of the collection
+     */
+    public void markCompleted(UUID collectionId) {
+        this.completedCollections.add(collectionId);
+    }
+
     /**
      * Iterates through all pending transmissions and completes them if they are completable.
      * <br><br><i>Note: Called after cluster changed. This prevents transmissions from never completing
      * due to mismatch from node count when created ({@link Transmission.TransmissionBuilder#collectAll()}) and now.</i>
      */
     public void completeCompletableTransmissions() {
-        for (Iterator<CompletableTransmission> iterator = getPendingTransmissions().values().iterator(); getPendingTransmissions().values().iterator().hasNext(); ) {
-            CompletableTransmission transmission = iterator.next();
-            if (!transmission.isCompletable()) continue;
-
-            iterator.remove();
-            transmission.complete();
+        // Copy, as completing removes the transmission (Which may be stored once per fan out collection id)
+        for (CompletableTransmission<?> transmission : new HashSet<>(getPendingTransmissions().values())) {
+            if (transmission.isCompletable())
+                transmission.complete();
         }
     }
 
+
+    // ======================   HELPERS
+
+    /**
+     * Creates a thread safe set that only remembers the most recently added collection ids.
+     *
+     * @return The set
+     */
+    private static Set<UUID> newHistory() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<UUID, Boolean>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                return size() > COLLECTION_HISTORY_CAPACITY;
+            }
+        }));
+    }
+
 }
@@ -1,32 +1,76 @@
 package com.endersuite.packify.transmission;
 
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
 import com.endersuite.packify.exceptions.CompletableTimeoutException;
 import com.endersuite.packify.packets.ACollectablePacket;
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.packets.CancelCollectionPacket;
+import com.endersuite.packify.stats.LatencyHistogram;
 import lombok.Getter;
 import lombok.Synchronized;
+import org.jgroups.Address;
 import org.jgroups.Message;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
 
 /**
  * A CompletableTransmission stores a {@link Message}, can be send (transmitted) to other nodes in the cluster
  * and collects response packets.
  * A CompletableTransmission can only be created using a {@link CompletableTransmissionBuilder}.
+ * <br><br>By default all response packets are collected into a {@link List}. Using
+ * {@link CompletableTransmissionBuilder#reduce(Object, BiFunction)} or
+ * {@link CompletableTransmissionBuilder#collect(Collector)} each response is folded into an accumulator
+ * as soon as it arrives and the packet itself is discarded.
+ * <br><br>An anycast transmission ({@link CompletableTransmissionBuilder#anycast()}) is only sent to a single member,
+ * selected by the latency & load reported in previous responses. If hedging is enabled and the member did not answer
+ * within its usual (95th percentile) response time, the request is also sent to a second member and
+ * the first response wins.
+ * <br><br>With an {@link AdaptiveTimeout} the timeout is derived from the observed response times of the expected
+ * responders instead of a fixed duration.
+ * <br><br>In multi-site setups, the request can be sent to the local site first and only to the other sites if it did not
+ * complete in time ({@link CompletableTransmissionBuilder#localFirst(Duration)}). Per-site thresholds
+ * ({@link CompletableTransmissionBuilder#siteThreshold(String, int)}) replace the minimum amount of replies.
+ * <br><br>Before being sent, the transmission needs a slot of the {@link AdmissionControl}, which it occupies until it
+ * completes, errors, times out or is cancelled.
+ * <br><br>The timeout is propagated as deadline of the request, so that receivers drop it once the requester stopped
+ * waiting. If the transmission completes before every expected member responded (or is cancelled), the remaining
+ * members are told to skip the request using a {@link CancelCollectionPacket}.
  *
+ * @param <R>
+ *          The result type
  * @author Maximilian Vincent Heidenreich
  * @since 12.05.21
  */
-public class CompletableTransmission extends Transmission {
+public class CompletableTransmission<R> extends Transmission {
 
     // ======================   VARS
 
+    /**
+     * The minimum amount of responses of a member before its percentiles are used as hedge delay.
+     */
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
     /**
      * The unique id used to match request & response packets.
      */
@@ -45,9 +89,85 @@ public class CompletableTransmission extends Transmission {
     @Getter
     private final Duration timeout;
 
-    // Internal storage of received packets & callback / consumer stuff.
-    private final List<ACollectablePacket> receivedResponsePackets;
-    private final CompletableFuture<List<ACollectablePacket>> callback;
+    /**
+     * Further requests belonging to the same collection (e.g. one per owner for {@link Transmission#collectByKeys}).
+     * Responses to any of them are collected by this transmission.
+     */
+    private final List<Transmission> fanOutTransmissions;
+    private final List<UUID> fanOutCollectionIds;
+
+    /**
+     * Whether the request is sent to a single, load aware selected member instead of the configured destination.
+     */
+    @Getter
+    private final boolean anycast;
+
+    /**
+     * The delay after which an unanswered anycast request is sent to a second member if there are not enough
+     * statistics about the first one yet ({@code null} if hedging is disabled).
+     */
+    @Getter
+    private final Duration hedgeAfter;
+
+    /**
+     * Derives the timeout from previous response times ({@code null} to use the fixed timeout).
+     */
+    @Getter
+    private final AdaptiveTimeout adaptiveTimeout;
+
+    /**
+     * What happens if the in-flight limits are exceeded ({@code null} for the default policy of the {@link AdmissionControl}).
+     */
+    @Getter
+    private final AdmissionPolicy admissionPolicy;
+
+    /**
+     * The minimum amount of responses per site, replacing {@code minReplies} ({@code null} if not site aware).
+     */
+    @Getter
+    private final Map<String, Integer> siteThresholds;
+
+    /**
+     * The delay after which the request is sent to the other sites if it did not complete
+     * ({@code null} to send it to all destinations right away).
+     */
+    @Getter
+    private final Duration escalateAfter;
+
+    /**
+     * Whether the transmission occupies a slot of the {@link AdmissionControl}.
+     */
+    private boolean admitted;
+
+    /**
+     * The timeout actually used (The fixed or adaptive timeout, {@code null} before transmitted or if there is none).
+     */
+    @Getter
+    private volatile Duration effectiveTimeout;
+
+    /**
+     * Whether the transmission completed with the responses received until an adaptive timeout elapsed,
+     * although more responses were expected.
+     */
+    private boolean partial;
+
+    // Anycast state
+    private volatile long transmittedAt;
+    private volatile Address target;
+    private volatile Address hedgeTarget;
+    private volatile long hedgedAt;
+
+    // Site state
+    private volatile long remoteSentAt;
+    private final Map<String, Integer> siteResponses;
+
+    // Internal accumulation of received packets & callback / consumer stuff.
+    private final BiConsumer<Object, ACollectablePacket> accumulator;
+    private final Function<Object, R> finisher;
+    private final Object container;
+    private int receivedResponses;
+    private final Set<Address> respondedMembers;
+    private final CompletableFuture<R> callback;
     private final Consumer<CompletableTimeoutException> timeoutConsumer;
     private final Consumer<Throwable> errorConsumer;
 
@@ -58,28 +178,57 @@ public class CompletableTransmission extends Transmission {
      * Creates a new CompletableTransmission with the given parameters.
      * It will also setup the {@code exception} channel of the callback to distinguish timeout and other errors.
      *
+     * @param networkManager
      * @param message
+     * @param packet
      * @param collectionId
      * @param minReplies
-     * @param timeout
+     * @param fanOutTransmissions
+     * @param limits
+     *          The timeout & admission options
+     * @param anycast
+     *          The anycast options ({@code null} if not sent as anycast)
+     * @param sites
+     *          The site options ({@code null} if not site aware)
+     * @param accumulation
      * @param callback
      * @param timeoutConsumer
      * @param errorConsumer
      */
     protected CompletableTransmission(
+            NetworkManager networkManager,
             Message message,
+            APacket packet,
             UUID collectionId,
             int minReplies,
-            Duration timeout,
-            CompletableFuture<List<ACollectablePacket>> callback,
+            List<Transmission> fanOutTransmissions,
+            LimitOptions limits,
+            AnycastOptions anycast,
+            SiteOptions sites,
+            Accumulation<R> accumulation,
+            CompletableFuture<R> callback,
             Consumer<CompletableTimeoutException> timeoutConsumer,
             Consumer<Throwable> errorConsumer
     ) {
-        super(message);
+        super(networkManager, message, packet);
         this.collectionId = collectionId;
         this.minReplies = minReplies;
-        this.timeout = timeout;
-        this.receivedResponsePackets = new ArrayList<>();
+        this.timeout = limits.timeout;
+        this.fanOutTransmissions = fanOutTransmissions;
+        this.fanOutCollectionIds = new ArrayList<>(fanOutTransmissions.size());
+        for (Transmission transmission : fanOutTransmissions)
+            this.fanOutCollectionIds.add(((ACollectablePacket) transmission.getPacket()).getCollectionId());
+        this.anycast = anycast != null;
+        this.hedgeAfter = anycast != null ? anycast.hedgeAfter : null;
+        this.adaptiveTimeout = limits.adaptiveTimeout;
+        this.admissionPolicy = limits.admissionPolicy;
+        this.siteThresholds = sites != null ? sites.thresholds : null;
+        this.escalateAfter = sites != null ? sites.escalateAfter : null;
+        this.siteResponses = new HashMap<>();
+        this.respondedMembers = new HashSet<>();
+        this.accumulator = accumulation.accumulator;
+        this.finisher = accumulation.finisher;
+        this.container = accumulation.supplier.get();
         this.callback = callback;
         this.timeoutConsumer = timeoutConsumer;
         this.errorConsumer = errorConsumer;
@@ -87,9 +236,12 @@ public class CompletableTransmission extends Transmission {
         // Sets timeout / err handling
         this.callback
                 .exceptionally((Throwable throwable) -> {
-                    if (throwable instanceof CompletableTimeoutException)
-                        this.timeoutConsumer.accept((CompletableTimeoutException) throwable);
-                    else
+                    // Consumers are optional
+                    if (throwable instanceof CompletableTimeoutException) {
+                        if (this.timeoutConsumer != null)
+                            this.timeoutConsumer.accept((CompletableTimeoutException) throwable);
+                    }
+                    else if (this.errorConsumer != null)
                         this.errorConsumer.accept(throwable);
                     return null;
                 });
@@ -99,23 +251,34 @@ public class CompletableTransmission extends Transmission {
     // ======================   BUSINESS LOGIC
 
     /**
-     * Adds a packet to the internal list.
+     * Folds a packet into the accumulation (By default: Adds it to the internal list).
      *
      * @param responsePacket
      *          The packet to add
      */
     @Synchronized
     public void addResponsePacket(ACollectablePacket responsePacket) {
-        this.receivedResponsePackets.add(responsePacket);
+        this.accumulator.accept(this.container, responsePacket);
+        this.receivedResponses += responsePacket.getAggregatedResponses();
+        if (responsePacket.getSender() != null)
+            this.respondedMembers.add(responsePacket.getSender());
+        if (this.siteThresholds != null)
+            this.siteResponses.merge(getNetworkManager().getSite(responsePacket.getSender()), responsePacket.getAggregatedResponses(), Integer::sum);
     }
 
     /**
-     * Calls the done consumer with the internal store of received response packets.
+     * Calls the done consumer with the accumulated result of the received response packets.
      */
     @Synchronized
     public void complete() {
+
+        // RET: Already completed
+        if (this.callback.isDone()) return;
+
+        recordUnansweredTarget();
         removeFromPendingList();
-        this.callback.complete(this.receivedResponsePackets);
+        cancelOutstanding();
+        this.callback.complete(this.finisher.apply(this.container));
     }
 
     /**
@@ -126,7 +289,13 @@ public class CompletableTransmission extends Transmission {
      */
     @Synchronized
     public void error(Throwable throwable) {
+
+        // RET: Already completed
+        if (this.callback.isDone()) return;
+
+        recordUnansweredTarget();
         removeFromPendingList();
+        cancelOutstanding();
         this.callback.completeExceptionally(throwable);
     }
 
@@ -136,22 +305,27 @@ public class CompletableTransmission extends Transmission {
      */
     @Synchronized
     public void cancel() {
+
+        // RET: Already completed
+        if (this.callback.isDone()) return;
+
         removeFromPendingList();
+        cancelOutstanding();
         this.callback.cancel(true);
     }
 
     /**
-     * Returns the list of collected response packets when completed.
+     * Returns the result (By default: The list of collected response packets) when completed.
      * <br><br><i>Note: Blocking operation! Handle with care!</i>
      *
      *
-     * @return The received response packets
+     * @return The accumulated result
      * @throws CompletableTimeoutException
      *          If the required amount response packets was not achieved before timeout
      * @throws CompletionException
      *          The raw exception from the {@link CompletableFuture#join()}
      */
-    public List<ACollectablePacket> join() throws CompletableTimeoutException, CompletionException {
+    public R join() throws CompletableTimeoutException, CompletionException {
         try {
             return this.callback.join();
         }
@@ -163,18 +337,48 @@ public class CompletableTransmission extends Transmission {
         }
     }
 
+    /**
+     * Sends the request once admitted by the {@link AdmissionControl}.
+     * <br><br><i>Note: If sending fails, the error consumer is called as well.</i>
+     *
+     * @throws com.endersuite.packify.exceptions.AdmissionRejectedException
+     *          If too many transmissions are in flight (Depending on the {@link AdmissionPolicy})
+     * @throws Exception
+     *          Any possible exceptions whilst transmitting
+     */
     @Override
     public void transmit() throws Exception {
 
-        // Store pending transmission & Start timeout task
-        getDefaultNetworkManager().getCollectableManager().getPendingTransmissions().put(collectionId, this);
-        if (this.timeout != null) {
-            getDefaultNetworkManager().getScheduler().schedule(() -> {
-                this.callback.completeExceptionally(new CompletableTimeoutException(this));
-            }, getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        // RET: Queued -> Sent by the admission control once a slot is free
+        if (!getNetworkManager().getCollectableManager().getAdmissionControl().acquire(this, this.admissionPolicy))
+            return;
+
+        send();
+    }
+
+    /**
+     * Sends the request after it was queued by the {@link AdmissionControl} and admitted.
+     */
+    void transmitAdmitted() {
+        try { send(); }
+        catch (Exception ignored) {
+            // Already passed to the error consumer
         }
+    }
 
-        super.transmit();
+    /**
+     * Returns when the request was sent to a member.
+     *
+     * @param member
+     *          The member
+     * @return The {@link System#nanoTime()} at which the request was sent
+     */
+    public long getSentAt(Address member) {
+        if (member.equals(this.hedgeTarget))
+            return this.hedgedAt;
+        if (this.remoteSentAt != 0 && !getNetworkManager().isLocalSite(getNetworkManager().getSite(member)))
+            return this.remoteSentAt;
+        return this.transmittedAt;
     }
 
 
@@ -188,17 +392,378 @@ public class CompletableTransmission extends Transmission {
     @Synchronized
     public boolean isCompletable() {
 
+        // RET: Site thresholds replace the minimum replies
+        if (this.siteThresholds != null)
+            return getUnsatisfiedSites().isEmpty();
+
         // Normalize replies in case cluster changed from transmission build to now
+        // (Unless other sites may respond, whose members we do not know)
         int minReplies = this.minReplies;
-        if (minReplies > getDefaultNetworkManager().getNodeCount())
-            minReplies = getDefaultNetworkManager().getNodeCount();
+        if (minReplies > getNetworkManager().getNodeCount() && !mayCrossSites())
+            minReplies = getNetworkManager().getNodeCount();
+
+        return this.receivedResponses >= minReplies;
+    }
+
+    /**
+     * Returns the sites whose threshold is not reached yet.
+     *
+     * @return The sites (Empty if there are no site thresholds)
+     */
+    @Synchronized
+    public List<String> getUnsatisfiedSites() {
+        List<String> sites = new ArrayList<>();
+        if (this.siteThresholds != null) {
+            for (Map.Entry<String, Integer> threshold : this.siteThresholds.entrySet()) {
+                if (this.siteResponses.getOrDefault(threshold.getKey(), 0) < threshold.getValue())
+                    sites.add(threshold.getKey());
+            }
+        }
+        return sites;
+    }
 
-        return this.receivedResponsePackets.size() >= minReplies;
+    /**
+     * Returns whether the transmission completed with fewer responses than expected because the adaptive timeout
+     * elapsed (See {@link AdaptiveTimeout#isPartial()}).
+     *
+     * @return {@code true} if the result is partial
+     */
+    @Synchronized
+    public boolean isPartial() {
+        return this.partial;
     }
 
+    /**
+     * Returns the amount of responses received so far (Including the ones merged into aggregated responses).
+     *
+     * @return The amount of received responses
+     */
+    @Synchronized
+    public int getReceivedResponses() {
+        return this.receivedResponses;
+    }
+
+    /**
+     * Registers the transmission as pending, starts the timeout & sends the request(s).
+     * If sending fails, the transmission errors.
+     *
+     * @throws Exception
+     *          Any possible exceptions whilst transmitting
+     */
+    private void send() throws Exception {
+
+        // RET: Completed (e.g. cancelled) before it was sent
+        if (!register()) return;
+
+        try {
+            if (this.anycast) {
+                this.target = getNetworkManager().getResponseStatistics().select(getCandidates(null));
+
+                // THROW: No member to send to (A null destination would broadcast the request)
+                if (this.target == null)
+                    throw new IllegalStateException("No member available for anycast " + getPacket() + "!");
+
+                getMessage().setDest(this.target);
+            }
+
+            this.effectiveTimeout = this.adaptiveTimeout != null
+                    ? this.adaptiveTimeout.compute(getNetworkManager().getResponseStatistics(), getPacket().getClass(), getExpectedMembers())
+                    : this.timeout;
+            if (this.effectiveTimeout != null)
+                getNetworkManager().getScheduler().schedule(() -> getNetworkManager().runAsHandler(this::expire),
+                        this.effectiveTimeout.toNanos(), TimeUnit.NANOSECONDS);
+
+            // Propagate the deadline
+            long deadline = this.effectiveTimeout != null ? System.nanoTime() + this.effectiveTimeout.toNanos() : 0;
+            applyDeadline(this, deadline);
+            for (Transmission transmission : this.fanOutTransmissions)
+                applyDeadline(transmission, deadline);
+
+            this.transmittedAt = System.nanoTime();
+            if (this.siteThresholds != null && this.escalateAfter == null)
+                sendToSites(this.siteThresholds.keySet());
+            else
+                super.transmit();
+            for (Transmission transmission : this.fanOutTransmissions)
+                transmission.transmit();
+        }
+        catch (Exception e) {
+            error(e);
+            throw e;
+        }
+
+        if (this.escalateAfter != null)
+            getNetworkManager().getScheduler().schedule(this::escalate, this.escalateAfter.toNanos(), TimeUnit.NANOSECONDS);
+
+        if (this.hedgeAfter != null && this.target != null)
+            getNetworkManager().getScheduler().schedule(this::hedge, getHedgeDelay().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes the admitted slot & stores the transmission as pending.
+     *
+     * @return {@code false} if the transmission already completed (Its slot is freed right away)
+     */
+    @Synchronized
+    private boolean register() {
+        this.admitted = true;
+
+        // RET: Cancelled whilst waiting for admission
+        if (this.callback.isDone()) {
+            removeFromPendingList();
+            return false;
+        }
+
+        getNetworkManager().getCollectableManager().getPendingTransmissions().put(this.collectionId, this);
+        for (UUID fanOutCollectionId : this.fanOutCollectionIds)
+            getNetworkManager().getCollectableManager().getPendingTransmissions().put(fanOutCollectionId, this);
+        return true;
+    }
+
+    /**
+     * Removes the transmission from the pending list and frees its slot of the {@link AdmissionControl}
+     * (Or removes it from the admission queue).
+     */
     @Synchronized
     private void removeFromPendingList() {
-        getDefaultNetworkManager().getCollectableManager().getPendingTransmissions().remove(this.collectionId);
+        getNetworkManager().getCollectableManager().getPendingTransmissions().remove(this.collectionId);
+        getNetworkManager().getCollectableManager().markCompleted(this.collectionId);
+        for (UUID fanOutCollectionId : this.fanOutCollectionIds) {
+            getNetworkManager().getCollectableManager().getPendingTransmissions().remove(fanOutCollectionId);
+            getNetworkManager().getCollectableManager().markCompleted(fanOutCollectionId);
+        }
+
+        AdmissionControl admissionControl = getNetworkManager().getCollectableManager().getAdmissionControl();
+        if (this.admitted) {
+            this.admitted = false;
+            admissionControl.release(this);
+        }
+        else
+            admissionControl.remove(this);
+    }
+
+    /**
+     * Tells the members that did not respond yet to skip the request.
+     */
+    private void cancelOutstanding() {
+
+        // RET: Never sent
+        if (this.transmittedAt == 0) return;
+
+        List<Address> outstanding = getExpectedMembers();
+        if (((ACollectablePacket) getPacket()).getAggregationTree() != null) {
+
+            // RET: Aggregated responses do not tell which members are missing
+            if (this.receivedResponses >= outstanding.size()) return;
+        }
+        else
+            outstanding.removeAll(this.respondedMembers);
+
+        // RET: Everyone responded (The members of other sites are unknown -> Always tell them)
+        boolean remote = this.remoteSentAt != 0;
+        if (outstanding.isEmpty() && !remote) return;
+
+        List<UUID> collectionIds = new ArrayList<>(this.fanOutCollectionIds);
+        collectionIds.add(this.collectionId);
+        Transmission.newBuilder(getNetworkManager(), new CancelCollectionPacket(collectionIds))
+                .to(outstanding.size() == 1 && !remote ? outstanding.get(0) : null)
+                .build()
+                .sneakyTransmit();
+    }
+
+    /**
+     * Broadcasts the request in each of the sites (See {@link NetworkManager#sendToSite(String, Message, APacket)}).
+     *
+     * @param sites
+     *          The sites
+     * @throws Exception
+     *          Any possible exceptions whilst transmitting
+     */
+    private void sendToSites(Collection<String> sites) throws Exception {
+        for (String site : sites) {
+            if (!getNetworkManager().isLocalSite(site) && this.remoteSentAt == 0)
+                this.remoteSentAt = System.nanoTime();
+            getNetworkManager().sendToSite(site, getMessage(), getPacket());
+        }
+    }
+
+    /**
+     * Called when the local site did not complete the request in time: Sends it to the other sites
+     * (Or the sites whose threshold is not reached yet).
+     */
+    @Synchronized
+    private void escalate() {
+
+        // RET: Answered by our site
+        if (this.callback.isDone() || isCompletable()) return;
+
+        List<String> sites = this.siteThresholds != null ? getUnsatisfiedSites() : new ArrayList<>(getNetworkManager().getSites());
+        sites.removeIf(getNetworkManager()::isLocalSite);
+
+        // RET: No other site to ask
+        if (sites.isEmpty()) return;
+
+        new StrFmt("{prefix} Escalating %s to sites %s after %dms", getPacket(), sites, this.escalateAfter.toMillis())
+                .setLevel(Level.DEBUG).toLog();
+        try {
+            sendToSites(sites);
+        } catch (Exception e) {
+            new StrFmt("{prefix} Could not escalate request " + getPacket() + "!", e).setLevel(Level.WARN).toLog();
+        }
+    }
+
+    /**
+     * Returns whether members of other sites may respond to the request.
+     *
+     * @return {@code true} if the request is (or may be) sent to other sites
+     */
+    private boolean mayCrossSites() {
+        return getNetworkManager().getRelay() != null
+                && (this.escalateAfter != null || !getMessage().isFlagSet(Message.Flag.NO_RELAY));
+    }
+
+    /**
+     * Sets the deadline of the request carried by a transmission.
+     *
+     * @param transmission
+     *          The transmission
+     * @param deadline
+     *          The deadline as {@link System#nanoTime()} ({@code 0} for none)
+     */
+    private static void applyDeadline(Transmission transmission, long deadline) {
+        ((ACollectablePacket) transmission.getPacket()).setDeadline(deadline);
+
+        // Payload already serialized -> Update it
+        if (transmission.getMessage().getRawBuffer() != null)
+            transmission.getMessage().setObject(transmission.getPacket());
+    }
+
+    /**
+     * Called when the timeout elapsed: Completes with the partial result if allowed, otherwise times out.
+     */
+    @Synchronized
+    private void expire() {
+
+        // RET: Already completed
+        if (this.callback.isDone()) return;
+
+        if (this.adaptiveTimeout != null) {
+
+            // Responses of stragglers are dropped after completion -> Record the time waited as a lower bound,
+            // otherwise the statistics only contain the fast responses and the timeout keeps shrinking
+            // (Aggregated responses do not tell which members are missing, a hedged target is recorded on completion)
+            long waited = System.nanoTime() - this.transmittedAt;
+            for (Address member : getExpectedMembers()) {
+                if (!this.respondedMembers.contains(member) && ((ACollectablePacket) getPacket()).getAggregationTree() == null
+                        && !(this.hedgeTarget != null && member.equals(this.target)))
+                    getNetworkManager().getResponseStatistics().recordLatency(member, getPacket().getClass(), waited);
+            }
+
+            // RET: Complete with what we have
+            if (this.adaptiveTimeout.isPartial() && this.receivedResponses > 0) {
+                new StrFmt("{prefix} Completing %s partially with %d/%d responses after %dms", getPacket(),
+                        this.receivedResponses, this.minReplies, this.effectiveTimeout.toMillis()).setLevel(Level.DEBUG).toLog();
+                this.partial = true;
+                complete();
+                return;
+            }
+        }
+
+        error(new CompletableTimeoutException(this));
+    }
+
+    /**
+     * Sends the request to a second member if the selected one did not respond yet.
+     */
+    private void hedge() {
+
+        // RET: Already answered
+        if (this.callback.isDone()) return;
+
+        Address hedgeTarget = getNetworkManager().getResponseStatistics().select(getCandidates(this.target));
+
+        // RET: No other member available
+        if (hedgeTarget == null) return;
+
+        new StrFmt("{prefix} Hedging %s: %s did not respond, also sending to %s", getPacket(), this.target, hedgeTarget)
+                .setLevel(Level.DEBUG).toLog();
+
+        Message hedgeMessage = getMessage().copy(true);
+        hedgeMessage.setDest(hedgeTarget);
+        this.hedgeTarget = hedgeTarget;
+        this.hedgedAt = System.nanoTime();
+        try {
+            getNetworkManager().send(hedgeMessage, getPacket());
+        } catch (Exception e) {
+            new StrFmt("{prefix} Could not send hedged request " + getPacket() + "!", e).setLevel(Level.WARN).toLog();
+        }
+    }
+
+    /**
+     * Records the time waited for the target of a hedged request as a lower bound of its latency, if it did not answer.
+     * Its response is dropped after completion, so otherwise a member that never answers in time never gets slower
+     * (If it answered, its actual latency was recorded already).
+     */
+    private void recordUnansweredTarget() {
+        if (this.hedgeTarget != null && !this.respondedMembers.contains(this.target))
+            getNetworkManager().getResponseStatistics().recordLatency(this.target, getPacket().getClass(), System.nanoTime() - this.transmittedAt);
+    }
+
+    /**
+     * Returns the delay after which the request is hedged: The 95th percentile of the target's response times
+     * or the configured fallback if there are too few samples.
+     *
+     * @return The delay
+     */
+    private Duration getHedgeDelay() {
+        LatencyHistogram latency = getNetworkManager().getResponseStatistics().getMember(this.target).getLatency();
+        if (latency.getCount() < MIN_HEDGE_SAMPLES)
+            return this.hedgeAfter;
+        return Duration.ofNanos(latency.getPercentile(0.95));
+    }
+
+    /**
+     * Returns the members that are expected to respond.
+     *
+     * @return The members
+     */
+    private List<Address> getExpectedMembers() {
+
+        // RET: Unicast (Or anycast which might have been hedged)
+        if (getMessage().getDest() != null && this.fanOutTransmissions.isEmpty()) {
+            List<Address> members = new ArrayList<>(2);
+            members.add(getMessage().getDest());
+            if (this.hedgeTarget != null)
+                members.add(this.hedgeTarget);
+            return members;
+        }
+
+        // RET: Keyed requests
+        if (!this.fanOutTransmissions.isEmpty()) {
+            List<Address> members = new ArrayList<>();
+            members.add(getMessage().getDest());
+            for (Transmission transmission : this.fanOutTransmissions)
+                members.add(transmission.getMessage().getDest());
+            return members;
+        }
+
+        return getCandidates(null);
+    }
+
+    /**
+     * Returns the members an anycast request can be sent to.
+     *
+     * @param exclude
+     *          A member to exclude (May be {@code null})
+     * @return The candidates
+     */
+    private List<Address> getCandidates(Address exclude) {
+        List<Address> candidates = new ArrayList<>(getNetworkManager().getJChannel().getView().getMembers());
+        if (exclude != null)
+            candidates.remove(exclude);
+        if (getMessage().isTransientFlagSet(Message.TransientFlag.DONT_LOOPBACK))
+            candidates.remove(getNetworkManager().getJChannel().getAddress());
+        return candidates;
     }
 
 
@@ -206,31 +771,71 @@ public class CompletableTransmission extends Transmission {
 
     /**
      * A builder that abstracts the utility methods to construct a {@link CompletableTransmission}.
+     *
+     * @param <R>
+     *          The result type of the transmission
      */
-    public static class CompletableTransmissionBuilder {
+    public static class CompletableTransmissionBuilder<R> {
 
         // ======================   VARS
 
         // Builder state
+        private final NetworkManager networkManager;
         private final Message message;
+        private final ACollectablePacket packet;
         private final UUID collectionId;
         private final int minReplies;
         private Duration timeout;
-        private final CompletableFuture<List<ACollectablePacket>> callback;
+        private List<Transmission> fanOutTransmissions;
+        private int aggregationFanOut;
+        private Duration aggregationFlushAfter;
+        private boolean anycast;
+        private Duration hedgeAfter;
+        private AdaptiveTimeout adaptiveTimeout;
+        private AdmissionPolicy admissionPolicy;
+        private Map<String, Integer> siteThresholds;
+        private Duration escalateAfter;
+        private final Accumulation<R> accumulation;
+        private final List<Consumer<? super R>> doneConsumers;
         private Consumer<CompletableTimeoutException> timeoutConsumer;
         private Consumer<Throwable> errorConsumer;
 
 
         // ======================   CONSTRUCTOR
 
-        protected CompletableTransmissionBuilder(Message message, int minReplies) {
-            this.message = message;
+        protected CompletableTransmissionBuilder(NetworkManager networkManager, Message message, APacket packet, int minReplies, Collector<ACollectablePacket, ?, R> collector) {
+            this(networkManager, message, packet, minReplies, Accumulation.of(collector));
+        }
 
-            ACollectablePacket collectablePacket = message.getObject();
-            this.collectionId = collectablePacket.getCollectionId();
+        private CompletableTransmissionBuilder(NetworkManager networkManager, Message message, APacket packet, int minReplies, Accumulation<R> accumulation) {
+            this.networkManager = networkManager;
+            this.message = message;
+            this.packet = packet != null ? (ACollectablePacket) packet : message.getObject();
+            this.collectionId = this.packet.getCollectionId();
             this.minReplies = minReplies;
             this.timeout = Duration.ofMinutes(15);
-            this.callback = new CompletableFuture<>();
+            this.accumulation = accumulation;
+            this.fanOutTransmissions = Collections.emptyList();
+            this.doneConsumers = new ArrayList<>();
+        }
+
+        /**
+         * Creates a builder with the configuration of another one but a different accumulation.
+         */
+        private CompletableTransmissionBuilder(CompletableTransmissionBuilder<?> other, Accumulation<R> accumulation) {
+            this(other.networkManager, other.message, other.packet, other.minReplies, accumulation);
+            this.timeout = other.timeout;
+            this.fanOutTransmissions = other.fanOutTransmissions;
+            this.aggregationFanOut = other.aggregationFanOut;
+            this.aggregationFlushAfter = other.aggregationFlushAfter;
+            this.anycast = other.anycast;
+            this.hedgeAfter = other.hedgeAfter;
+            this.adaptiveTimeout = other.adaptiveTimeout;
+            this.admissionPolicy = other.admissionPolicy;
+            this.siteThresholds = other.siteThresholds;
+            this.escalateAfter = other.escalateAfter;
+            this.timeoutConsumer = other.timeoutConsumer;
+            this.errorConsumer = other.errorConsumer;
         }
 
 
@@ -243,11 +848,228 @@ public class CompletableTransmission extends Transmission {
          *          The duration
          * @return
          */
-        public CompletableTransmissionBuilder timeout(Duration duration) {
+        public CompletableTransmissionBuilder<R> timeout(Duration duration) {
             this.timeout = duration;
             return this;
         }
 
+        /**
+         * Overrides the default policy of the {@link AdmissionControl} for the case that too many transmissions are in flight.
+         *
+         * @param policy
+         *          The policy
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> admission(AdmissionPolicy policy) {
+            this.admissionPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Overrides the delivery policy declared by the request class (See {@link com.endersuite.packify.packets.Delivery}).
+         *
+         * @param policy
+         *          The policy to send the request(s) with
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> delivery(DeliveryPolicy policy) {
+            policy.apply(this.message);
+            this.fanOutTransmissions.forEach(transmission -> policy.apply(transmission.getMessage()));
+            return this;
+        }
+
+        /**
+         * Derives the timeout from the response times observed for the request class and the expected responders
+         * instead of using a fixed duration. Uses the default configuration: p99 × 3, between 50ms and 30s,
+         * completing with the responses received so far once the stragglers are overdue.
+         *
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> adaptiveTimeout() {
+            return adaptiveTimeout(AdaptiveTimeout.defaults());
+        }
+
+        /**
+         * Derives the timeout from the response times observed for the request class and the expected responders
+         * instead of using a fixed duration (Overrides {@link CompletableTransmissionBuilder#timeout(Duration)}).
+         *
+         * @param adaptiveTimeout
+         *          The configuration
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> adaptiveTimeout(AdaptiveTimeout adaptiveTimeout) {
+            this.adaptiveTimeout = adaptiveTimeout;
+            return this;
+        }
+
+        /**
+         * Aggregates the responses along a tree of the current cluster members instead of letting every member
+         * reply directly. Each node merges the responses of its subtree, so the requester only receives
+         * up to {@code fanOut} packets. Intermediate nodes flush partial results after half of the timeout.
+         * <br><br><i>Note: The response packets must implement {@link com.endersuite.packify.packets.Combinable},
+         * otherwise they are sent to the requester directly!</i>
+         *
+         * @param fanOut
+         *          The maximum amount of children per node
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> aggregate(int fanOut) {
+            return aggregate(fanOut, null);
+        }
+
+        /**
+         * Aggregates the responses along a tree of the current cluster members.
+         * See {@link CompletableTransmissionBuilder#aggregate(int)}.
+         *
+         * @param fanOut
+         *          The maximum amount of children per node
+         * @param flushAfter
+         *          The time after which the deepest nodes send their partial aggregate (Nodes closer to the requester wait longer)
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> aggregate(int fanOut, Duration flushAfter) {
+
+            // THROW: Invalid fan out
+            if (fanOut < 1)
+                throw new IllegalArgumentException("fanOut must be positive!");
+
+            // THROW: Keyed requests & anycasts are unicasts
+            if (!this.fanOutTransmissions.isEmpty() || this.anycast)
+                throw new IllegalStateException("Keyed requests & anycasts can not be aggregated!");
+
+            // THROW: The tree only contains the members of our site
+            if (this.siteThresholds != null || this.escalateAfter != null)
+                throw new IllegalStateException("Site aware requests can not be aggregated!");
+
+            this.aggregationFanOut = fanOut;
+            this.aggregationFlushAfter = flushAfter;
+            return this;
+        }
+
+        /**
+         * Broadcasts the request in the local site only and sends it to the other sites if it did not complete
+         * within the delay. This way queries the local site can answer never cross the link between the sites.
+         * <br><br><i>Note: With site thresholds, only the sites whose threshold is not reached yet are asked.</i>
+         *
+         * @param escalateAfter
+         *          The delay after which the other sites are asked
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> localFirst(Duration escalateAfter) {
+            checkSiteAware();
+            this.escalateAfter = escalateAfter;
+            this.message.setDest(null);
+            this.message.setFlag(Message.Flag.NO_RELAY);
+            return this;
+        }
+
+        /**
+         * Requires a minimum amount of responses from the members of a site. If thresholds are set, the transmission
+         * completes once all of them are reached (Instead of the configured minimum replies) and the request is
+         * broadcast in the sites with a threshold only (Unless {@link CompletableTransmissionBuilder#localFirst(Duration)}).
+         *
+         * @param site
+         *          The site (See {@link NetworkManager#getSites()})
+         * @param minReplies
+         *          The minimum amount of responses from the site
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> siteThreshold(String site, int minReplies) {
+            checkSiteAware();
+
+            // THROW: Invalid threshold
+            if (minReplies < 1)
+                throw new IllegalArgumentException("minReplies must be positive!");
+
+            if (this.siteThresholds == null)
+                this.siteThresholds = new LinkedHashMap<>();
+            this.siteThresholds.put(site, minReplies);
+            return this;
+        }
+
+        /**
+         * Sends the request to a single member instead of the configured destination. The member is selected by the
+         * latency & load reported in previous responses (Comparing two random members and picking the better one,
+         * so that not every node sends to the same member).
+         * <br><br><i>Note: Only possible for {@code collectOne()}!</i>
+         *
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> anycast() {
+
+            // THROW: Anycasts receive exactly one response
+            if (this.minReplies != 1 || !this.fanOutTransmissions.isEmpty() || this.aggregationFanOut > 0)
+                throw new IllegalStateException("Only collectOne() requests can be sent as anycast!");
+
+            // THROW: Anycasts are sent to a member of our site
+            if (this.siteThresholds != null || this.escalateAfter != null)
+                throw new IllegalStateException("Site aware requests can not be sent as anycast!");
+
+            this.anycast = true;
+            return this;
+        }
+
+        /**
+         * Sends the request as anycast and hedges it: If the selected member did not respond within its 95th percentile
+         * response time (or 100ms while there are too few samples), the request is also sent to a second member.
+         * <br><br><i>Note: Only use this for idempotent requests, as both members may handle the request!</i>
+         *
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> hedge() {
+            return hedge(Duration.ofMillis(100));
+        }
+
+        /**
+         * Sends the request as anycast and hedges it. See {@link CompletableTransmissionBuilder#hedge()}.
+         *
+         * @param fallbackDelay
+         *          The delay used while there are too few samples about the selected member
+         * @return
+         */
+        public CompletableTransmissionBuilder<R> hedge(Duration fallbackDelay) {
+            anycast();
+            this.hedgeAfter = fallbackDelay;
+            return this;
+        }
+
+        /**
+         * Folds each response packet into an accumulated value as soon as it arrives instead of storing it.
+         * The result of the transmission becomes the final accumulated value.
+         * <br><br><i>Note: Must be called before {@code onDone()}!</i>
+         *
+         * @param identity
+         *          The initial value
+         * @param accumulator
+         *          Combines the current value with a received packet into the new value
+         * @param <U>
+         *          The type of the accumulated value
+         * @return A builder for the new result type
+         * @throws IllegalStateException
+         *          If done consumers were already registered
+         */
+        public <U> CompletableTransmissionBuilder<U> reduce(U identity, BiFunction<U, ? super ACollectablePacket, U> accumulator) {
+            return accumulate(Accumulation.reduce(identity, accumulator));
+        }
+
+        /**
+         * Accumulates the response packets using a {@link Collector} as soon as they arrive instead of storing them.
+         * The result of the transmission becomes the finished result of the collector.
+         * <br><br><i>Note: Must be called before {@code onDone()}! The combiner of the collector is never used.</i>
+         *
+         * @param collector
+         *          The collector (e.g. {@code Collectors.counting()})
+         * @param <T>
+         *          The result type of the collector
+         * @return A builder for the new result type
+         * @throws IllegalStateException
+         *          If done consumers were already registered
+         */
+        @SuppressWarnings("unchecked")
+        public <T> CompletableTransmissionBuilder<T> collect(Collector<? super ACollectablePacket, ?, T> collector) {
+            return accumulate(Accumulation.of((Collector<ACollectablePacket, ?, T>) collector));
+        }
+
         /**
          * Specified the consumer that will be called after all required response packets
          * (as specified by {@code collectAll()} / {@code collectMultiple()} / {@code collectOne()}) have been received.
@@ -256,8 +1078,8 @@ public class CompletableTransmission extends Transmission {
          *          The consumer to use.
          * @return
          */
-        public CompletableTransmissionBuilder onDone(Consumer<List<ACollectablePacket>> consumer) {
-            this.callback.thenAccept(consumer);
+        public CompletableTransmissionBuilder<R> onDone(Consumer<? super R> consumer) {
+            this.doneConsumers.add(consumer);
             return this;
         }
 
@@ -268,7 +1090,7 @@ public class CompletableTransmission extends Transmission {
          *          The consumer to use
          * @return
          */
-        public CompletableTransmissionBuilder onTimeout(Consumer<CompletableTimeoutException> consumer) {
+        public CompletableTransmissionBuilder<R> onTimeout(Consumer<CompletableTimeoutException> consumer) {
             this.timeoutConsumer = consumer;
             return this;
         }
@@ -280,28 +1102,186 @@ public class CompletableTransmission extends Transmission {
          *          The consumer to use
          * @return
          */
-        public CompletableTransmissionBuilder onError(Consumer<Throwable> consumer) {
+        public CompletableTransmissionBuilder<R> onError(Consumer<Throwable> consumer) {
             this.errorConsumer = consumer;
             return this;
         }
 
+        /**
+         * Adds further requests of the same collection whose responses are collected by the transmission.
+         *
+         * @param transmissions
+         *          The requests (Their packets must be {@link ACollectablePacket}s)
+         * @return
+         */
+        CompletableTransmissionBuilder<R> fanOut(List<Transmission> transmissions) {
+            this.fanOutTransmissions = transmissions;
+            return this;
+        }
+
         /**
          * Builds a CollectableTransmission object based on the previous configuration.
          *
          * @return
          */
-        public CompletableTransmission build() {
-            return new CompletableTransmission(
+        public CompletableTransmission<R> build() {
+            if (this.aggregationFanOut > 0) {
+                NetworkManager networkManager = this.networkManager != null ? this.networkManager : getDefaultNetworkManager();
+                Duration timeout = this.adaptiveTimeout != null
+                        ? this.adaptiveTimeout.compute(networkManager.getResponseStatistics(), this.packet.getClass(), networkManager.getJChannel().getView().getMembers())
+                        : this.timeout;
+                Duration flushAfter = this.aggregationFlushAfter != null
+                        ? this.aggregationFlushAfter
+                        : (timeout != null ? timeout : Duration.ofMinutes(15)).dividedBy(2);
+                this.packet.setAggregationTree(AggregationTree.of(
+                        networkManager.getJChannel().getView(), networkManager.getJChannel().getAddress(), this.aggregationFanOut, flushAfter));
+
+                // Payload already serialized -> Update it
+                if (this.message.getRawBuffer() != null)
+                    this.message.setObject(this.packet);
+            }
+
+            CompletableFuture<R> callback = new CompletableFuture<>();
+            this.doneConsumers.forEach(callback::thenAccept);
+
+            return new CompletableTransmission<>(
+                this.networkManager,
                 this.message,
+                this.packet,
                 this.collectionId,
                 this.minReplies,
-                this.timeout,
-                this.callback,
+                this.fanOutTransmissions,
+                new LimitOptions(this.timeout, this.adaptiveTimeout, this.admissionPolicy),
+                this.anycast ? new AnycastOptions(this.hedgeAfter) : null,
+                this.siteThresholds != null || this.escalateAfter != null
+                        ? new SiteOptions(this.siteThresholds != null ? Collections.unmodifiableMap(new LinkedHashMap<>(this.siteThresholds)) : null, this.escalateAfter)
+                        : null,
+                this.accumulation,
+                callback,
                 this.timeoutConsumer,
                 this.errorConsumer
             );
         }
 
+
+        // ======================   HELPERS
+
+        /**
+         * Creates a builder with the configuration of this one but a different accumulation.
+         *
+         * @throws IllegalStateException
+         *          If done consumers were already registered
+         */
+        private <T> CompletableTransmissionBuilder<T> accumulate(Accumulation<T> accumulation) {
+
+            // THROW: Done consumers were registered for the old result type
+            if (!this.doneConsumers.isEmpty())
+                throw new IllegalStateException("reduce() / collect() must be called before onDone()!");
+
+            return new CompletableTransmissionBuilder<>(this, accumulation);
+        }
+
+        private void checkSiteAware() {
+
+            // THROW: Unicasts & trees are limited to our site
+            if (!this.fanOutTransmissions.isEmpty() || this.anycast || this.aggregationFanOut > 0)
+                throw new IllegalStateException("Keyed, anycast & aggregated requests can not be site aware!");
+        }
+
+    }
+
+
+    // ======================   OPTIONS
+
+    /**
+     * How the response packets are folded into the result: A container is created once, every response is
+     * accumulated into it and the finisher turns it into the result.
+     *
+     * @param <R>
+     *          The result type
+     */
+    static final class Accumulation<R> {
+
+        private final Supplier<Object> supplier;
+        private final BiConsumer<Object, ACollectablePacket> accumulator;
+        private final Function<Object, R> finisher;
+
+        private Accumulation(Supplier<Object> supplier, BiConsumer<Object, ACollectablePacket> accumulator, Function<Object, R> finisher) {
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.finisher = finisher;
+        }
+
+        /**
+         * Uses the supplier, accumulator & finisher of a collector (Its combiner is never needed).
+         */
+        @SuppressWarnings("unchecked")
+        static <R> Accumulation<R> of(Collector<ACollectablePacket, ?, R> collector) {
+            Collector<ACollectablePacket, Object, R> accumulation = (Collector<ACollectablePacket, Object, R>) collector;
+            return new Accumulation<>(accumulation.supplier(), accumulation.accumulator(), accumulation.finisher());
+        }
+
+        /**
+         * Folds the responses into a single value, starting with the identity.
+         */
+        static <U> Accumulation<U> reduce(U identity, BiFunction<U, ? super ACollectablePacket, U> accumulator) {
+            return new Accumulation<>(
+                    () -> new Object[] { identity },
+                    (box, packet) -> ((Object[]) box)[0] = accumulator.apply(unbox(box), packet),
+                    Accumulation::unbox
+            );
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <U> U unbox(Object box) {
+            return (U) ((Object[]) box)[0];
+        }
+
+    }
+
+    /**
+     * How long a transmission may take and what happens if too many are in flight.
+     */
+    static final class LimitOptions {
+
+        private final Duration timeout;
+        private final AdaptiveTimeout adaptiveTimeout;
+        private final AdmissionPolicy admissionPolicy;
+
+        LimitOptions(Duration timeout, AdaptiveTimeout adaptiveTimeout, AdmissionPolicy admissionPolicy) {
+            this.timeout = timeout;
+            this.adaptiveTimeout = adaptiveTimeout;
+            this.admissionPolicy = admissionPolicy;
+        }
+
+    }
+
+    /**
+     * The options of a transmission sent to a single, load aware selected member.
+     */
+    static final class AnycastOptions {
+
+        private final Duration hedgeAfter;
+
+        AnycastOptions(Duration hedgeAfter) {
+            this.hedgeAfter = hedgeAfter;
+        }
+
+    }
+
+    /**
+     * The options of a site aware transmission.
+     */
+    static final class SiteOptions {
+
+        private final Map<String, Integer> thresholds;
+        private final Duration escalateAfter;
+
+        SiteOptions(Map<String, Integer> thresholds, Duration escalateAfter) {
+            this.thresholds = thresholds;
+            this.escalateAfter = escalateAfter;
+        }
+
     }
 
 }
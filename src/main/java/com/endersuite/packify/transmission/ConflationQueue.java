@@ -0,0 +1,187 @@
+package com.endersuite.packify.transmission;
+
+import com.endersuite.libcore.strfmt.Level;
+import com.endersuite.libcore.strfmt.StrFmt;
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.packets.Conflatable;
+import lombok.Getter;
+import org.jgroups.Address;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends transmissions of {@link Conflatable} packets on a dedicated thread. Until a queued transmission is sent,
+ * a newer transmission with the same packet class, conflation key & destination replaces it in place (Keeping its
+ * position in the queue). While the channel keeps up, every update is sent right away. Once sending blocks
+ * (e.g. on flow control), only the newest update per key is sent, which caps the bandwidth & the work of the receivers.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class ConflationQueue {
+
+    // ======================   VARS
+
+    @Getter
+    private final NetworkManager networkManager;
+
+    /**
+     * The newest queued transmission per key.
+     */
+    private final Map<Key, Transmission> pending;
+
+    /**
+     * The keys in the order they were first queued.
+     */
+    private final Queue<Key> order;
+
+    private final AtomicBoolean draining;
+    private final ExecutorService executor;
+
+    // Metrics
+    @Getter
+    private final LongAdder offered;
+    @Getter
+    private final LongAdder conflated;
+    @Getter
+    private final LongAdder sent;
+
+
+    // ======================   CONSTRUCTOR
+
+    public ConflationQueue(NetworkManager networkManager) {
+        this.networkManager = networkManager;
+        this.pending = new ConcurrentHashMap<>();
+        this.order = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "packify-conflation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.offered = new LongAdder();
+        this.conflated = new LongAdder();
+        this.sent = new LongAdder();
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Queues a transmission, replacing a queued one with the same key.
+     *
+     * @param transmission
+     *          The transmission (Must carry a {@link Conflatable} packet)
+     */
+    public void offer(Transmission transmission) {
+        Key key = new Key(transmission.getMessage().getDest(), transmission.getSite(), (Conflatable) transmission.getPacket());
+        this.offered.increment();
+
+        if (this.pending.put(key, transmission) != null)
+            this.conflated.increment();
+        else
+            this.order.add(key);
+
+        drain();
+    }
+
+    /**
+     * Returns the amount of queued transmissions.
+     *
+     * @return The amount
+     */
+    public int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Stops the sending thread. Queued transmissions are dropped.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+        this.pending.clear();
+        this.order.clear();
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Starts draining the queue on the sending thread (If not already draining).
+     */
+    private void drain() {
+        if (this.draining.compareAndSet(false, true))
+            this.executor.execute(this::drainQueue);
+    }
+
+    private void drainQueue() {
+        try {
+            Key key;
+            while ((key = this.order.poll()) != null) {
+                Transmission transmission = this.pending.remove(key);
+                if (transmission == null) continue;
+
+                try {
+                    transmission.sendNow();
+                    this.sent.increment();
+                } catch (Exception e) {
+                    new StrFmt("{prefix} Could not send conflated " + transmission.getPacket() + "!", e)
+                            .setLevel(Level.WARN).toLog();
+                }
+            }
+        } finally {
+            this.draining.set(false);
+        }
+
+        // Queued whilst finishing
+        if (!this.order.isEmpty())
+            drain();
+    }
+
+
+    // ======================   KEY
+
+    /**
+     * Identifies the transmissions replacing each other.
+     */
+    private static final class Key {
+
+        private final Address destination;
+        private final String site;
+        private final Class<?> packetClass;
+        private final Object conflationKey;
+
+        private Key(Address destination, String site, Conflatable packet) {
+            this.destination = destination;
+            this.site = site;
+            this.packetClass = packet.getClass();
+            this.conflationKey = packet.getConflationKey();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return this.packetClass == other.packetClass
+                    && Objects.equals(this.destination, other.destination)
+                    && Objects.equals(this.site, other.site)
+                    && Objects.equals(this.conflationKey, other.conflationKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.destination, this.site, this.packetClass, this.conflationKey);
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.endersuite.packify.transmission;
+
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.packets.Delivery;
+import lombok.Getter;
+import org.jgroups.Message;
+
+/**
+ * The delivery guarantees of a packet, mapped onto JGroups {@link Message.Flag}s.
+ * Packet classes declare their policy using {@link Delivery}, single transmissions can override it
+ * using {@link Transmission.TransmissionBuilder#delivery(DeliveryPolicy)}.
+ * <br><br><i>Note: Unordered packets are delivered by the out-of-band thread pool, so they are not stuck
+ * behind large ordered packets of the same sender, but may overtake each other.</i>
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public enum DeliveryPolicy {
+
+    /**
+     * Retransmitted if lost and delivered in the order sent by each sender (Default).
+     */
+    RELIABLE_ORDERED(),
+
+    /**
+     * Retransmitted if lost, but delivered as soon as it arrives.
+     */
+    RELIABLE_UNORDERED(Message.Flag.OOB),
+
+    /**
+     * Neither retransmitted nor ordered (e.g. for frequently updated positions where only the latest value matters).
+     */
+    UNRELIABLE(Message.Flag.OOB, Message.Flag.NO_RELIABILITY),
+
+    /**
+     * Like {@link DeliveryPolicy#RELIABLE_ORDERED}, but sent right away instead of being bundled with other messages.
+     */
+    DONT_BUNDLE(Message.Flag.DONT_BUNDLE);
+
+    // ======================   VARS
+
+    /**
+     * The flags controlled by the policies.
+     */
+    private static final Message.Flag[] MANAGED_FLAGS = { Message.Flag.OOB, Message.Flag.NO_RELIABILITY, Message.Flag.DONT_BUNDLE };
+
+    private static final ClassValue<DeliveryPolicy> DECLARED = new ClassValue<DeliveryPolicy>() {
+        @Override
+        protected DeliveryPolicy computeValue(Class<?> type) {
+            Delivery delivery = type.getAnnotation(Delivery.class);
+            return delivery != null ? delivery.value() : RELIABLE_ORDERED;
+        }
+    };
+
+    /**
+     * The flags set for the policy.
+     */
+    @Getter
+    private final Message.Flag[] flags;
+
+
+    // ======================   CONSTRUCTOR
+
+    DeliveryPolicy(Message.Flag... flags) {
+        this.flags = flags;
+    }
+
+
+    // ======================   BUSINESS LOGIC
+
+    /**
+     * Sets the flags of the policy on a message, replacing the flags of any previously applied policy.
+     *
+     * @param message
+     *          The message
+     * @return The message
+     */
+    public Message apply(Message message) {
+        message.clearFlag(MANAGED_FLAGS);
+        message.setFlag(this.flags);
+        return message;
+    }
+
+    /**
+     * Returns the policy declared by a packet class.
+     *
+     * @param packetClass
+     *          The packet class
+     * @return The declared policy or {@link DeliveryPolicy#RELIABLE_ORDERED} if the class does not declare one
+     */
+    public static DeliveryPolicy of(Class<? extends APacket> packetClass) {
+        return DECLARED.get(packetClass);
+    }
+
+}
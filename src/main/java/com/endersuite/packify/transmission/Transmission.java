@@ -2,12 +2,21 @@ package com.endersuite.packify.transmission;
 
 import com.endersuite.packify.NetworkManager;
 import com.endersuite.packify.exceptions.AddressNotFoundException;
+import com.endersuite.packify.packets.ACollectablePacket;
 import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.packets.Conflatable;
 import lombok.Getter;
 import lombok.Setter;
 import org.jgroups.Address;
 import org.jgroups.Message;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 /**
  * A Transmission stores a {@link Message} and can be send (transmitted) to other nodes in the cluster.
  * A Transmission can only be created using a {@link TransmissionBuilder}.
@@ -20,28 +29,94 @@ import org.jgroups.Message;
  */
 public class Transmission {
 
+    /**
+     * The manager used by transmissions which are not bound to a specific one.
+     */
     @Getter @Setter
     private static NetworkManager defaultNetworkManager;
 
 
     // ======================   VARS
 
+    /**
+     * The manager the transmission is sent with ({@code null} to use the default network manager).
+     */
+    private final NetworkManager networkManager;
+
     /**
      * The message that will be sent.
      */
     private final Message message;
 
+    /**
+     * The packet carried by the message (Only present if the transmission was created from a packet).
+     * It is kept so that the packet can be delivered locally without being serialized.
+     */
+    private final APacket packet;
+
+    /**
+     * Whether the transmission is sent through the {@link ConflationQueue}.
+     */
+    private final boolean conflate;
+
+    /**
+     * The site the packet is broadcast in ({@code null} to send it to the destination of the message).
+     */
+    private final String site;
+
 
     // ======================   CONSTRUCTOR
 
     /**
      * Creates a simple transmission for a given message.
      *
+     * @param networkManager
+     *          The manager to send with ({@code null} to use the default network manager)
      * @param message
      *          The message to transmit
+     * @param packet
+     *          The packet carried by the message or {@code null} if the message was built manually
      */
-    protected Transmission(Message message) {
+    protected Transmission(NetworkManager networkManager, Message message, APacket packet) {
+        this(networkManager, message, packet, false);
+    }
+
+    /**
+     * Creates a simple transmission for a given message.
+     *
+     * @param networkManager
+     *          The manager to send with ({@code null} to use the default network manager)
+     * @param message
+     *          The message to transmit
+     * @param packet
+     *          The packet carried by the message or {@code null} if the message was built manually
+     * @param conflate
+     *          Whether the transmission is sent through the {@link ConflationQueue} (The packet must be {@link Conflatable})
+     */
+    protected Transmission(NetworkManager networkManager, Message message, APacket packet, boolean conflate) {
+        this(networkManager, message, packet, conflate, null);
+    }
+
+    /**
+     * Creates a simple transmission for a given message.
+     *
+     * @param networkManager
+     *          The manager to send with ({@code null} to use the default network manager)
+     * @param message
+     *          The message to transmit
+     * @param packet
+     *          The packet carried by the message or {@code null} if the message was built manually
+     * @param conflate
+     *          Whether the transmission is sent through the {@link ConflationQueue} (The packet must be {@link Conflatable})
+     * @param site
+     *          The site the packet is broadcast in ({@code null} to send it to the destination of the message)
+     */
+    protected Transmission(NetworkManager networkManager, Message message, APacket packet, boolean conflate, String site) {
+        this.networkManager = networkManager;
         this.message = message;
+        this.packet = packet;
+        this.conflate = conflate;
+        this.site = site;
     }
 
 
@@ -56,7 +131,63 @@ public class Transmission {
      *          Any possible exceptions whilst transmitting
      */
     public void transmit() throws Exception {
-        getDefaultNetworkManager().sendRaw(message);
+
+        // RET: Sent once the queue reaches it (Unless replaced by a newer update)
+        if (this.conflate) {
+            getNetworkManager().getConflationQueue().offer(this);
+            return;
+        }
+
+        sendNow();
+    }
+
+    /**
+     * Returns the manager the transmission is sent with.
+     *
+     * @return The bound manager or the default network manager if the transmission is not bound to one
+     */
+    public NetworkManager getNetworkManager() {
+        return this.networkManager != null ? this.networkManager : getDefaultNetworkManager();
+    }
+
+    /**
+     * Returns the message that will be sent.
+     *
+     * @return The message
+     */
+    protected Message getMessage() {
+        return this.message;
+    }
+
+    /**
+     * Returns the packet carried by the message.
+     *
+     * @return The packet or {@code null} if the transmission was created from a raw message
+     */
+    protected APacket getPacket() {
+        return this.packet;
+    }
+
+    /**
+     * Returns the site the packet is broadcast in.
+     *
+     * @return The site or {@code null} if the packet is sent to the destination of the message
+     */
+    protected String getSite() {
+        return this.site;
+    }
+
+    /**
+     * Sends the message to its destination or site right away.
+     *
+     * @throws Exception
+     *          Any possible exceptions whilst transmitting
+     */
+    void sendNow() throws Exception {
+        if (this.site != null)
+            getNetworkManager().sendToSite(this.site, this.message, this.packet);
+        else
+            getNetworkManager().send(this.message, this.packet);
     }
 
     /**
@@ -85,8 +216,21 @@ public class Transmission {
      * @return
      */
     public static TransmissionBuilder newBuilder(APacket packet) {
-        Message message = new Message(null, packet);
-        return new TransmissionBuilder(message);
+        return newBuilder(null, packet);
+    }
+
+    /**
+     * Creates a new TransmissionBuilder from a raw packet that is sent using a specific network manager.
+     *
+     * @param networkManager
+     *          The manager to send with
+     * @param packet
+     *          The packet to send
+     * @return
+     */
+    public static TransmissionBuilder newBuilder(NetworkManager networkManager, APacket packet) {
+        Message message = new Message(null);   // Payload gets serialized lazily, only if the packet leaves the process
+        return new TransmissionBuilder(networkManager, message, packet);
     }
 
     /**
@@ -97,7 +241,75 @@ public class Transmission {
      * @return
      */
     public static TransmissionBuilder newBuilder(Message message) {
-        return new TransmissionBuilder(message);
+        return newBuilder(null, message);
+    }
+
+    /**
+     * Creates a new TransmissionBuilder from any JGroup {@link Message} object that is sent using a specific network manager.
+     *
+     * @param networkManager
+     *          The manager to send with
+     * @param message
+     *          The message object to send
+     * @return
+     */
+    public static TransmissionBuilder newBuilder(NetworkManager networkManager, Message message) {
+        return new TransmissionBuilder(networkManager, message, null);
+    }
+
+
+    /**
+     * Creates a collectable request per node owning at least one of the keys (as determined by the consistent hash ring
+     * of the default network manager) and collects one response of every owner.
+     *
+     * @param keys
+     *          The keys to request
+     * @param requestFactory
+     *          Creates the request packet for the keys owned by one node
+     * @param <K>
+     * @return
+     */
+    public static <K> CompletableTransmission.CompletableTransmissionBuilder<List<ACollectablePacket>> collectByKeys(
+            Collection<K> keys, Function<List<K>, ? extends ACollectablePacket> requestFactory) {
+        return collectByKeys(getDefaultNetworkManager(), keys, requestFactory);
+    }
+
+    /**
+     * Creates a collectable request per node owning at least one of the keys (as determined by the consistent hash ring
+     * of the network manager) and collects one response of every owner.
+     *
+     * @param networkManager
+     *          The manager to send with
+     * @param keys
+     *          The keys to request
+     * @param requestFactory
+     *          Creates the request packet for the keys owned by one node
+     * @param <K>
+     * @return
+     * @throws IllegalStateException
+     *          If not connected or a key has no owner
+     */
+    public static <K> CompletableTransmission.CompletableTransmissionBuilder<List<ACollectablePacket>> collectByKeys(
+            NetworkManager networkManager, Collection<K> keys, Function<List<K>, ? extends ACollectablePacket> requestFactory) {
+
+        // THROW: Nothing to request
+        if (keys.isEmpty())
+            throw new IllegalArgumentException("At least one key is required!");
+
+        List<Transmission> requests = new ArrayList<>();
+        for (Map.Entry<Address, List<K>> group : networkManager.getHashRing().groupByOwner(keys).entrySet()) {
+
+            // THROW: No owner (A null recipient would broadcast the request)
+            if (group.getKey() == null)
+                throw new IllegalStateException("No owner for keys " + group.getValue() + "!");
+
+            ACollectablePacket request = requestFactory.apply(group.getValue());
+            requests.add(newBuilder(networkManager, request).to(group.getKey()).build());
+        }
+
+        Transmission first = requests.get(0);
+        return new CompletableTransmission.CompletableTransmissionBuilder<>(networkManager, first.message, first.packet, requests.size(), Collectors.toList())
+                .fanOut(requests.subList(1, requests.size()));
     }
 
 
@@ -110,21 +322,59 @@ public class Transmission {
 
         // ======================   VARS
 
+        /**
+         * The manager to send with ({@code null} to use the default network manager).
+         */
+        private NetworkManager networkManager;
+
         /**
          * The message to configure.
          */
         private final Message message;
 
+        /**
+         * The packet carried by the message (May be {@code null}).
+         */
+        private final APacket packet;
+
+        /**
+         * Whether the transmission is conflated (Defaults to {@code true} for {@link Conflatable} packets).
+         */
+        private boolean conflate;
+
+        /**
+         * The site the packet is broadcast in ({@code null} to send it to the destination of the message).
+         */
+        private String site;
+
 
         // ======================   CONSTRUCTOR
 
-        protected TransmissionBuilder(Message message) {
+        protected TransmissionBuilder(NetworkManager networkManager, Message message, APacket packet) {
+            this.networkManager = networkManager;
             this.message = message;
+            this.packet = packet;
+            this.conflate = packet instanceof Conflatable;
+            if (packet != null)
+                DeliveryPolicy.of(packet.getClass()).apply(message);
         }
 
 
         // ======================   BUSINESS LOGIC
 
+        /**
+         * Binds the transmission to a specific network manager instead of the default network manager.
+         * <br><br><i>Note: Must be called before any method that resolves cluster members (e.g. {@code to(String)})!</i>
+         *
+         * @param networkManager
+         *          The manager to send with
+         * @return
+         */
+        public TransmissionBuilder via(NetworkManager networkManager) {
+            this.networkManager = networkManager;
+            return this;
+        }
+
         /**
          * Sets the recipient of the message.
          *
@@ -134,6 +384,7 @@ public class Transmission {
          */
         public TransmissionBuilder to(Address address) {
             this.message.setDest(address);
+            this.site = null;
             return this;
         }
 
@@ -147,7 +398,7 @@ public class Transmission {
          *          If the given nodeName could not be matched with an Address inside the cluster
          */
         public TransmissionBuilder to(String nodeName) throws AddressNotFoundException {
-            Address address = getDefaultNetworkManager().getJChannel().getView().getMembers().stream()
+            Address address = getNetworkManager().getJChannel().getView().getMembers().stream()
                     .filter(a -> a.toString().equals(nodeName)).findFirst().orElse(null);
 
             // THROW: Address is not known in cluster
@@ -157,6 +408,26 @@ public class Transmission {
             return to(address);
         }
 
+        /**
+         * Sets the recipient of the message to the node owning the key on the consistent hash ring of the cluster.
+         * The same key is always routed to the same node as long as the cluster does not change.
+         *
+         * @param key
+         *          The key (Must have a {@code hashCode()} that is stable across JVMs, e.g. a String or UUID)
+         * @return
+         * @throws IllegalStateException
+         *          If not connected or there is no owner
+         */
+        public TransmissionBuilder toKey(Object key) {
+            Address owner = getNetworkManager().getHashRing().getOwner(key);
+
+            // THROW: No owner (A null recipient would broadcast the message)
+            if (owner == null)
+                throw new IllegalStateException("No owner for key " + key + "!");
+
+            return to(owner);
+        }
+
         /**
          * Sets the message to be broadcast to all nodes inside the cluster.
          *
@@ -166,6 +437,7 @@ public class Transmission {
          */
         public TransmissionBuilder broadcast(boolean loopback) {
             this.message.setDest(null);
+            this.site = null;
             if (!loopback)
                 this.message.setTransientFlag(Message.TransientFlag.DONT_LOOPBACK);
             return this;
@@ -186,6 +458,81 @@ public class Transmission {
             return this;
         }
 
+        /**
+         * Sets the message to be broadcast to the nodes of our site only (Not relayed to other sites).
+         *
+         * @return
+         */
+        public TransmissionBuilder localSite() {
+            return toSite(getNetworkManager().getSite());
+        }
+
+        /**
+         * Sets the message to be broadcast to the nodes of all sites.
+         *
+         * @return
+         */
+        public TransmissionBuilder allSites() {
+            this.site = null;
+            this.message.setDest(null);
+            return relay(true);
+        }
+
+        /**
+         * Sets the message to be broadcast to the nodes of a specific site. Broadcasts to another site are sent to its
+         * site master, which broadcasts them in its site. Responses are sent back to us directly.
+         * <br><br><i>Note: The loopback option of {@link TransmissionBuilder#broadcast(boolean)} is kept.</i>
+         *
+         * @param site
+         *          The site (See {@link NetworkManager#getSites()})
+         * @return
+         * @throws IllegalArgumentException
+         *          If the site is unknown
+         */
+        public TransmissionBuilder toSite(String site) {
+
+            // THROW: Unknown site
+            if (site != null && !getNetworkManager().getSites().contains(site))
+                throw new IllegalArgumentException("Unknown site " + site + "!");
+
+            this.message.setDest(null);
+            this.site = getNetworkManager().isLocalSite(site) ? null : site;
+            return relay(false);
+        }
+
+        /**
+         * Overrides the delivery policy declared by the packet class (See {@link com.endersuite.packify.packets.Delivery}).
+         *
+         * @param policy
+         *          The policy to send with
+         * @return
+         */
+        public TransmissionBuilder delivery(DeliveryPolicy policy) {
+            policy.apply(this.message);
+            return this;
+        }
+
+        /**
+         * Sets whether the transmission is sent through the {@link ConflationQueue}, where it is replaced by newer
+         * transmissions with the same conflation key & destination until it is sent (Enabled by default for
+         * {@link Conflatable} packets).
+         *
+         * @param conflate
+         *          Whether to conflate
+         * @return
+         * @throws IllegalArgumentException
+         *          If enabled for a packet that is not {@link Conflatable}
+         */
+        public TransmissionBuilder conflate(boolean conflate) {
+
+            // THROW: No conflation key
+            if (conflate && !(this.packet instanceof Conflatable))
+                throw new IllegalArgumentException("Only Conflatable packets can be conflated!");
+
+            this.conflate = conflate;
+            return this;
+        }
+
         /**
          * Specifies that the done consumer (as specified by {@code onDone()}) should be called after receiving
          * at least one response packet from all nodes in the cluster.
@@ -196,8 +543,13 @@ public class Transmission {
          *
          * @return
          */
-        public CompletableTransmission.CompletableTransmissionBuilder collectAll() {
-            return collectExact(getDefaultNetworkManager().getJChannel().getView().getMembers().size());
+        public CompletableTransmission.CompletableTransmissionBuilder<List<ACollectablePacket>> collectAll() {
+
+            // THROW: Only the members of our site are known
+            if (this.site != null)
+                throw new IllegalStateException("The members of other sites are unknown, use collectExact() instead!");
+
+            return collectExact(getNetworkManager().getJChannel().getView().getMembers().size());
         }
 
         /**
@@ -209,18 +561,27 @@ public class Transmission {
          *          The minimum amount of response packets
          * @return
          */
-        public CompletableTransmission.CompletableTransmissionBuilder collectExact(int minReplies) {
-            return new CompletableTransmission.CompletableTransmissionBuilder(this.message, minReplies);
+        public CompletableTransmission.CompletableTransmissionBuilder<List<ACollectablePacket>> collectExact(int minReplies) {
+            CompletableTransmission.CompletableTransmissionBuilder<List<ACollectablePacket>> builder =
+                    new CompletableTransmission.CompletableTransmissionBuilder<>(this.networkManager, this.message, this.packet, minReplies, Collectors.toList());
+
+            // Request to another site -> Its responses complete the collection
+            if (this.site != null)
+                builder.siteThreshold(this.site, minReplies);
+
+            return builder;
         }
 
         /**
          * Specifies that the done consumer (as specified by {@code onDone()}) should be called after receiving
          * at least one response packet.
+         * <br><br><i>Note: Use {@link CompletableTransmission.CompletableTransmissionBuilder#anycast()} to send the request
+         * to a single member instead of all of them.</i>
          * <br><br><i>Note: This also transforms the builder into a {@link CompletableTransmission.CompletableTransmissionBuilder}</i>
          *
          * @return
          */
-        public CompletableTransmission.CompletableTransmissionBuilder collectOne() {
+        public CompletableTransmission.CompletableTransmissionBuilder<List<ACollectablePacket>> collectOne() {
             return collectExact(1);
         }
 
@@ -230,7 +591,14 @@ public class Transmission {
          * @return
          */
         public Transmission build() {
-            return new Transmission(this.message);
+            return new Transmission(this.networkManager, this.message, this.packet, this.conflate, this.site);
+        }
+
+
+        // ======================   HELPERS
+
+        private NetworkManager getNetworkManager() {
+            return this.networkManager != null ? this.networkManager : getDefaultNetworkManager();
         }
 
     }
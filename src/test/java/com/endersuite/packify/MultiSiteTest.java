@@ -0,0 +1,246 @@
+package com.endersuite.packify;
+
+import com.endersuite.packify.dispatch.RingBufferDispatcher;
+import com.endersuite.packify.packets.ACollectablePacket;
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.transmission.CompletableTransmission;
+import com.endersuite.packify.transmission.Transmission;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs two sites ("lon" & "nyc" with two nodes each) inside this JVM using {@link StackProfile#sharedLoopback()}
+ * connected by {@code RELAY2} and checks the site aware sending & collecting.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class MultiSiteTest {
+
+    private static final List<String> SITES = Arrays.asList("lon", "nyc");
+
+    private static final Map<String, AtomicInteger> notes = new ConcurrentHashMap<>();
+    private static final List<NetworkManager> nodes = new ArrayList<>();
+
+    private static NetworkManager lon1;
+    private static NetworkManager lon2;
+
+
+    // ======================   SETUP
+
+    @BeforeAll
+    public static void startSites() throws Exception {
+        lon1 = startNode("lon1", "lon");
+        lon2 = startNode("lon2", "lon");
+        startNode("nyc1", "nyc");
+        startNode("nyc2", "nyc");
+
+        // Wait until the site masters formed the bridge
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (NetworkManager node : nodes) {
+            while (node.getNodeCount() < 2 || !node.getSites().containsAll(SITES)) {
+                if (System.nanoTime() > deadline)
+                    fail("Sites did not connect: " + node.getSites());
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @AfterAll
+    public static void stopSites() {
+        nodes.forEach(NetworkManager::disconnect);
+        nodes.clear();
+    }
+
+    @BeforeEach
+    public void clearNotes() {
+        notes.clear();
+    }
+
+
+    // ======================   TESTS
+
+    @Test
+    public void localSiteStaysInSite() throws Exception {
+        Transmission.newBuilder(lon1, new Note()).broadcast(true).localSite().build().transmit();
+        assertNotes("lon1", "lon2");
+    }
+
+    @Test
+    public void toSiteReachesOnlyThatSite() throws Exception {
+        Transmission.newBuilder(lon2, new Note()).broadcast(true).toSite("nyc").build().transmit();
+        assertNotes("nyc1", "nyc2");
+    }
+
+    @Test
+    public void allSitesReachesEveryNode() throws Exception {
+
+        // From a member that is not the site master
+        Transmission.newBuilder(lon2, new Note()).broadcast(true).allSites().build().transmit();
+        assertNotes("lon1", "lon2", "nyc1", "nyc2");
+    }
+
+    @Test
+    public void siteThresholdsWaitForEverySite() throws Exception {
+        CompletableTransmission<List<ACollectablePacket>> request = Transmission.newBuilder(lon1, new Request(false))
+                .collectExact(1)
+                .siteThreshold("lon", 2)
+                .siteThreshold("nyc", 2)
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        request.transmit();
+
+        assertEquals(Arrays.asList("lon", "lon", "nyc", "nyc"), sitesOf(request.join()));
+    }
+
+    @Test
+    public void toSiteCollectsFromThatSite() throws Exception {
+        CompletableTransmission<List<ACollectablePacket>> request = Transmission.newBuilder(lon1, new Request(false))
+                .toSite("nyc")
+                .collectExact(2)
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        request.transmit();
+
+        assertEquals(Arrays.asList("nyc", "nyc"), sitesOf(request.join()));
+    }
+
+    @Test
+    public void localFirstAnswersLocally() throws Exception {
+        CompletableTransmission<List<ACollectablePacket>> request = Transmission.newBuilder(lon2, new Request(false))
+                .collectExact(2)
+                .localFirst(Duration.ofSeconds(5))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        request.transmit();
+
+        assertEquals(Arrays.asList("lon", "lon"), sitesOf(request.join()));
+    }
+
+    @Test
+    public void localFirstEscalatesToOtherSites() throws Exception {
+        CompletableTransmission<List<ACollectablePacket>> request = Transmission.newBuilder(lon2, new Request(true))
+                .collectExact(1)
+                .localFirst(Duration.ofMillis(200))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        request.transmit();
+
+        assertEquals(Collections.singletonList("nyc"), sitesOf(request.join()));
+    }
+
+
+    // ======================   HELPERS
+
+    private static NetworkManager startNode(String name, String site) throws Exception {
+        StackProfile profile = StackProfile.sharedLoopback().relay(site, StackProfile.sharedLoopback(), SITES.toArray(new String[0]));
+        NetworkManager node = new NetworkManager(new RingBufferDispatcher(1024), name, profile);
+        node.addPacketHandler(Note.class, note -> notes.computeIfAbsent(name, n -> new AtomicInteger()).incrementAndGet());
+        node.addPacketHandler(Request.class, request -> {
+            if (request.isRemoteOnly() && site.equals("lon"))
+                return;
+
+            Transmission.newBuilder(node, new Response(request, site))
+                    .to(request.getSender())
+                    .build()
+                    .sneakyTransmit();
+        });
+        node.connect("packify-test-" + site);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Waits until every expected node received one note and checks that no other node received one.
+     */
+    private static void assertNotes(String... expected) throws InterruptedException {
+        Map<String, Integer> expectedNotes = new HashMap<>();
+        for (String name : expected)
+            expectedNotes.put(name, 1);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!received().equals(expectedNotes) && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        // Give misrouted copies the chance to arrive
+        Thread.sleep(200);
+        assertEquals(expectedNotes, received());
+    }
+
+    private static Map<String, Integer> received() {
+        Map<String, Integer> received = new HashMap<>();
+        notes.forEach((name, count) -> received.put(name, count.get()));
+        return received;
+    }
+
+    private static List<String> sitesOf(List<ACollectablePacket> responses) {
+        List<String> sites = new ArrayList<>();
+        for (ACollectablePacket response : responses) {
+            assertTrue(response instanceof Response);
+            sites.add(((Response) response).getSite());
+        }
+        Collections.sort(sites);
+        return sites;
+    }
+
+
+    // ======================   PACKETS
+
+    public static class Note extends APacket {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    public static class Request extends ACollectablePacket {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Only the nodes of "nyc" answer */
+        private final boolean remoteOnly;
+
+        public Request(boolean remoteOnly) {
+            this.remoteOnly = remoteOnly;
+        }
+
+        public boolean isRemoteOnly() {
+            return this.remoteOnly;
+        }
+
+    }
+
+    public static class Response extends ACollectablePacket {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String site;
+
+        public Response(Request request, String site) {
+            super(request);
+            this.site = site;
+        }
+
+        public String getSite() {
+            return this.site;
+        }
+
+    }
+
+}
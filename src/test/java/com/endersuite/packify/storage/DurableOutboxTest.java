@@ -0,0 +1,223 @@
+package com.endersuite.packify.storage;
+
+import com.endersuite.packify.NetworkManager;
+import com.endersuite.packify.StackProfile;
+import com.endersuite.packify.dispatch.RingBufferDispatcher;
+import com.endersuite.packify.exceptions.OutboxFullException;
+import com.endersuite.packify.packets.APacket;
+import com.endersuite.packify.transmission.Transmission;
+import org.jgroups.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks that the {@link DurableOutbox} delivers stored messages in order, also when sending fails
+ * or the sender is restarted.
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class DurableOutboxTest {
+
+    private static final AtomicInteger clusters = new AtomicInteger();
+
+    @TempDir
+    Path directory;
+
+    private final List<NetworkManager> managers = new ArrayList<>();
+    private final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+    private String cluster;
+
+
+    // ======================   SETUP
+
+    @BeforeEach
+    public void startReceiver() throws Exception {
+        this.cluster = "packify-outbox-" + clusters.incrementAndGet();
+        NetworkManager receiver = manager("receiver");
+        receiver.addPacketHandler(Sequenced.class, packet -> this.received.add(packet.getNumber()));
+        receiver.connect(this.cluster);
+    }
+
+    @AfterEach
+    public void stopManagers() {
+        for (NetworkManager manager : this.managers)
+            if (manager.getJChannel().isConnected())
+                manager.disconnect();
+    }
+
+
+    // ======================   TESTS
+
+    @Test
+    public void drainsInOrderAfterConnecting() throws Exception {
+        NetworkManager sender = manager("sender");
+        DurableOutbox outbox = sender.enableOutbox(this.directory);
+        outbox.setBatchSize(64);
+
+        send(sender, 0, 500);
+        assertEquals(500, outbox.getStored().sum());
+        assertTrue(outbox.hasBacklog());
+
+        // Messages sent whilst the backlog is drained queue up behind it
+        sender.connect(this.cluster);
+        send(sender, 500, 600);
+
+        awaitReceived(600);
+        assertOrdered();
+        await(() -> !outbox.hasBacklog());
+        assertEquals(600, outbox.getDrained().sum());
+    }
+
+    @Test
+    public void retriesFailedSendsWithoutReordering() throws Exception {
+        AtomicInteger failures = new AtomicInteger(2);
+        NetworkManager sender = new NetworkManager(new RingBufferDispatcher(1024), "sender", StackProfile.sharedLoopback()) {
+            @Override
+            public void sendConnected(Message message) throws Exception {
+                if (getJChannel().isConnected() && failures.getAndDecrement() > 0)
+                    throw new IllegalStateException("Not connected!");
+                super.sendConnected(message);
+            }
+        };
+        this.managers.add(sender);
+        DurableOutbox outbox = sender.enableOutbox(this.directory);
+
+        send(sender, 0, 20);
+        sender.connect(this.cluster);
+
+        awaitReceived(20);
+        assertOrdered();
+        assertTrue(failures.get() < 0, "The failures were not injected");
+        assertEquals(20, outbox.getDrained().sum());
+    }
+
+    @Test
+    public void resumesAfterRestart() throws Exception {
+
+        // Drains everything -> Nothing is sent again by the next run
+        NetworkManager first = manager("sender");
+        DurableOutbox outbox = first.enableOutbox(this.directory);
+        send(first, 0, 10);
+        first.connect(this.cluster);
+        awaitReceived(10);
+        await(() -> !outbox.hasBacklog());
+        first.disconnect();
+
+        // Stores a backlog without ever connecting
+        NetworkManager second = manager("sender");
+        DurableOutbox stored = second.enableOutbox(this.directory);
+        assertFalse(stored.hasBacklog());
+        send(second, 10, 15);
+        stored.close();
+
+        NetworkManager third = manager("sender");
+        DurableOutbox restarted = third.enableOutbox(this.directory);
+        assertTrue(restarted.hasBacklog());
+        third.connect(this.cluster);
+
+        awaitReceived(15);
+        assertOrdered();
+
+        // No duplicates arrive later
+        Thread.sleep(200);
+        assertEquals(15, this.received.size());
+    }
+
+    @Test
+    public void dropsExpiredMessages() throws Exception {
+        NetworkManager sender = manager("sender");
+        DurableOutbox outbox = sender.enableOutbox(this.directory);
+        outbox.setExpiry(Sequenced.class, Duration.ofMillis(1));
+
+        send(sender, 0, 5);
+        Thread.sleep(20);
+        sender.connect(this.cluster);
+
+        await(() -> outbox.getExpired().sum() == 5);
+        assertTrue(this.received.isEmpty());
+        assertFalse(outbox.hasBacklog());
+    }
+
+    @Test
+    public void rejectsMessagesOnceFull() throws Exception {
+        NetworkManager sender = manager("sender");
+        DurableOutbox outbox = sender.enableOutbox(this.directory);
+        outbox.setMaxBytes(1);
+
+        send(sender, 0, 1);
+        assertThrows(OutboxFullException.class, () -> send(sender, 1, 2));
+        assertEquals(1, outbox.getStored().sum());
+    }
+
+
+    // ======================   HELPERS
+
+    private NetworkManager manager(String name) throws Exception {
+        NetworkManager manager = new NetworkManager(new RingBufferDispatcher(1024), name, StackProfile.sharedLoopback());
+        this.managers.add(manager);
+        return manager;
+    }
+
+    private static void send(NetworkManager sender, int from, int to) throws Exception {
+        for (int number = from; number < to; number++)
+            Transmission.newBuilder(sender, new Sequenced(number)).broadcast(false).build().transmit();
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        await(() -> this.received.size() >= count);
+    }
+
+    private void assertOrdered() {
+        synchronized (this.received) {
+            for (int i = 0; i < this.received.size(); i++)
+                assertEquals(i, this.received.get(i).intValue(), "Received out of order: " + this.received);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline)
+                fail("Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+
+    // ======================   PACKETS
+
+    public static class Sequenced extends APacket {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int number;
+
+        public Sequenced(int number) {
+            this.number = number;
+        }
+
+        public int getNumber() {
+            return this.number;
+        }
+
+    }
+
+}
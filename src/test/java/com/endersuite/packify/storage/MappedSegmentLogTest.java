@@ -0,0 +1,228 @@
+package com.endersuite.packify.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks appending, crash recovery, segment roll-over, truncation & reading of the {@link MappedSegmentLog}.
+ * <br><br>The segments used here are 64 bytes large, so they hold two records of 28 bytes (4 bytes length + 24 bytes payload).
+ *
+ * @author Maximilian Vincent Heidenreich
+ * @since 19.10.26
+ */
+public class MappedSegmentLogTest {
+
+    private static final int SEGMENT_SIZE = 64;
+    private static final int RECORD_SIZE = 24;
+
+    @TempDir
+    Path directory;
+
+
+    // ======================   TESTS
+
+    @Test
+    public void appendsAndReadsInOrder() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            long first = log.append(record(0), 0, RECORD_SIZE);
+            long second = log.append(record(1), 0, RECORD_SIZE);
+
+            assertEquals(0, first);
+            assertEquals(4 + RECORD_SIZE, second);
+            assertEquals(Arrays.asList(0, 1), readAll(log.reader(log.getStartPosition())));
+            assertEquals(Collections.singletonList(1), readAll(log.reader(second)));
+        }
+    }
+
+    @Test
+    public void recoversAfterCrash() throws IOException {
+
+        // Not closed (Simulates a crash, the mapped pages are still written by the OS)
+        MappedSegmentLog crashed = new MappedSegmentLog(this.directory, SEGMENT_SIZE);
+        for (int i = 0; i < 3; i++)
+            crashed.append(record(i), 0, RECORD_SIZE);
+        long end = crashed.getEndPosition();
+
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertEquals(end, log.getEndPosition());
+            assertEquals(end, log.append(record(3), 0, RECORD_SIZE));
+            assertEquals(Arrays.asList(0, 1, 2, 3), readAll(log.reader(log.getStartPosition())));
+        }
+    }
+
+    @Test
+    public void ignoresRecordWithoutLength() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            log.append(record(0), 0, RECORD_SIZE);
+            long end = log.getEndPosition();
+
+            // The payload is written, but the writer fails before the length is published
+            assertThrows(IllegalStateException.class, () -> log.append(RECORD_SIZE, buffer -> {
+                buffer.put(record(1));
+                throw new IllegalStateException("Crash");
+            }));
+            assertEquals(end, log.getEndPosition());
+            assertEquals(Collections.singletonList(0), readAll(log.reader(log.getStartPosition())));
+        }
+
+        // Recovery stops at the missing length as well
+        try (MappedSegmentLog log = MappedSegmentLog.open(this.directory)) {
+            assertEquals(SEGMENT_SIZE, log.getSegmentSize());
+            assertEquals(Collections.singletonList(0), readAll(log.reader(log.getStartPosition())));
+        }
+    }
+
+    @Test
+    public void rollsOverIntoNewSegments() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 5; i++)
+                log.append(record(i), 0, RECORD_SIZE);
+
+            // The 3rd record did not fit behind the 2nd one
+            assertEquals(3, segmentFiles());
+            assertEquals(3L * SEGMENT_SIZE, log.getDiskSize());
+            assertEquals(2L * SEGMENT_SIZE + 4 + RECORD_SIZE, log.getEndPosition());
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4), readAll(log.reader(log.getStartPosition())));
+        }
+
+        // Reopening continues in the last segment
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertEquals(2L * SEGMENT_SIZE + 4 + RECORD_SIZE, log.append(record(5), 0, RECORD_SIZE));
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), readAll(log.reader(log.getStartPosition())));
+        }
+    }
+
+    @Test
+    public void readerFollowsAppendsAcrossSegments() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            MappedSegmentLog.Reader reader = log.reader(log.getStartPosition());
+            assertNull(reader.next());
+
+            log.append(record(0), 0, RECORD_SIZE);
+            log.append(record(1), 0, RECORD_SIZE);
+            assertEquals(Arrays.asList(0, 1), readAll(reader));
+
+            // The reader is at the end of the full first segment & moves on once the next one exists
+            log.append(record(2), 0, RECORD_SIZE);
+            assertEquals(Collections.singletonList(2), readAll(reader));
+            assertEquals(log.getEndPosition(), reader.getPosition());
+        }
+    }
+
+    @Test
+    public void peekKeepsTheRecordUntilSkipped() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            log.append(record(0), 0, RECORD_SIZE);
+            log.append(record(1), 0, RECORD_SIZE);
+            MappedSegmentLog.Reader reader = log.reader(log.getStartPosition());
+
+            assertEquals(0, valueOf(reader.peek()));
+            assertEquals(0, valueOf(reader.peek()));
+            reader.skip();
+            assertEquals(1, valueOf(reader.peek()));
+
+            // A second skip without peek does nothing
+            reader.skip();
+            reader.skip();
+            assertNull(reader.peek());
+        }
+    }
+
+    @Test
+    public void truncatesOnlyWholeSegments() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            List<Long> positions = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+                positions.add(log.append(record(i), 0, RECORD_SIZE));
+            MappedSegmentLog.Reader stale = log.reader(log.getStartPosition());
+
+            // Record 3 is the second one of segment 1 -> Only segment 0 can be deleted
+            log.truncateBefore(positions.get(3));
+            assertEquals(2, segmentFiles());
+            assertEquals(positions.get(2).longValue(), log.getStartPosition());
+
+            // A reader on a deleted segment continues at the first remaining one
+            assertEquals(Arrays.asList(2, 3, 4, 5), readAll(stale));
+        }
+    }
+
+    @Test
+    public void neverTruncatesTheHeadSegment() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 4; i++)
+                log.append(record(i), 0, RECORD_SIZE);
+
+            log.truncateBefore(log.getEndPosition() + SEGMENT_SIZE);
+            assertEquals(1, segmentFiles());
+            assertEquals(Arrays.asList(2, 3), readAll(log.reader(log.getStartPosition())));
+
+            log.append(record(4), 0, RECORD_SIZE);
+            assertEquals(Arrays.asList(2, 3, 4), readAll(log.reader(log.getStartPosition())));
+        }
+    }
+
+    @Test
+    public void rejectsRecordsLargerThanASegment() throws IOException {
+        try (MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertThrows(IllegalArgumentException.class, () -> log.append(new byte[SEGMENT_SIZE], 0, SEGMENT_SIZE - 3));
+            assertThrows(IllegalArgumentException.class, () -> log.append(new byte[0], 0, 0));
+        }
+    }
+
+    @Test
+    public void rejectsAppendsAfterClose() throws IOException {
+        MappedSegmentLog log = new MappedSegmentLog(this.directory, SEGMENT_SIZE);
+        log.close();
+        assertThrows(IOException.class, () -> log.append(record(0), 0, RECORD_SIZE));
+    }
+
+
+    // ======================   HELPERS
+
+    /**
+     * Creates a payload that starts with the value & is padded to {@link MappedSegmentLogTest#RECORD_SIZE}.
+     */
+    private static byte[] record(int value) {
+        byte[] payload = ByteBuffer.allocate(RECORD_SIZE).putInt(value).array();
+        Arrays.fill(payload, 4, RECORD_SIZE, (byte) value);
+        return payload;
+    }
+
+    private static int valueOf(ByteBuffer payload) {
+        byte[] data = new byte[payload.remaining()];
+        payload.get(data);
+        int value = ByteBuffer.wrap(data).getInt();
+        assertArrayEquals(record(value), data);
+        return value;
+    }
+
+    private static List<Integer> readAll(MappedSegmentLog.Reader reader) {
+        List<Integer> values = new ArrayList<>();
+        ByteBuffer payload;
+        while ((payload = reader.next()) != null)
+            values.add(valueOf(payload));
+        return values;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+
+}